@@ -62,7 +62,8 @@ public class Client {
 
             console.print("Values in the stats");
             stats.getDataAverages().forEach(e ->
-                console.print("Average '" + e.getValue().getAverage() + "' collected at '" + e.getKey() + "' with nodes '" + e.getValue().getParticipatingNodes() + "'")
+                console.print("Average '" + e.getValue().getAverage() + "' collected at '" + e.getKey() + "' with nodes '" + e.getValue().getParticipatingNodes() + "'" +
+                    (e.getValue().getStatistics() != null ? " and statistics " + e.getValue().getStatistics() : ""))
             );
             console.newLine();
             console.print("Average: " + stats.getAverage());
@@ -84,7 +85,8 @@ public class Client {
                 newAverage ->
                     console.print(
                         "New sensor reading\n  Value: '" + newAverage.getAverage() +
-                            "'\n  Participating nodes: " + newAverage.getParticipatingNodes()
+                            "'\n  Participating nodes: " + newAverage.getParticipatingNodes() +
+                            (newAverage.getStatistics() != null ? "\n  Statistics: " + newAverage.getStatistics() : "")
                     )
             );
 
@@ -2,54 +2,87 @@ package com.slinkydeveloper.sdp.concurrent;
 
 import com.slinkydeveloper.sdp.log.LoggerConfig;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
+/**
+ * List backed by a {@link ConcurrentLinkedDeque}: appends and reads never lock.
+ * The read operations are weakly consistent, they may not see the elements appended concurrently.
+ * The removals are serialized, so a removal of n elements removes all of them or none
+ */
 public class AtomicList<V> {
 
     private final static Logger LOG = LoggerConfig.getLogger(AtomicList.class);
 
     private final String name;
-    private final List<V> list;
+    private final Deque<V> list;
+    // Counted after the append, so it's never more than the elements in the list (size() of the deque is O(n))
+    private final AtomicInteger size;
+    private final Object removeLock;
 
     public AtomicList(String name, List<V> initialValue) {
         this.name = name;
-        this.list = initialValue != null ? new ArrayList<>(initialValue) : new ArrayList<>();
+        this.list = initialValue != null ? new ConcurrentLinkedDeque<>(initialValue) : new ConcurrentLinkedDeque<>();
+        this.size = new AtomicInteger(this.list.size());
+        this.removeLock = new Object();
     }
 
     public AtomicList(String name) {
         this(name, null);
     }
 
-    public synchronized List<V> getCopy() {
+    public List<V> getCopy() {
         return new ArrayList<>(this.list);
     }
 
-    public synchronized List<V> getLast(int n) {
-        if (n >= this.list.size()) {
-            return getCopy();
+    /**
+     * @return the last n elements, or all the elements if the list has less than n elements
+     */
+    public List<V> getLast(int n) {
+        if (n <= 0) {
+            return new ArrayList<>();
         }
-        return this.list.stream().skip(this.list.size() - n).collect(Collectors.toList());
+        // Don't size the result with n, it can be much bigger than the list
+        List<V> last = new ArrayList<>();
+        Iterator<V> it = this.list.descendingIterator();
+        while (last.size() < n && it.hasNext()) {
+            last.add(it.next());
+        }
+        Collections.reverse(last);
+        return last;
     }
 
-    public synchronized void append(V value) {
+    public void append(V value) {
         LOG.fine(() -> "Appending value '" + value + "' in list '" + name + "'");
-        this.list.add(value);
+        this.list.addLast(value);
+        this.size.incrementAndGet();
     }
 
-    public synchronized V removeFirst() {
+    public V removeFirst() {
         return removeFirst(1).get(0);
     }
 
-    public synchronized List<V> removeFirst(int n) {
-        List<V> old = new ArrayList<>(n);
-        while (n != 0) {
-            old.add(this.list.remove(0));
-            n--;
+    /**
+     * Remove the first n elements, or none of them if the list has less than n elements
+     *
+     * @throws NoSuchElementException if the list has less than n elements
+     */
+    public List<V> removeFirst(int n) {
+        List<V> old;
+        synchronized (this.removeLock) {
+            // The appends can only make the list longer, so the elements are still there after the check
+            if (this.size.get() < n) {
+                throw new NoSuchElementException("List '" + name + "' has less than " + n + " elements");
+            }
+            old = new ArrayList<>(Math.max(n, 0));
+            for (int i = 0; i < n; i++) {
+                old.add(this.list.removeFirst());
+            }
+            this.size.addAndGet(-old.size());
         }
-        LOG.fine("Removed first '" + n + "' elements from list '" + name + "'");
+        LOG.fine(() -> "Removed first '" + n + "' elements from list '" + name + "'");
         return old;
     }
 }
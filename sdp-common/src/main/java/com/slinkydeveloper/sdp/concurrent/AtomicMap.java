@@ -5,47 +5,76 @@ import com.slinkydeveloper.sdp.log.LoggerConfig;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
 
+/**
+ * Copy on write map: readers access an immutable snapshot without locking,
+ * while every update copies the map and publishes it with a CAS.
+ * Designed for maps read much more often than they're updated
+ */
 public class AtomicMap<K, V> {
 
     private final static Logger LOG = LoggerConfig.getLogger(AtomicMap.class);
 
     private final String name;
-    private final Map<K, V> map;
+    private final AtomicReference<Map<K, V>> map;
 
     public AtomicMap(String name, Map<K, V> initialValue) {
         this.name = name;
-        this.map = initialValue != null ? new HashMap<>(initialValue) : new HashMap<>();
+        this.map = new AtomicReference<>(Collections.unmodifiableMap(
+            initialValue != null ? new HashMap<>(initialValue) : new HashMap<>()
+        ));
     }
 
     public AtomicMap(String name) {
         this(name, null);
     }
 
-    public synchronized Map<K, V> getCopy() {
-        return new HashMap<>(this.map);
+    /**
+     * @return an immutable snapshot of the map, cheaper than {@link #getCopy()}
+     */
+    public Map<K, V> getSnapshot() {
+        return this.map.get();
     }
 
-    public synchronized V put(K key, V value) {
+    public Map<K, V> getCopy() {
+        return new HashMap<>(this.map.get());
+    }
+
+    public V put(K key, V value) {
         LOG.fine(() -> "Putting key '" + key + "' with value '" + value + "' in map '" + name + "'");
-        return this.map.put(key, value);
+        Map<K, V> old;
+        Map<K, V> updated;
+        do {
+            old = this.map.get();
+            updated = new HashMap<>(old);
+            updated.put(key, value);
+        } while (!this.map.compareAndSet(old, Collections.unmodifiableMap(updated)));
+        return old.get(key);
     }
 
-    public synchronized boolean putIf(K key, V value, Predicate<Map<K, V>> predicate) {
-        if (predicate.test(Collections.unmodifiableMap(this.map))) {
-            put(key, value);
-            return true;
-        }
-        return false;
+    public boolean putIf(K key, V value, Predicate<Map<K, V>> predicate) {
+        Map<K, V> old;
+        Map<K, V> updated;
+        do {
+            old = this.map.get();
+            if (!predicate.test(old)) {
+                return false;
+            }
+            updated = new HashMap<>(old);
+            updated.put(key, value);
+        } while (!this.map.compareAndSet(old, Collections.unmodifiableMap(updated)));
+        LOG.fine(() -> "Put key '" + key + "' with value '" + value + "' in map '" + name + "'");
+        return true;
     }
 
-    public synchronized Map<K, V> replaceAll(Map<K, V> newMap) {
+    /**
+     * @return the replaced map
+     */
+    public Map<K, V> replaceAll(Map<K, V> newMap) {
         LOG.fine(() -> "Replacing map '" + name + "' with new values: " + newMap);
-        Map<K, V> old = getCopy();
-        this.map.clear();
-        this.map.putAll(newMap);
-        return old;
+        return this.map.getAndSet(Collections.unmodifiableMap(new HashMap<>(newMap)));
     }
 }
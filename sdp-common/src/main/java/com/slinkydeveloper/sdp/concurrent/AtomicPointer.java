@@ -2,63 +2,70 @@ package com.slinkydeveloper.sdp.concurrent;
 
 import com.slinkydeveloper.sdp.log.LoggerConfig;
 
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.logging.Logger;
 
+/**
+ * Lock free pointer backed by an {@link AtomicReference}
+ */
 public class AtomicPointer<T> {
 
     private final static Logger LOG = LoggerConfig.getLogger(AtomicPointer.class);
 
     private final String name;
-    private T value;
+    private final AtomicReference<T> value;
 
     public AtomicPointer(String name, T initialValue) {
         this.name = name;
-        this.value = initialValue;
+        this.value = new AtomicReference<>(initialValue);
     }
 
     public AtomicPointer(String name) {
         this(name, null);
     }
 
-    public synchronized void set(T value) {
-        LOG.fine("Setting pointer '" + name + "' to " + this.value);
-        this.value = value;
+    public void set(T value) {
+        LOG.fine(() -> "Setting pointer '" + name + "' to " + value);
+        this.value.set(value);
     }
 
-    public synchronized T get() {
-        return this.value;
+    public T get() {
+        return this.value.get();
     }
 
-    public synchronized T getAndClear() {
-        T val = this.value;
-        this.value = null;
-        return val;
+    public T getAndClear() {
+        return this.value.getAndSet(null);
     }
 
-    public synchronized boolean isEmpty() {
-        return this.value == null;
+    public boolean isEmpty() {
+        return this.value.get() == null;
     }
 
     /**
-     * Returns the old value
+     * Atomically replace the value with the one computed by the generator.
+     * The generator may be invoked more than once when other threads update the pointer concurrently,
+     * so it must be side effect free
      *
-     * @param newValueGenerator
-     * @return
+     * @return the old value
      */
-    public synchronized T swap(Function<T, T> newValueGenerator) {
-        T old = this.value;
-        set(newValueGenerator.apply(old));
+    public T swap(Function<T, T> newValueGenerator) {
+        T old;
+        T newValue;
+        do {
+            old = this.value.get();
+            newValue = newValueGenerator.apply(old);
+        } while (!this.value.compareAndSet(old, newValue));
+        T logged = newValue;
+        LOG.fine(() -> "Swapped pointer '" + name + "' to " + logged);
         return old;
     }
 
     /**
-     * Doesn't swap the internal value, returns the result of the function executed on the pointer lock
-     *
-     * @param fn
-     * @return
+     * Doesn't swap the internal value, returns the result of the function executed on the current value.
+     * No lock is held while executing the function, so the value may change in the meantime
      */
-    public synchronized <U> U map(Function<T, U> fn) {
-        return fn.apply(this.value);
+    public <U> U map(Function<T, U> fn) {
+        return fn.apply(this.value.get());
     }
 }
@@ -0,0 +1,101 @@
+package com.slinkydeveloper.sdp.concurrent;
+
+import com.slinkydeveloper.sdp.log.LoggerConfig;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Executor running all the tasks on a single thread, in the order they're submitted,
+ * so the state accessed only by the tasks doesn't need any lock.
+ * <p>
+ * A failing task is logged and doesn't stop the loop. After {@link #shutdown()} the tasks already submitted
+ * are executed, while the new ones are rejected.
+ * <p>
+ * This class is thread safe
+ */
+public class EventLoop implements Executor {
+
+    private final static Logger LOG = LoggerConfig.getLogger(EventLoop.class);
+
+    private final static Runnable SHUTDOWN = () -> {
+    };
+
+    private final BlockingQueue<Runnable> tasks;
+    private final Thread thread;
+    private volatile boolean shutdown;
+
+    public EventLoop(String name) {
+        this.tasks = new LinkedBlockingQueue<>();
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @throws RejectedExecutionException if the loop is shut down
+     */
+    @Override
+    public void execute(Runnable task) {
+        // Checking and enqueueing while holding the lock, a task can't be enqueued after the shutdown marker
+        synchronized (this.tasks) {
+            if (this.shutdown) {
+                throw new RejectedExecutionException("Event loop " + this.thread.getName() + " is shut down");
+            }
+            this.tasks.add(task);
+        }
+    }
+
+    /**
+     * @return true if the caller is running on the loop thread
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == this.thread;
+    }
+
+    /**
+     * Stop the loop after the tasks already submitted
+     */
+    public void shutdown() {
+        synchronized (this.tasks) {
+            if (!this.shutdown) {
+                this.shutdown = true;
+                this.tasks.add(SHUTDOWN);
+            }
+        }
+    }
+
+    /**
+     * @return true if the loop terminated before the timeout
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        this.thread.join(unit.toMillis(timeout));
+        return !this.thread.isAlive();
+    }
+
+    private void run() {
+        while (true) {
+            Runnable task;
+            try {
+                task = this.tasks.take();
+            } catch (InterruptedException e) {
+                LOG.warning("Event loop " + this.thread.getName() + " interrupted, stopping it");
+                return;
+            }
+            if (task == SHUTDOWN) {
+                LOG.fine(() -> "Event loop " + this.thread.getName() + " stopped");
+                return;
+            }
+            try {
+                task.run();
+            } catch (Exception e) {
+                LOG.warning("Error while executing a task in the event loop " + this.thread.getName() + ": " + e);
+                e.printStackTrace();
+            }
+        }
+    }
+}
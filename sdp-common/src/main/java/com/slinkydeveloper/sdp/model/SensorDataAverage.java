@@ -1,23 +1,49 @@
 package com.slinkydeveloper.sdp.model;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class SensorDataAverage {
 
     private final Set<Integer> participatingNodes;
     private final Double average;
+    private final Map<String, Double> statistics;
+    private final Long windowStart;
+    private final Long windowEnd;
 
+    public SensorDataAverage(Set<Integer> participatingNodes, Double average) {
+        this(participatingNodes, average, null);
+    }
+
+    public SensorDataAverage(Set<Integer> participatingNodes, Double average, Map<String, Double> statistics) {
+        this(participatingNodes, average, statistics, null, null);
+    }
+
+    /**
+     * @param statistics other statistics of the values of the participating nodes, like min, max, standardDeviation
+     *                   and the percentiles p50, p95 and p99. Can be null
+     * @param windowStart start in epoch milliseconds of the time the values refer to. Can be null
+     * @param windowEnd   end in epoch milliseconds of the time the values refer to. Can be null
+     */
     @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
     public SensorDataAverage(
         @JsonProperty("participatingNodes") Set<Integer> participatingNodes,
-        @JsonProperty("average") Double average
+        @JsonProperty("average") Double average,
+        @JsonProperty("statistics") Map<String, Double> statistics,
+        @JsonProperty("windowStart") Long windowStart,
+        @JsonProperty("windowEnd") Long windowEnd
     ) {
         this.participatingNodes = participatingNodes;
         this.average = average;
+        this.statistics = statistics;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
     }
 
     public Set<Integer> getParticipatingNodes() {
@@ -28,18 +54,33 @@ public class SensorDataAverage {
         return average;
     }
 
+    public Map<String, Double> getStatistics() {
+        return statistics;
+    }
+
+    public Long getWindowStart() {
+        return windowStart;
+    }
+
+    public Long getWindowEnd() {
+        return windowEnd;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         SensorDataAverage that = (SensorDataAverage) o;
         return Objects.equals(getParticipatingNodes(), that.getParticipatingNodes()) &&
-            Objects.equals(getAverage(), that.getAverage());
+            Objects.equals(getAverage(), that.getAverage()) &&
+            Objects.equals(getStatistics(), that.getStatistics()) &&
+            Objects.equals(getWindowStart(), that.getWindowStart()) &&
+            Objects.equals(getWindowEnd(), that.getWindowEnd());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(getParticipatingNodes(), getAverage());
+        return Objects.hash(getParticipatingNodes(), getAverage(), getStatistics(), getWindowStart(), getWindowEnd());
     }
 
     @Override
@@ -47,6 +88,9 @@ public class SensorDataAverage {
         return "SensorDataAverage{" +
             "participatingNodes=" + participatingNodes +
             ", average=" + average +
+            ", statistics=" + statistics +
+            ", windowStart=" + windowStart +
+            ", windowEnd=" + windowEnd +
             '}';
     }
 }
@@ -0,0 +1,64 @@
+package com.slinkydeveloper.sdp.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Averages computed by one of the shards of the ring, over a disjoint subset of the nodes
+ */
+public class SensorDataPartialAverages {
+
+    private final int shard;
+    private final int shards;
+    private final List<SensorDataAverage> averages;
+
+    @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
+    public SensorDataPartialAverages(
+        @JsonProperty("shard") int shard,
+        @JsonProperty("shards") int shards,
+        @JsonProperty("averages") List<SensorDataAverage> averages
+    ) {
+        this.shard = shard;
+        this.shards = shards;
+        this.averages = averages;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public List<SensorDataAverage> getAverages() {
+        return averages;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SensorDataPartialAverages that = (SensorDataPartialAverages) o;
+        return getShard() == that.getShard() &&
+            getShards() == that.getShards() &&
+            Objects.equals(getAverages(), that.getAverages());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getShard(), getShards(), getAverages());
+    }
+
+    @Override
+    public String toString() {
+        return "SensorDataPartialAverages{" +
+            "shard=" + shard +
+            ", shards=" + shards +
+            ", averages=" + averages +
+            '}';
+    }
+}
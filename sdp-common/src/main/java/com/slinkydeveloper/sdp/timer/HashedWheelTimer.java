@@ -0,0 +1,264 @@
+package com.slinkydeveloper.sdp.timer;
+
+import com.slinkydeveloper.sdp.log.LoggerConfig;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Hashed wheel timer driven by a single worker thread: scheduling and cancelling a timeout are O(1)
+ * and the timeouts expire with the precision of one tick.
+ * <p>
+ * The expired tasks are executed one at a time, in expiration order, on a single task thread separated from the worker,
+ * so a slow task doesn't delay the wheel but it delays the tasks expiring after it.
+ * <p>
+ * This class is thread safe
+ */
+public class HashedWheelTimer {
+
+    private final static Logger LOG = LoggerConfig.getLogger(HashedWheelTimer.class);
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime;
+
+    private final Queue<Timeout> pendingTimeouts;
+    private final Queue<Timeout> cancelledTimeouts;
+    private final ExecutorService executor;
+    private final Thread worker;
+
+    private volatile boolean stopped;
+    // Accessed only by the worker thread
+    private long tick;
+
+    public HashedWheelTimer(String name, long tickMillis, int ticksPerWheel) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive");
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+            throw new IllegalArgumentException("Ticks per wheel must be between 1 and 2^30");
+        }
+        // Round the wheel size to a power of two, so the bucket index is a mask
+        int wheelSize = 1;
+        while (wheelSize < ticksPerWheel) {
+            wheelSize <<= 1;
+        }
+
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            this.wheel[i] = new Bucket();
+        }
+        this.mask = wheelSize - 1;
+        this.startTime = System.nanoTime();
+
+        this.pendingTimeouts = new ConcurrentLinkedQueue<>();
+        this.cancelledTimeouts = new ConcurrentLinkedQueue<>();
+
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, name + "-task");
+            t.setDaemon(true);
+            return t;
+        });
+        this.worker = new Thread(this::runWorker, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Schedule the task to be executed once after the provided delay
+     */
+    public Timeout newTimeout(Runnable task, long delayMillis) {
+        if (this.stopped) {
+            throw new IllegalStateException("Timer is stopped");
+        }
+        long deadline = System.nanoTime() - this.startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(delayMillis, 0));
+        if (deadline < 0) {
+            // Overflow, the timeout will never expire in practice
+            deadline = Long.MAX_VALUE;
+        }
+        Timeout timeout = new Timeout(task, deadline);
+        this.pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stop the worker thread. The timeouts not yet expired are discarded
+     */
+    public void stop() {
+        this.stopped = true;
+        this.worker.interrupt();
+        this.executor.shutdown();
+    }
+
+    private void runWorker() {
+        while (!this.stopped) {
+            long now = waitForNextTick();
+            if (now < 0) {
+                return;
+            }
+            Bucket bucket = this.wheel[(int) (this.tick & this.mask)];
+            processCancelledTimeouts();
+            transferPendingTimeouts();
+            bucket.expireTimeouts();
+            this.tick++;
+        }
+    }
+
+    /**
+     * @return the current time relative to the start time, or -1 if the timer was stopped
+     */
+    private long waitForNextTick() {
+        long deadline = this.tickNanos * (this.tick + 1);
+        while (true) {
+            long current = System.nanoTime() - this.startTime;
+            long sleepMillis = (deadline - current + 999999) / 1000000;
+            if (sleepMillis <= 0) {
+                return current;
+            }
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                if (this.stopped) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void transferPendingTimeouts() {
+        Timeout timeout;
+        while ((timeout = this.pendingTimeouts.poll()) != null) {
+            if (timeout.state.get() != Timeout.ST_INIT) {
+                continue;
+            }
+            long expirationTick = timeout.deadline / this.tickNanos;
+            timeout.remainingRounds = (expirationTick - this.tick) / this.wheel.length;
+            // If the deadline is already passed, expire it in the current tick
+            long ticks = Math.max(expirationTick, this.tick);
+            this.wheel[(int) (ticks & this.mask)].add(timeout);
+        }
+    }
+
+    private void processCancelledTimeouts() {
+        Timeout timeout;
+        while ((timeout = this.cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void expire(Timeout timeout) {
+        if (timeout.state.compareAndSet(Timeout.ST_INIT, Timeout.ST_EXPIRED)) {
+            try {
+                this.executor.execute(timeout.task);
+            } catch (RejectedExecutionException e) {
+                LOG.warning("Cannot execute expired timeout: " + e);
+            }
+        }
+    }
+
+    /**
+     * Handle of a scheduled task
+     */
+    public final class Timeout {
+
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state;
+
+        // Accessed only by the worker thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+            this.state = new AtomicInteger(ST_INIT);
+        }
+
+        /**
+         * @return true if the timeout was cancelled before its expiration
+         */
+        public boolean cancel() {
+            if (!this.state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            cancelledTimeouts.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return this.state.get() == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return this.state.get() == ST_EXPIRED;
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts, accessed only by the worker thread
+     */
+    private final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (this.head == null) {
+                this.head = this.tail = timeout;
+            } else {
+                this.tail.next = timeout;
+                timeout.prev = this.tail;
+                this.tail = timeout;
+            }
+        }
+
+        private void expireTimeouts() {
+            Timeout timeout = this.head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    expire(timeout);
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                this.head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                this.tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
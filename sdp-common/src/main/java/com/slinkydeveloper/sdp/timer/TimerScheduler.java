@@ -3,22 +3,31 @@ package com.slinkydeveloper.sdp.timer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
 import java.util.function.Predicate;
 
+/**
+ * Id keyed timers. A timer id stays scheduled, even after the timer is triggered, until it's cancelled or replaced.
+ * <p>
+ * All the timers share the same {@link HashedWheelTimer}, so scheduling doesn't create new threads
+ * and the triggered timers run one at a time
+ */
 public class TimerScheduler {
 
-    private final Map<String, Timer> timers;
+    private final static long TICK_MILLIS = 100;
+    private final static int TICKS_PER_WHEEL = 512;
+
+    private final Map<String, HashedWheelTimer.Timeout> timers;
+    private final HashedWheelTimer wheelTimer;
 
     public TimerScheduler() {
         this.timers = new HashMap<>();
+        this.wheelTimer = new HashedWheelTimer("timer-scheduler", TICK_MILLIS, TICKS_PER_WHEEL);
     }
 
     public synchronized void conditionalSchedule(Predicate<Set<String>> schedulePredicate, String id, long millis, Runnable runnable) {
         if (schedulePredicate.test(this.timers.keySet())) {
-            Timer timer = new Timer(id, true);
-            timer.schedule(new TimerTask(id, runnable), millis);
-            cancelTimer(this.timers.put(id, timer));
+            HashedWheelTimer.Timeout timeout = this.wheelTimer.newTimeout(new TimerTask(id, runnable), millis);
+            cancelTimer(this.timers.put(id, timeout));
         }
     }
 
@@ -30,12 +39,18 @@ public class TimerScheduler {
         cancelTimer(this.timers.remove(id));
     }
 
-    private void cancelTimer(Timer timer) {
-        if (timer != null) {
-            try {
-                timer.cancel();
-            } catch (IllegalStateException e) {
-            }
+    /**
+     * Cancel all the timers and stop the thread of the wheel. The scheduler can't be used anymore
+     */
+    public synchronized void stop() {
+        this.timers.values().forEach(this::cancelTimer);
+        this.timers.clear();
+        this.wheelTimer.stop();
+    }
+
+    private void cancelTimer(HashedWheelTimer.Timeout timeout) {
+        if (timeout != null) {
+            timeout.cancel();
         }
     }
 }
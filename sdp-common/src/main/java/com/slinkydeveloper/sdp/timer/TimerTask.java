@@ -4,7 +4,7 @@ import com.slinkydeveloper.sdp.log.LoggerConfig;
 
 import java.util.logging.Logger;
 
-class TimerTask extends java.util.TimerTask {
+class TimerTask implements Runnable {
 
     private final static Logger LOG = LoggerConfig.getLogger(TimerTask.class);
 
@@ -0,0 +1,110 @@
+package com.slinkydeveloper.sdp.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AtomicListTest {
+
+    @Test
+    void getLast() {
+        AtomicList<Integer> list = new AtomicList<>("test", Arrays.asList(1, 2, 3, 4));
+
+        assertThat(list.getLast(2))
+            .containsExactly(3, 4);
+        assertThat(list.getLast(4))
+            .containsExactly(1, 2, 3, 4);
+        assertThat(list.getLast(10))
+            .containsExactly(1, 2, 3, 4);
+        assertThat(list.getLast(Integer.MAX_VALUE))
+            .containsExactly(1, 2, 3, 4);
+        assertThat(list.getLast(0))
+            .isEmpty();
+        assertThat(list.getLast(-1))
+            .isEmpty();
+        assertThat(new AtomicList<Integer>("empty").getLast(3))
+            .isEmpty();
+    }
+
+    @Test
+    void removeFirstIsAllOrNothing() {
+        AtomicList<Integer> list = new AtomicList<>("test", Arrays.asList(1, 2, 3));
+
+        assertThatThrownBy(() -> list.removeFirst(4))
+            .isInstanceOf(NoSuchElementException.class);
+        assertThat(list.getCopy())
+            .containsExactly(1, 2, 3);
+
+        assertThat(list.removeFirst(2))
+            .containsExactly(1, 2);
+        assertThat(list.removeFirst())
+            .isEqualTo(3);
+        assertThatThrownBy(list::removeFirst)
+            .isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void concurrentAppendAndRemove() throws InterruptedException {
+        int producers = 4;
+        int values = 1000;
+        AtomicList<Integer> list = new AtomicList<>("test");
+        List<Integer> removed = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads.add(new Thread(() -> {
+                await(start);
+                for (int i = 0; i < values; i++) {
+                    list.append(producer * values + i);
+                }
+            }));
+        }
+        Thread consumer = new Thread(() -> {
+            await(start);
+            while (removed.size() < producers * values) {
+                try {
+                    // Every batch is removed entirely, or not at all
+                    removed.addAll(list.removeFirst(8));
+                } catch (NoSuchElementException e) {
+                    Thread.yield();
+                }
+            }
+        });
+        threads.forEach(Thread::start);
+        consumer.start();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        consumer.join(10000);
+
+        assertThat(removed)
+            .hasSize(producers * values)
+            .doesNotHaveDuplicates();
+        assertThat(list.getCopy())
+            .isEmpty();
+        // The values of every producer are removed in the order they were appended
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            assertThat(removed.stream().filter(v -> v / values == producer))
+                .isSorted();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.slinkydeveloper.sdp.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+class AtomicMapTest {
+
+    @Test
+    void putReturnsTheOldValue() {
+        AtomicMap<Integer, String> map = new AtomicMap<>("test", Collections.singletonMap(1, "a"));
+
+        assertThat(map.put(1, "b"))
+            .isEqualTo("a");
+        assertThat(map.put(2, "c"))
+            .isNull();
+        assertThat(map.getSnapshot())
+            .containsOnly(entry(1, "b"), entry(2, "c"));
+    }
+
+    @Test
+    void putIfChecksThePredicate() {
+        AtomicMap<Integer, String> map = new AtomicMap<>("test");
+
+        assertThat(map.putIf(1, "a", m -> !m.containsKey(1)))
+            .isTrue();
+        assertThat(map.putIf(1, "b", m -> !m.containsKey(1)))
+            .isFalse();
+        assertThat(map.getSnapshot())
+            .containsOnly(entry(1, "a"));
+    }
+
+    @Test
+    void snapshotsAreImmutableAndNotUpdated() {
+        AtomicMap<Integer, String> map = new AtomicMap<>("test", Collections.singletonMap(1, "a"));
+        Map<Integer, String> snapshot = map.getSnapshot();
+
+        map.put(2, "b");
+        Map<Integer, String> replaced = map.replaceAll(Collections.singletonMap(3, "c"));
+
+        assertThat(snapshot)
+            .containsOnly(entry(1, "a"));
+        assertThatThrownBy(() -> snapshot.put(4, "d"))
+            .isInstanceOf(UnsupportedOperationException.class);
+        assertThat(replaced)
+            .containsOnly(entry(1, "a"), entry(2, "b"));
+        assertThat(map.getSnapshot())
+            .containsOnly(entry(3, "c"));
+
+        Map<Integer, String> copy = map.getCopy();
+        copy.put(5, "e");
+        assertThat(map.getSnapshot())
+            .doesNotContainKey(5);
+    }
+
+    @Test
+    void concurrentPutsAreNotLost() throws InterruptedException {
+        AtomicMap<Integer, Integer> map = new AtomicMap<>("test");
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    map.put(thread * 500 + i, i);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(map.getSnapshot())
+            .hasSize(2000);
+    }
+}
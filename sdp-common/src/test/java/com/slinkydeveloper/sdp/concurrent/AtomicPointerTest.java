@@ -0,0 +1,59 @@
+package com.slinkydeveloper.sdp.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AtomicPointerTest {
+
+    @Test
+    void setGetAndClear() {
+        AtomicPointer<String> pointer = new AtomicPointer<>("test");
+        assertThat(pointer.isEmpty())
+            .isTrue();
+
+        pointer.set("a");
+        assertThat(pointer.get())
+            .isEqualTo("a");
+        assertThat(pointer.map(String::length))
+            .isEqualTo(1);
+
+        assertThat(pointer.getAndClear())
+            .isEqualTo("a");
+        assertThat(pointer.isEmpty())
+            .isTrue();
+    }
+
+    @Test
+    void swapReturnsTheOldValue() {
+        AtomicPointer<Integer> pointer = new AtomicPointer<>("test", 1);
+
+        assertThat(pointer.swap(v -> v + 1))
+            .isEqualTo(1);
+        assertThat(pointer.get())
+            .isEqualTo(2);
+    }
+
+    @Test
+    void concurrentSwapsAreNotLost() throws InterruptedException {
+        AtomicPointer<Integer> pointer = new AtomicPointer<>("test", 0);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    pointer.swap(v -> v + 1);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(pointer.get())
+            .isEqualTo(4000);
+    }
+}
@@ -0,0 +1,102 @@
+package com.slinkydeveloper.sdp.concurrent;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EventLoopTest {
+
+    private final EventLoop loop = new EventLoop("test-loop");
+
+    @AfterEach
+    void tearDown() {
+        this.loop.shutdown();
+    }
+
+    @Test
+    void tasksRunInOrderOnTheLoopThread() throws InterruptedException {
+        List<Integer> executed = new CopyOnWriteArrayList<>();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        AtomicBoolean inEventLoop = new AtomicBoolean(true);
+        for (int i = 0; i < 1000; i++) {
+            int task = i;
+            this.loop.execute(() -> {
+                executed.add(task);
+                threads.add(Thread.currentThread().getName());
+                inEventLoop.compareAndSet(true, this.loop.inEventLoop());
+            });
+        }
+        awaitExecuted();
+
+        assertThat(executed)
+            .hasSize(1000)
+            .isSorted();
+        assertThat(threads)
+            .containsExactly("test-loop");
+        assertThat(inEventLoop)
+            .isTrue();
+        assertThat(this.loop.inEventLoop())
+            .isFalse();
+    }
+
+    @Test
+    void throwingTaskDoesntStopTheLoop() throws InterruptedException {
+        this.loop.execute(() -> {
+            throw new IllegalStateException("Expected failure");
+        });
+        AtomicBoolean executed = new AtomicBoolean();
+        this.loop.execute(() -> executed.set(true));
+        awaitExecuted();
+
+        assertThat(executed)
+            .isTrue();
+    }
+
+    @Test
+    void shutdownRunsTheSubmittedTasksAndRejectsTheNewOnes() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<Integer> executed = new CopyOnWriteArrayList<>();
+        this.loop.execute(() -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        this.loop.execute(() -> executed.add(1));
+        this.loop.execute(() -> executed.add(2));
+
+        this.loop.shutdown();
+        assertThatThrownBy(() -> this.loop.execute(() -> executed.add(3)))
+            .isInstanceOf(RejectedExecutionException.class);
+        assertThat(this.loop.awaitTermination(100, TimeUnit.MILLISECONDS))
+            .isFalse();
+
+        blocked.countDown();
+        assertThat(this.loop.awaitTermination(5, TimeUnit.SECONDS))
+            .isTrue();
+        assertThat(executed)
+            .containsExactly(1, 2);
+    }
+
+    /**
+     * Wait for the tasks submitted before, using a task submitted after them
+     */
+    private void awaitExecuted() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        this.loop.execute(latch::countDown);
+        assertThat(latch.await(5, TimeUnit.SECONDS))
+            .isTrue();
+    }
+}
@@ -0,0 +1,118 @@
+package com.slinkydeveloper.sdp.timer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HashedWheelTimerTest {
+
+    private HashedWheelTimer timer;
+
+    @BeforeEach
+    void setUp() {
+        // A wheel of 8 ticks of 10 ms, so a rotation lasts 80 ms
+        this.timer = new HashedWheelTimer("test-timer", 10, 8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.timer.stop();
+    }
+
+    @Test
+    void expiresAfterTheDelay() throws InterruptedException {
+        CountDownLatch expired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        HashedWheelTimer.Timeout timeout = this.timer.newTimeout(expired::countDown, 50);
+
+        assertThat(expired.await(5, TimeUnit.SECONDS))
+            .isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+            .isGreaterThanOrEqualTo(50);
+        assertThat(timeout.isExpired())
+            .isTrue();
+        assertThat(timeout.cancel())
+            .isFalse();
+    }
+
+    @Test
+    void cancelledBeforeExpiry() throws InterruptedException {
+        AtomicInteger executed = new AtomicInteger();
+        HashedWheelTimer.Timeout timeout = this.timer.newTimeout(executed::incrementAndGet, 50);
+
+        assertThat(timeout.cancel())
+            .isTrue();
+        assertThat(timeout.isCancelled())
+            .isTrue();
+
+        Thread.sleep(200);
+        assertThat(executed)
+            .hasValue(0);
+        assertThat(timeout.isExpired())
+            .isFalse();
+    }
+
+    @Test
+    void deadlineLongerThanOneRotation() throws InterruptedException {
+        CountDownLatch expired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        // More than 3 rotations of the wheel
+        this.timer.newTimeout(expired::countDown, 250);
+
+        Thread.sleep(150);
+        assertThat(expired.getCount())
+            .isEqualTo(1);
+        assertThat(expired.await(5, TimeUnit.SECONDS))
+            .isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+            .isGreaterThanOrEqualTo(250);
+    }
+
+    @Test
+    void expiredTasksRunOneAtATimeInOrder() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch expired = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            int task = i;
+            // Expiring in the same tick, each task lasting longer than a tick
+            this.timer.newTimeout(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(15);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                executed.add(task);
+                running.decrementAndGet();
+                expired.countDown();
+            }, 20);
+        }
+
+        assertThat(expired.await(5, TimeUnit.SECONDS))
+            .isTrue();
+        assertThat(maxRunning)
+            .hasValue(1);
+        assertThat(executed)
+            .containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+    }
+
+    @Test
+    void newTimeoutAfterStop() {
+        this.timer.stop();
+
+        assertThatThrownBy(() -> this.timer.newTimeout(() -> {
+        }, 10))
+            .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,41 @@
+package com.slinkydeveloper.sdp.timer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimerSchedulerTest {
+
+    @Test
+    void stopCancelsTheTimers() throws InterruptedException {
+        TimerScheduler scheduler = new TimerScheduler();
+        AtomicInteger executed = new AtomicInteger();
+        scheduler.schedule("a", 100, executed::incrementAndGet);
+
+        scheduler.stop();
+
+        Thread.sleep(400);
+        assertThat(executed)
+            .hasValue(0);
+        // Cancelling after the stop is harmless
+        scheduler.cancel("a");
+    }
+
+    @Test
+    void replacedTimerIsCancelled() throws InterruptedException {
+        TimerScheduler scheduler = new TimerScheduler();
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        scheduler.schedule("a", 100, first::incrementAndGet);
+        scheduler.schedule("a", 100, second::incrementAndGet);
+
+        Thread.sleep(500);
+        scheduler.stop();
+        assertThat(first)
+            .hasValue(0);
+        assertThat(second)
+            .hasValue(1);
+    }
+}
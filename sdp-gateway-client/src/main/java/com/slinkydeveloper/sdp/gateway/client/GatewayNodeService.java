@@ -1,5 +1,9 @@
 package com.slinkydeveloper.sdp.gateway.client;
 
+import com.slinkydeveloper.sdp.model.SensorDataAverage;
+import com.slinkydeveloper.sdp.model.SensorDataPartialAverages;
+
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -11,5 +15,14 @@ public interface GatewayNodeService {
 
     void publishNewAverage(int senderId, Map<Integer, Double> readings);
 
+    void publishNewAverage(int senderId, SensorDataAverage average);
+
+    void publishNewAverages(int senderId, List<SensorDataAverage> averages);
+
+    /**
+     * Publish the averages of a shard, the gateway merges them with the ones of the other shards
+     */
+    void publishNewPartialAverages(int senderId, SensorDataPartialAverages partialAverages);
+
     void publishNewHosts(int senderId, Map<Integer, String> hosts);
 }
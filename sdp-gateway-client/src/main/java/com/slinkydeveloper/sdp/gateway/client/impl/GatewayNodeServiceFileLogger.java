@@ -1,10 +1,13 @@
 package com.slinkydeveloper.sdp.gateway.client.impl;
 
 import com.slinkydeveloper.sdp.gateway.client.GatewayNodeService;
+import com.slinkydeveloper.sdp.model.SensorDataAverage;
+import com.slinkydeveloper.sdp.model.SensorDataPartialAverages;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class GatewayNodeServiceFileLogger implements GatewayNodeService {
@@ -33,6 +36,49 @@ public class GatewayNodeServiceFileLogger implements GatewayNodeService {
         write(builder.toString());
     }
 
+    @Override
+    public void publishNewAverage(int senderId, SensorDataAverage average) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("--- publishNewAverage by ")
+            .append(senderId)
+            .append(" at ")
+            .append(System.currentTimeMillis())
+            .append(" ---\n");
+        appendAverage(builder, average);
+        builder.append('\n');
+        write(builder.toString());
+    }
+
+    @Override
+    public void publishNewAverages(int senderId, List<SensorDataAverage> averages) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("--- publishNewAverages by ")
+            .append(senderId)
+            .append(" at ")
+            .append(System.currentTimeMillis())
+            .append(" ---\n");
+        averages.forEach(a -> appendAverage(builder, a));
+        builder.append('\n');
+        write(builder.toString());
+    }
+
+    @Override
+    public void publishNewPartialAverages(int senderId, SensorDataPartialAverages partialAverages) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("--- publishNewPartialAverages of shard ")
+            .append(partialAverages.getShard())
+            .append("/")
+            .append(partialAverages.getShards())
+            .append(" by ")
+            .append(senderId)
+            .append(" at ")
+            .append(System.currentTimeMillis())
+            .append(" ---\n");
+        partialAverages.getAverages().forEach(a -> appendAverage(builder, a));
+        builder.append('\n');
+        write(builder.toString());
+    }
+
     @Override
     public void publishNewHosts(int senderId, Map<Integer, String> hosts) {
         StringBuilder builder = new StringBuilder();
@@ -46,6 +92,17 @@ public class GatewayNodeServiceFileLogger implements GatewayNodeService {
         write(builder.toString());
     }
 
+    private static void appendAverage(StringBuilder builder, SensorDataAverage average) {
+        builder.append("Nodes ").append(average.getParticipatingNodes()).append(": ").append(average.getAverage());
+        if (average.getWindowEnd() != null) {
+            builder.append(" in [").append(average.getWindowStart()).append(", ").append(average.getWindowEnd()).append(')');
+        }
+        if (average.getStatistics() != null) {
+            builder.append(' ').append(average.getStatistics());
+        }
+        builder.append('\n');
+    }
+
     private void write(String str) {
         try {
             FileOutputStream out = new FileOutputStream(filename, true);
@@ -4,6 +4,7 @@ import com.slinkydeveloper.sdp.gateway.client.GatewayNodeService;
 import com.slinkydeveloper.sdp.log.LoggerConfig;
 import com.slinkydeveloper.sdp.model.Node;
 import com.slinkydeveloper.sdp.model.SensorDataAverage;
+import com.slinkydeveloper.sdp.model.SensorDataPartialAverages;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
@@ -12,6 +13,7 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.net.URI;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
@@ -73,14 +75,39 @@ public class GatewayNodeServiceImpl implements GatewayNodeService {
 
     @Override
     public void publishNewAverage(int senderId, Map<Integer, Double> readings) {
+        publishNewAverage(senderId, new SensorDataAverage(
+            readings.keySet(),
+            readings.values().stream().collect(Collectors.averagingDouble(Double::doubleValue))
+        ));
+    }
+
+    @Override
+    public void publishNewAverage(int senderId, SensorDataAverage average) {
         Response res = this.client
             .target(host)
             .path(basePath.apply("publishNewAverage"))
             .request()
-            .post(Entity.entity(new SensorDataAverage(
-                readings.keySet(),
-                readings.values().stream().collect(Collectors.averagingDouble(Double::doubleValue))
-            ), MediaType.APPLICATION_JSON));
+            .post(Entity.entity(average, MediaType.APPLICATION_JSON));
         LOG.info("publishNewAverage response: " + res.getStatus());
     }
+
+    @Override
+    public void publishNewAverages(int senderId, List<SensorDataAverage> averages) {
+        Response res = this.client
+            .target(host)
+            .path(basePath.apply("publishNewAverages"))
+            .request()
+            .post(Entity.entity(averages, MediaType.APPLICATION_JSON));
+        LOG.info("publishNewAverages response: " + res.getStatus());
+    }
+
+    @Override
+    public void publishNewPartialAverages(int senderId, SensorDataPartialAverages partialAverages) {
+        Response res = this.client
+            .target(host)
+            .path(basePath.apply("publishNewPartialAverages"))
+            .request()
+            .post(Entity.entity(partialAverages, MediaType.APPLICATION_JSON));
+        LOG.info("publishNewPartialAverages response: " + res.getStatus());
+    }
 }
@@ -14,10 +14,12 @@ public class DataRepository {
 
     private final AtomicMap<Integer, String> hosts;
     private final AtomicList<Entry<ZonedDateTime, SensorDataAverage>> sensorData;
+    private final PartialAveragesMerger partialAverages;
 
     private DataRepository() {
         this.hosts = new AtomicMap<>("Hosts");
         this.sensorData = new AtomicList<>("Sensor readings");
+        this.partialAverages = new PartialAveragesMerger();
     }
 
     // Lazy initialization of singleton pattern
@@ -37,7 +39,7 @@ public class DataRepository {
 
     public static Set<Node> getNodesSet() {
         return getHosts()
-            .getCopy()
+            .getSnapshot()
             .entrySet()
             .stream()
             .map(e -> new Node(e.getKey(), e.getValue()))
@@ -47,4 +49,8 @@ public class DataRepository {
     public static AtomicList<Entry<ZonedDateTime, SensorDataAverage>> getSensorData() {
         return getInstance().sensorData;
     }
+
+    public static PartialAveragesMerger getPartialAverages() {
+        return getInstance().partialAverages;
+    }
 }
@@ -4,6 +4,7 @@ import com.slinkydeveloper.sdp.log.LoggerConfig;
 import com.slinkydeveloper.sdp.model.NetworkTopologyChangeEvent;
 import com.slinkydeveloper.sdp.model.Node;
 import com.slinkydeveloper.sdp.model.SensorDataAverage;
+import com.slinkydeveloper.sdp.model.SensorDataPartialAverages;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
@@ -13,8 +14,10 @@ import javax.ws.rs.container.ResourceContext;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -73,11 +76,56 @@ public class NodeResource {
         LOG.info("POST publishNewAverage. new average: " + newAverage);
         DataRepository
             .getSensorData()
-            .append(new SimpleImmutableEntry<>(ZonedDateTime.now(), newAverage));
+            .append(new SimpleImmutableEntry<>(collectedAt(newAverage, ZonedDateTime.now()), newAverage));
         context
             .getResource(EventsResource.class)
             .sendMessage(newAverage);
         return Response.accepted().build();
     }
 
+    @POST
+    @Path("publishNewAverages")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response publishNewAverages(@Context ResourceContext context, List<SensorDataAverage> newAverages) {
+        LOG.info("POST publishNewAverages. new averages: " + newAverages);
+        ZonedDateTime now = ZonedDateTime.now();
+        EventsResource events = context.getResource(EventsResource.class);
+        newAverages.forEach(newAverage -> {
+            DataRepository
+                .getSensorData()
+                .append(new SimpleImmutableEntry<>(collectedAt(newAverage, now), newAverage));
+            events.sendMessage(newAverage);
+        });
+        return Response.accepted().build();
+    }
+
+    @POST
+    @Path("publishNewPartialAverages")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response publishNewPartialAverages(@Context ResourceContext context, SensorDataPartialAverages partialAverages) {
+        LOG.info("POST publishNewPartialAverages. new partial averages: " + partialAverages);
+        ZonedDateTime now = ZonedDateTime.now();
+        EventsResource events = context.getResource(EventsResource.class);
+        DataRepository
+            .getPartialAverages()
+            .add(partialAverages)
+            .forEach(newAverage -> {
+                DataRepository
+                    .getSensorData()
+                    .append(new SimpleImmutableEntry<>(collectedAt(newAverage, now), newAverage));
+                events.sendMessage(newAverage);
+            });
+        return Response.accepted().build();
+    }
+
+    /**
+     * @return the end of the time window of the average if the node knows it, otherwise the reception time
+     */
+    private static ZonedDateTime collectedAt(SensorDataAverage average, ZonedDateTime receivedAt) {
+        if (average.getWindowEnd() == null) {
+            return receivedAt;
+        }
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(average.getWindowEnd()), receivedAt.getZone());
+    }
+
 }
@@ -0,0 +1,97 @@
+package com.slinkydeveloper.sdp.gateway;
+
+import com.slinkydeveloper.sdp.model.SensorDataAverage;
+import com.slinkydeveloper.sdp.model.SensorDataPartialAverages;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Merges the partial averages published by the shards of the ring: the oldest pending average of every shard
+ * is merged in a single average, weighted by the number of participating nodes.
+ * <p>
+ * This class is thread safe
+ */
+public class PartialAveragesMerger {
+
+    // Averages kept for a shard that is faster than the others
+    private final static int MAX_PENDING_AVERAGES = 64;
+
+    private final Map<Integer, Deque<SensorDataAverage>> pendingAverages;
+    private int shards;
+
+    public PartialAveragesMerger() {
+        this.pendingAverages = new HashMap<>();
+    }
+
+    /**
+     * @return the averages that can be merged after adding the provided ones
+     */
+    public synchronized List<SensorDataAverage> add(SensorDataPartialAverages partialAverages) {
+        if (partialAverages.getShards() != this.shards) {
+            // The ring was sharded again, the pending averages can't be merged anymore
+            this.pendingAverages.clear();
+            this.shards = partialAverages.getShards();
+        }
+
+        Deque<SensorDataAverage> pending = this.pendingAverages.computeIfAbsent(partialAverages.getShard(), s -> new ArrayDeque<>());
+        pending.addAll(partialAverages.getAverages());
+        while (pending.size() > MAX_PENDING_AVERAGES) {
+            pending.removeFirst();
+        }
+
+        List<SensorDataAverage> merged = new ArrayList<>();
+        while (this.pendingAverages.size() == this.shards && this.pendingAverages.values().stream().noneMatch(Deque::isEmpty)) {
+            merged.add(merge(this.pendingAverages.values().stream().map(Deque::removeFirst).collect(Collectors.toList())));
+        }
+        return merged;
+    }
+
+    private static SensorDataAverage merge(List<SensorDataAverage> averages) {
+        Set<Integer> participatingNodes = new HashSet<>();
+        double sum = 0;
+        for (SensorDataAverage average : averages) {
+            participatingNodes.addAll(average.getParticipatingNodes());
+            sum += average.getAverage() * average.getParticipatingNodes().size();
+        }
+        double mean = sum / participatingNodes.size();
+        return new SensorDataAverage(
+            participatingNodes,
+            mean,
+            mergeStatistics(averages, mean),
+            averages.stream().map(SensorDataAverage::getWindowStart).filter(Objects::nonNull).min(Long::compare).orElse(null),
+            averages.stream().map(SensorDataAverage::getWindowEnd).filter(Objects::nonNull).max(Long::compare).orElse(null)
+        );
+    }
+
+    /**
+     * Merge the statistics reported by every shard: min, max and standard deviation can be merged,
+     * while the percentiles of the shards can't, so they're dropped
+     */
+    private static Map<String, Double> mergeStatistics(List<SensorDataAverage> averages, double mean) {
+        if (averages.stream().anyMatch(a -> a.getStatistics() == null)) {
+            return null;
+        }
+        Map<String, Double> statistics = new HashMap<>();
+        if (averages.stream().allMatch(a -> a.getStatistics().containsKey("min"))) {
+            statistics.put("min", averages.stream().mapToDouble(a -> a.getStatistics().get("min")).min().getAsDouble());
+        }
+        if (averages.stream().allMatch(a -> a.getStatistics().containsKey("max"))) {
+            statistics.put("max", averages.stream().mapToDouble(a -> a.getStatistics().get("max")).max().getAsDouble());
+        }
+        if (averages.stream().allMatch(a -> a.getStatistics().containsKey("standardDeviation"))) {
+            // Sum of the squared differences from the mean of every shard, moved to the merged mean
+            double m2 = 0;
+            int count = 0;
+            for (SensorDataAverage average : averages) {
+                int n = average.getParticipatingNodes().size();
+                double standardDeviation = average.getStatistics().get("standardDeviation");
+                double delta = average.getAverage() - mean;
+                m2 += n * (standardDeviation * standardDeviation + delta * delta);
+                count += n;
+            }
+            statistics.put("standardDeviation", Math.sqrt(m2 / count));
+        }
+        return statistics;
+    }
+}
@@ -0,0 +1,262 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.log.LoggerConfig;
+import com.slinkydeveloper.sdp.node.simulator.Measurement;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Sliding window over the timestamps of the measurements: the windows are [k * slide, k * slide + size)
+ * and a window is reduced when the watermark, the biggest timestamp seen minus the allowed lateness, passes its end.
+ * A measurement older than the first window not reduced yet is dropped.
+ * <p>
+ * The measurements are kept in panes as long as the greatest common divisor of size and slide,
+ * so every pane belongs to the same windows. Empty windows are not reduced.
+ * <p>
+ * Thread safety: Only one thread can add measurements, but more threads can concurrently access
+ * to the available reduced values
+ */
+public class EventTimeWindowBuffer implements ReducedBuffer<Double> {
+
+    private final static Logger LOG = LoggerConfig.getLogger(EventTimeWindowBuffer.class);
+
+    private final long size;
+    private final long slide;
+    private final long pane;
+    private final long allowedLateness;
+    private final WindowReducer reducer;
+    private final int queueCapacity;
+
+    // Accessed only by the thread adding the measurements
+    private final TreeMap<Long, Pane> panes;
+    private long maxTimestamp;
+    private long nextWindowStart;
+    private boolean started;
+    private volatile long lateMeasurements;
+
+    // Guarded by this
+    private final Deque<WindowedMeasurement<Double>> reducedMeasurements;
+    private long droppedReducedMeasurements;
+
+    private volatile Runnable reducedMeasurementListener;
+
+    /**
+     * @param sizeMillis            length of a window
+     * @param slideMillis           distance between the starts of two consecutive windows
+     * @param allowedLatenessMillis how much a measurement can be late before its windows are reduced
+     * @param queueCapacity         maximum number of reduced values waiting to be polled, the oldest is dropped
+     */
+    public EventTimeWindowBuffer(long sizeMillis, long slideMillis, long allowedLatenessMillis, WindowReducer reducer, int queueCapacity) {
+        Objects.requireNonNull(reducer);
+        if (sizeMillis < 1 || slideMillis < 1 || allowedLatenessMillis < 0 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Window size and slide must be positive, the allowed lateness can't be negative");
+        }
+        this.size = sizeMillis;
+        this.slide = slideMillis;
+        this.pane = gcd(sizeMillis, slideMillis);
+        this.allowedLateness = allowedLatenessMillis;
+        this.reducer = reducer;
+        this.queueCapacity = queueCapacity;
+        this.panes = new TreeMap<>();
+        this.reducedMeasurements = new ArrayDeque<>();
+    }
+
+    /**
+     * Note: this method is not thread-safe, only a single thread can add measurements
+     */
+    @Override
+    public void addMeasurement(Measurement m) {
+        if (add(m.getValue(), m.getTimestamp())) {
+            notifyListener();
+        }
+    }
+
+    /**
+     * Add the measurements in one pass, invoking the listener once at the end if they closed some windows,
+     * or before the queue of the reduced values overflows.
+     * Note: this method is not thread-safe, only a single thread can add measurements
+     */
+    @Override
+    public void addMeasurements(String id, String type, double[] values, long[] timestamps, int length) {
+        boolean reduced = false;
+        for (int i = 0; i < length; i++) {
+            if (add(values[i], timestamps[i])) {
+                reduced = true;
+                // Let the consumers poll before the full queue drops the oldest value
+                if (queueIsFull()) {
+                    notifyListener();
+                    reduced = false;
+                }
+            }
+        }
+        if (reduced) {
+            notifyListener();
+        }
+    }
+
+    @Override
+    public boolean hasReducedMeasurements() {
+        synchronized (this) {
+            return !this.reducedMeasurements.isEmpty();
+        }
+    }
+
+    @Override
+    public List<Double> pollReducedMeasurements(int max) {
+        List<Double> polled = new ArrayList<>();
+        for (WindowedMeasurement<Double> windowed : pollWindowedMeasurements(max)) {
+            polled.add(windowed.getValue());
+        }
+        return polled;
+    }
+
+    @Override
+    public List<WindowedMeasurement<Double>> pollWindowedMeasurements(int max) {
+        synchronized (this) {
+            List<WindowedMeasurement<Double>> polled = new ArrayList<>(Math.min(max, this.reducedMeasurements.size()));
+            while (polled.size() < max && !this.reducedMeasurements.isEmpty()) {
+                polled.add(this.reducedMeasurements.poll());
+            }
+            return polled;
+        }
+    }
+
+    @Override
+    public void setReducedMeasurementListener(Runnable listener) {
+        this.reducedMeasurementListener = listener;
+    }
+
+    /**
+     * @return the number of measurements dropped because they arrived after the watermark passed their windows
+     */
+    public long getLateMeasurements() {
+        return this.lateMeasurements;
+    }
+
+    /**
+     * @return the number of reduced values dropped because the queue was full
+     */
+    public long getDroppedReducedMeasurements() {
+        synchronized (this) {
+            return this.droppedReducedMeasurements;
+        }
+    }
+
+    /**
+     * @return true if the measurement moved the watermark after the end of some windows
+     */
+    private boolean add(double value, long timestamp) {
+        if (!this.started) {
+            this.started = true;
+            this.maxTimestamp = timestamp;
+            this.nextWindowStart = firstWindowStartContaining(timestamp);
+        }
+        if (timestamp < this.nextWindowStart) {
+            this.lateMeasurements++;
+            LOG.fine(() -> "Dropping the measurement " + value + " at " + timestamp + ", its windows were already reduced");
+            return false;
+        }
+
+        this.panes.computeIfAbsent(Math.floorDiv(timestamp, this.pane) * this.pane, p -> new Pane()).add(value);
+        this.maxTimestamp = Math.max(this.maxTimestamp, timestamp);
+        return reduceWindowsBeforeWatermark();
+    }
+
+    private boolean reduceWindowsBeforeWatermark() {
+        boolean reduced = false;
+        long watermark = this.maxTimestamp - this.allowedLateness;
+        while (this.nextWindowStart + this.size <= watermark) {
+            long start = this.nextWindowStart;
+            long end = start + this.size;
+            Map<Long, Pane> windowPanes = this.panes.subMap(start, end);
+            if (windowPanes.isEmpty()) {
+                if (this.panes.isEmpty()) {
+                    break;
+                }
+                // Skip the empty windows up to the first one with a measurement
+                this.nextWindowStart = Math.max(start + this.slide, firstWindowStartContaining(this.panes.firstKey()));
+            } else {
+                this.reducer.clear();
+                windowPanes.values().forEach(p -> p.addTo(this.reducer));
+                enqueue(new WindowedMeasurement<>(start, end, this.reducer.reduce()));
+                reduced = true;
+                this.nextWindowStart = start + this.slide;
+            }
+            // Remove the panes that don't belong to the next windows
+            this.panes.headMap(this.nextWindowStart).clear();
+        }
+        return reduced;
+    }
+
+    private void enqueue(WindowedMeasurement<Double> reduced) {
+        LOG.finest(() -> "New reduced value " + reduced);
+        synchronized (this) {
+            if (this.reducedMeasurements.size() == this.queueCapacity) {
+                this.reducedMeasurements.poll();
+                this.droppedReducedMeasurements++;
+            }
+            this.reducedMeasurements.add(reduced);
+        }
+    }
+
+    private boolean queueIsFull() {
+        synchronized (this) {
+            return this.reducedMeasurements.size() == this.queueCapacity;
+        }
+    }
+
+    private void notifyListener() {
+        Runnable listener = this.reducedMeasurementListener;
+        if (listener != null) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                // Don't stop the producer of the measurements
+                LOG.warning("Error in the reduced measurement listener: " + e);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return the start of the oldest window containing the timestamp
+     */
+    private long firstWindowStartContaining(long timestamp) {
+        return (Math.floorDiv(timestamp - this.size, this.slide) + 1) * this.slide;
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * Values of the measurements with timestamp in [start, start + pane)
+     */
+    private static class Pane {
+
+        private double[] values = new double[4];
+        private int count;
+
+        private void add(double value) {
+            if (this.count == this.values.length) {
+                double[] grown = new double[this.values.length * 2];
+                System.arraycopy(this.values, 0, grown, 0, this.count);
+                this.values = grown;
+            }
+            this.values[this.count++] = value;
+        }
+
+        private void addTo(WindowReducer reducer) {
+            for (int i = 0; i < this.count; i++) {
+                reducer.add(this.values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.log.LoggerConfig;
+import com.slinkydeveloper.sdp.node.simulator.Measurement;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * Buffer that writes in a {@link ReducedMeasurementLog} the reduced values of another buffer
+ * before making them available, and marks them consumed when they're polled to be put on the token.
+ * The values not consumed before a restart are replayed when the buffer is created, and they're polled first.
+ * <p>
+ * When the other buffer notifies a new reduced value, it's moved in the log and in a queue in memory in the same order,
+ * so the values are consumed in the order they were appended even if the other buffer is polled round robin.
+ * <p>
+ * This class is thread safe
+ */
+public class JournaledReducedBuffer implements ReducedBuffer<Double> {
+
+    private final static Logger LOG = LoggerConfig.getLogger(JournaledReducedBuffer.class);
+
+    private final ReducedBuffer<Double> upstream;
+    private final ReducedMeasurementLog log;
+    private final int capacity;
+
+    // Guarded by this
+    private final Deque<WindowedMeasurement<Double>> pending;
+    private long firstPendingSequence;
+    private long droppedReducedMeasurements;
+
+    private volatile Runnable reducedMeasurementListener;
+
+    /**
+     * @param capacity maximum number of values waiting to be polled, the oldest is dropped and marked consumed
+     */
+    public JournaledReducedBuffer(ReducedBuffer<Double> upstream, ReducedMeasurementLog log, int capacity) throws IOException {
+        Objects.requireNonNull(upstream);
+        Objects.requireNonNull(log);
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.upstream = upstream;
+        this.log = log;
+        this.capacity = capacity;
+        this.pending = new ArrayDeque<>();
+
+        List<WindowedMeasurement<Double>> replayed = log.replay();
+        this.firstPendingSequence = log.getNextSequence() - replayed.size();
+        replayed.forEach(this::enqueue);
+        if (!replayed.isEmpty()) {
+            LOG.info("Replayed " + replayed.size() + " reduced values not consumed before the restart");
+        }
+
+        upstream.setReducedMeasurementListener(this::journalReducedMeasurements);
+    }
+
+    @Override
+    public void addMeasurement(Measurement m) {
+        this.upstream.addMeasurement(m);
+    }
+
+    @Override
+    public void addMeasurements(String id, String type, double[] values, long[] timestamps, int length) {
+        this.upstream.addMeasurements(id, type, values, timestamps, length);
+    }
+
+    @Override
+    public boolean hasReducedMeasurements() {
+        synchronized (this) {
+            return !this.pending.isEmpty();
+        }
+    }
+
+    @Override
+    public List<Double> pollReducedMeasurements(int max) {
+        List<Double> polled = new ArrayList<>();
+        for (WindowedMeasurement<Double> windowed : pollWindowedMeasurements(max)) {
+            polled.add(windowed.getValue());
+        }
+        return polled;
+    }
+
+    @Override
+    public List<WindowedMeasurement<Double>> pollWindowedMeasurements(int max) {
+        synchronized (this) {
+            List<WindowedMeasurement<Double>> polled = new ArrayList<>(Math.min(max, this.pending.size()));
+            while (polled.size() < max && !this.pending.isEmpty()) {
+                polled.add(this.pending.poll());
+            }
+            if (!polled.isEmpty()) {
+                this.firstPendingSequence += polled.size();
+                this.log.markConsumed(this.firstPendingSequence - 1);
+            }
+            return polled;
+        }
+    }
+
+    @Override
+    public void setReducedMeasurementListener(Runnable listener) {
+        this.reducedMeasurementListener = listener;
+    }
+
+    /**
+     * @return the number of reduced values dropped because the queue was full or the log failed
+     */
+    public long getDroppedReducedMeasurements() {
+        synchronized (this) {
+            return this.droppedReducedMeasurements;
+        }
+    }
+
+    private void journalReducedMeasurements() {
+        List<WindowedMeasurement<Double>> reduced = this.upstream.pollWindowedMeasurements(Integer.MAX_VALUE);
+        if (reduced.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (WindowedMeasurement<Double> windowed : reduced) {
+                try {
+                    this.log.append(windowed);
+                } catch (IOException e) {
+                    // The queued values must match the sequence numbers of the log, so the value is dropped
+                    LOG.warning("Cannot append " + windowed + " to the log, dropping it: " + e);
+                    e.printStackTrace();
+                    this.droppedReducedMeasurements++;
+                    continue;
+                }
+                enqueue(windowed);
+            }
+        }
+        Runnable listener = this.reducedMeasurementListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    // Must be invoked holding the lock, or from the constructor
+    private void enqueue(WindowedMeasurement<Double> windowed) {
+        if (this.pending.size() == this.capacity) {
+            this.pending.poll();
+            this.firstPendingSequence++;
+            this.droppedReducedMeasurements++;
+            this.log.markConsumed(this.firstPendingSequence - 1);
+        }
+        this.pending.add(windowed);
+    }
+}
@@ -0,0 +1,151 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.node.QuantileSketch;
+import com.slinkydeveloper.sdp.node.QuantileSketchLevel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * KLL quantile sketch (Karnin, Lang, Liberty): the level i keeps a sample of the values with weight 2^i,
+ * and when a level is full half of its sorted items are promoted to the next one.
+ * The capacities of the levels decrease geometrically from the top one, so the sketch keeps O(k) items
+ * regardless of the number of values.
+ * <p>
+ * This class is not thread safe
+ */
+class KllSketch {
+
+    private final static double CAPACITY_DECAY = 2.0 / 3.0;
+    private final static int MIN_CAPACITY = 2;
+
+    private final int k;
+    private final List<List<Double>> levels;
+
+    KllSketch(int k) {
+        if (k < MIN_CAPACITY) {
+            throw new IllegalArgumentException("Sketch accuracy must be at least " + MIN_CAPACITY);
+        }
+        this.k = k;
+        this.levels = new ArrayList<>();
+        this.levels.add(new ArrayList<>());
+    }
+
+    /**
+     * @param defaultK accuracy used when the message is empty
+     */
+    static KllSketch fromProto(QuantileSketch sketch, int defaultK) {
+        KllSketch result = new KllSketch(sketch.getK() > 0 ? sketch.getK() : defaultK);
+        result.mergeLevels(sketch.getLevelsList());
+        return result;
+    }
+
+    QuantileSketch toProto() {
+        QuantileSketch.Builder builder = QuantileSketch.newBuilder().setK(this.k);
+        for (List<Double> level : this.levels) {
+            builder.addLevels(QuantileSketchLevel.newBuilder().addAllItems(level));
+        }
+        return builder.build();
+    }
+
+    void add(double value) {
+        this.levels.get(0).add(value);
+        compress();
+    }
+
+    /**
+     * Add the values of the other sketch, keeping the accuracy of this one
+     */
+    void merge(KllSketch other) {
+        for (int i = 0; i < other.levels.size(); i++) {
+            if (i == this.levels.size()) {
+                this.levels.add(new ArrayList<>());
+            }
+            this.levels.get(i).addAll(other.levels.get(i));
+        }
+        compress();
+    }
+
+    /**
+     * @return the number of values added to the sketch
+     */
+    long count() {
+        long count = 0;
+        for (int i = 0; i < this.levels.size(); i++) {
+            count += ((long) this.levels.get(i).size()) << i;
+        }
+        return count;
+    }
+
+    /**
+     * @param q rank between 0 and 1
+     * @return the estimated value of rank q, NaN if the sketch is empty
+     */
+    double quantile(double q) {
+        List<double[]> weighted = new ArrayList<>();
+        for (int i = 0; i < this.levels.size(); i++) {
+            for (double item : this.levels.get(i)) {
+                weighted.add(new double[]{item, 1L << i});
+            }
+        }
+        if (weighted.isEmpty()) {
+            return Double.NaN;
+        }
+        weighted.sort((a, b) -> Double.compare(a[0], b[0]));
+
+        double target = q * count();
+        double cumulative = 0;
+        for (double[] item : weighted) {
+            cumulative += item[1];
+            if (cumulative >= target) {
+                return item[0];
+            }
+        }
+        return weighted.get(weighted.size() - 1)[0];
+    }
+
+    private void mergeLevels(List<QuantileSketchLevel> others) {
+        for (int i = 0; i < others.size(); i++) {
+            if (i == this.levels.size()) {
+                this.levels.add(new ArrayList<>());
+            }
+            this.levels.get(i).addAll(others.get(i).getItemsList());
+        }
+    }
+
+    private int capacity(int level) {
+        int depth = this.levels.size() - 1 - level;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(this.k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    private void compress() {
+        int level = 0;
+        while (level < this.levels.size()) {
+            if (this.levels.get(level).size() >= capacity(level)) {
+                compact(level);
+                // Adding a level shrinks the capacities of the lower ones
+                level = 0;
+            } else {
+                level++;
+            }
+        }
+    }
+
+    private void compact(int level) {
+        List<Double> items = this.levels.get(level);
+        Collections.sort(items);
+        if (level + 1 == this.levels.size()) {
+            this.levels.add(new ArrayList<>());
+        }
+        List<Double> next = this.levels.get(level + 1);
+
+        // With an odd number of items the biggest one stays in this level
+        int paired = items.size() - items.size() % 2;
+        for (int i = ThreadLocalRandom.current().nextInt(2); i < paired; i += 2) {
+            next.add(items.get(i));
+        }
+        this.levels.set(level, new ArrayList<>(items.subList(paired, items.size())));
+    }
+}
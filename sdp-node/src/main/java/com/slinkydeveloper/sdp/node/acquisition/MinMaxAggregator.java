@@ -0,0 +1,28 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.node.SensorReadingsAggregate;
+
+import java.util.Map;
+
+class MinMaxAggregator implements SensorReadingsAggregator {
+
+    @Override
+    public void add(SensorReadingsAggregate aggregate, double value, SensorReadingsAggregate.Builder into) {
+        into
+            .setMin(aggregate.getCount() == 0 ? value : Math.min(aggregate.getMin(), value))
+            .setMax(aggregate.getCount() == 0 ? value : Math.max(aggregate.getMax(), value));
+    }
+
+    @Override
+    public void merge(SensorReadingsAggregate a, SensorReadingsAggregate b, SensorReadingsAggregate.Builder into) {
+        into
+            .setMin(Math.min(a.getMin(), b.getMin()))
+            .setMax(Math.max(a.getMax(), b.getMax()));
+    }
+
+    @Override
+    public void report(SensorReadingsAggregate aggregate, Map<String, Double> into) {
+        into.put("min", aggregate.getMin());
+        into.put("max", aggregate.getMax());
+    }
+}
@@ -0,0 +1,253 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.log.LoggerConfig;
+import com.slinkydeveloper.sdp.node.simulator.Buffer;
+import com.slinkydeveloper.sdp.node.simulator.Measurement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Buffer fed by many sensors: the measurements are enqueued in a bounded multi producer ring buffer,
+ * then moved in a window for every sensor, keyed by {@link Measurement#getId()}.
+ * The reduced values are exposed per sensor type with {@link #forType(String)}.
+ * <p>
+ * There's no consumer thread: after enqueueing, a producer drains the ring buffer if no other producer is doing it,
+ * so every window still has a single writer at a time.
+ * <p>
+ * This class is thread safe and lock free, a producer waits only when the ring buffer is full
+ */
+public class MultiSensorBuffer implements Buffer {
+
+    private final static Logger LOG = LoggerConfig.getLogger(MultiSensorBuffer.class);
+
+    private final AtomicReferenceArray<Measurement> slots;
+    private final int mask;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private final AtomicBoolean draining;
+
+    private final Supplier<? extends ReducedBuffer<Double>> windowFactory;
+
+    private final ConcurrentHashMap<String, SensorTypeBuffer> types;
+    // Accessed only by the producer draining the ring buffer
+    private final Map<String, ReducedBuffer<Double>> windows;
+
+    /**
+     * @param ringCapacity   capacity of the ring buffer, rounded up to a power of two
+     * @param reducerFactory creates the reducer of the window of every sensor
+     */
+    public MultiSensorBuffer(int ringCapacity, int slidingWindowCapacity, double overlap, Supplier<WindowReducer> reducerFactory) {
+        this(ringCapacity, () -> new PrimitiveSlidingWindowBuffer(slidingWindowCapacity, overlap, reducerFactory.get()));
+    }
+
+    /**
+     * @param ringCapacity  capacity of the ring buffer, rounded up to a power of two
+     * @param windowFactory creates the window of every sensor, like a {@link PrimitiveSlidingWindowBuffer}
+     *                      or an {@link EventTimeWindowBuffer}
+     */
+    public MultiSensorBuffer(int ringCapacity, Supplier<? extends ReducedBuffer<Double>> windowFactory) {
+        if (ringCapacity < 1) {
+            throw new IllegalArgumentException("Ring capacity must be at least 1");
+        }
+        int capacity = Integer.highestOneBit(ringCapacity);
+        if (capacity < ringCapacity) {
+            capacity <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.draining = new AtomicBoolean();
+        this.windowFactory = windowFactory;
+        this.types = new ConcurrentHashMap<>();
+        this.windows = new HashMap<>();
+    }
+
+    @Override
+    public void addMeasurement(Measurement m) {
+        while (!offer(m)) {
+            // Full: help draining, or give the time to the producer draining it
+            drain();
+            Thread.yield();
+        }
+        drain();
+    }
+
+    /**
+     * If no other producer is draining the ring buffer, the burst is added directly to the window of the sensor
+     * after draining the measurements enqueued before it, otherwise the measurements are enqueued one by one
+     */
+    @Override
+    public void addMeasurements(String id, String type, double[] values, long[] timestamps, int length) {
+        if (!this.draining.compareAndSet(false, true)) {
+            Buffer.super.addMeasurements(id, type, values, timestamps, length);
+            return;
+        }
+        try {
+            drainRing();
+            window(id, type).addMeasurements(id, type, values, timestamps, length);
+        } finally {
+            this.draining.set(false);
+        }
+        // Drain the measurements enqueued while the burst was added
+        drain();
+    }
+
+    /**
+     * @return the reduced values of the sensors of the provided type. The returned buffer adds the measurements
+     * to this one, whatever their type
+     */
+    public ReducedBuffer<Double> forType(String type) {
+        return this.types.computeIfAbsent(type, SensorTypeBuffer::new);
+    }
+
+    private boolean offer(Measurement m) {
+        long t;
+        do {
+            t = this.tail.get();
+            if (t - this.head.get() > this.mask) {
+                return false;
+            }
+        } while (!this.tail.compareAndSet(t, t + 1));
+        // The slot is visible to the consumer only when it's not null.
+        // A volatile store, so it can't be reordered after the read of the draining flag in drain:
+        // either this producer drains, or the producer releasing the flag sees the slot when it checks again
+        this.slots.set((int) (t & this.mask), m);
+        return true;
+    }
+
+    private void drain() {
+        do {
+            if (!this.draining.compareAndSet(false, true)) {
+                // The producer draining will see the measurement, because it checks again after releasing
+                return;
+            }
+            try {
+                drainRing();
+            } finally {
+                this.draining.set(false);
+            }
+        } while (this.slots.get((int) (this.head.get() & this.mask)) != null);
+    }
+
+    // Must be invoked holding the draining flag
+    private void drainRing() {
+        long h = this.head.get();
+        Measurement m;
+        while ((m = this.slots.get((int) (h & this.mask))) != null) {
+            this.slots.lazySet((int) (h & this.mask), null);
+            this.head.lazySet(++h);
+            window(m.getId(), m.getType()).addMeasurement(m);
+        }
+    }
+
+    private ReducedBuffer<Double> window(String id, String type) {
+        ReducedBuffer<Double> window = this.windows.get(id);
+        if (window == null) {
+            LOG.fine(() -> "New sensor " + id + " of type " + type);
+            window = this.windowFactory.get();
+            this.windows.put(id, window);
+            this.types.computeIfAbsent(type, SensorTypeBuffer::new).addWindow(window);
+        }
+        return window;
+    }
+
+    /**
+     * Reduced values of the sensors of a type, polled in turn from the window of every sensor
+     */
+    private class SensorTypeBuffer implements ReducedBuffer<Double> {
+
+        private final String type;
+        private final List<ReducedBuffer<Double>> windows;
+        private final AtomicInteger nextWindow;
+        private volatile Runnable reducedMeasurementListener;
+
+        private SensorTypeBuffer(String type) {
+            this.type = type;
+            this.windows = new CopyOnWriteArrayList<>();
+            this.nextWindow = new AtomicInteger();
+        }
+
+        private void addWindow(ReducedBuffer<Double> window) {
+            window.setReducedMeasurementListener(() -> {
+                Runnable listener = this.reducedMeasurementListener;
+                if (listener != null) {
+                    listener.run();
+                }
+            });
+            this.windows.add(window);
+        }
+
+        @Override
+        public void addMeasurement(Measurement m) {
+            MultiSensorBuffer.this.addMeasurement(m);
+        }
+
+        @Override
+        public void addMeasurements(String id, String type, double[] values, long[] timestamps, int length) {
+            MultiSensorBuffer.this.addMeasurements(id, type, values, timestamps, length);
+        }
+
+        @Override
+        public boolean hasReducedMeasurements() {
+            return this.windows.stream().anyMatch(ReducedBuffer::hasReducedMeasurements);
+        }
+
+        @Override
+        public List<Double> pollReducedMeasurements(int max) {
+            return pollWindowedMeasurements(max)
+                .stream()
+                .map(WindowedMeasurement::getValue)
+                .collect(Collectors.toList());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public List<WindowedMeasurement<Double>> pollWindowedMeasurements(int max) {
+            List<WindowedMeasurement<Double>> polled = new ArrayList<>();
+            Object[] windows = this.windows.toArray();
+            if (windows.length == 0) {
+                return polled;
+            }
+            // Start every poll from a different sensor, so none of them is left behind
+            int start = Math.floorMod(this.nextWindow.getAndIncrement(), windows.length);
+            boolean found = true;
+            while (polled.size() < max && found) {
+                found = false;
+                for (int i = 0; i < windows.length && polled.size() < max; i++) {
+                    List<WindowedMeasurement<Double>> value = ((ReducedBuffer<Double>) windows[(start + i) % windows.length]).pollWindowedMeasurements(1);
+                    if (!value.isEmpty()) {
+                        polled.addAll(value);
+                        found = true;
+                    }
+                }
+            }
+            return polled;
+        }
+
+        @Override
+        public void setReducedMeasurementListener(Runnable listener) {
+            this.reducedMeasurementListener = listener;
+        }
+
+        @Override
+        public String toString() {
+            return "SensorTypeBuffer{" +
+                "type='" + this.type + '\'' +
+                ", sensors=" + this.windows.size() +
+                '}';
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.slinkydeveloper.sdp.node.acquisition;
 
 import com.slinkydeveloper.sdp.log.LoggerConfig;
-import com.slinkydeveloper.sdp.node.simulator.Buffer;
 import com.slinkydeveloper.sdp.node.simulator.Measurement;
 
 import java.util.*;
@@ -19,7 +18,7 @@ import java.util.stream.Stream;
  *
  * @param <T> Reduced values type
  */
-public class OverlappingSlidingWindowBuffer<T> implements Buffer {
+public class OverlappingSlidingWindowBuffer<T> implements ReducedBuffer<T> {
 
     private final static Logger LOG = LoggerConfig.getLogger(OverlappingSlidingWindowBuffer.class);
 
@@ -36,6 +35,7 @@ public class OverlappingSlidingWindowBuffer<T> implements Buffer {
     // Measurements enqueued
     private final Queue<T> reducedMeasurements;
     private final Function<Stream<Measurement>, T> reducer;
+    private volatile Runnable reducedMeasurementListener;
 
     public OverlappingSlidingWindowBuffer(int slidingWindowCapacity, double overlap, Function<Stream<Measurement>, T> reducer) {
         Objects.requireNonNull(reducer);
@@ -45,6 +45,15 @@ public class OverlappingSlidingWindowBuffer<T> implements Buffer {
         this.reducer = reducer;
     }
 
+    /**
+     * Set the listener invoked after a new reduced measurement is enqueued.
+     * The listener is invoked on the thread adding the measurements, so it should return quickly
+     */
+    @Override
+    public void setReducedMeasurementListener(Runnable listener) {
+        this.reducedMeasurementListener = listener;
+    }
+
     /**
      * Check if there are any reduced measurements.
      * If you need to perform polling, avoid checking with this method and then
@@ -52,6 +61,7 @@ public class OverlappingSlidingWindowBuffer<T> implements Buffer {
      *
      * @return true if there are any reduced measurements
      */
+    @Override
     public boolean hasReducedMeasurements() {
         synchronized (reducedMeasurements) {
             return !reducedMeasurements.isEmpty();
@@ -69,6 +79,23 @@ public class OverlappingSlidingWindowBuffer<T> implements Buffer {
         }
     }
 
+    /**
+     * Non waiting poll for more reduced measurements
+     *
+     * @param max maximum number of reduced measurements to poll
+     * @return the oldest reduced measurements in the queue, empty if there isn't any reduced measurement
+     */
+    @Override
+    public List<T> pollReducedMeasurements(int max) {
+        synchronized (reducedMeasurements) {
+            List<T> polled = new ArrayList<>(Math.min(max, reducedMeasurements.size()));
+            while (polled.size() < max && !reducedMeasurements.isEmpty()) {
+                polled.add(reducedMeasurements.poll());
+            }
+            return polled;
+        }
+    }
+
     /**
      * Note: this method is not thread-safe, only a single thread can add measurements
      *
@@ -76,20 +103,62 @@ public class OverlappingSlidingWindowBuffer<T> implements Buffer {
      */
     @Override
     public void addMeasurement(Measurement m) {
+        if (add(m)) {
+            T reduced = this.reducer.apply(Arrays.stream(this.measurements));
+            LOG.finest("New reduced value " + reduced.toString());
+            synchronized (reducedMeasurements) {
+                this.reducedMeasurements.add(reduced);
+            }
+            notifyListener();
+        }
+    }
+
+    /**
+     * Add the measurements in one pass, enqueueing the values of all the windows completed by them
+     * and invoking the listener once.
+     * Note: this method is not thread-safe, only a single thread can add measurements
+     */
+    @Override
+    public void addMeasurements(String id, String type, double[] values, long[] timestamps, int length) {
+        List<T> reduced = null;
+        for (int i = 0; i < length; i++) {
+            if (add(new Measurement(id, type, values[i], timestamps[i]))) {
+                if (reduced == null) {
+                    reduced = new ArrayList<>();
+                }
+                reduced.add(this.reducer.apply(Arrays.stream(this.measurements)));
+            }
+        }
+        if (reduced != null) {
+            LOG.finest("New reduced values " + reduced);
+            synchronized (reducedMeasurements) {
+                this.reducedMeasurements.addAll(reduced);
+            }
+            notifyListener();
+        }
+    }
+
+    /**
+     * @return true if the measurement completed a window
+     */
+    private boolean add(Measurement m) {
         this.measurements[this.measurementsWriteIndex] = m;
         this.measurementsWriteIndex = (this.measurementsWriteIndex + 1) % this.measurements.length;
         this.written++;
         LOG.finest("Measurement: " + m.getValue() + ", timestamp: " + m.getTimestamp() + ", written: " + this.written);
-        if (this.written >= this.measurements.length && (this.written % this.overlapNumber == 0)) {
-            generateNewReducedMeasurement();
-        }
+        return this.written >= this.measurements.length && (this.written % this.overlapNumber == 0);
     }
 
-    private void generateNewReducedMeasurement() {
-        T reduced = this.reducer.apply(Arrays.stream(this.measurements));
-        LOG.finest("New reduced value " + reduced.toString());
-        synchronized (reducedMeasurements) {
-            this.reducedMeasurements.add(reduced);
+    private void notifyListener() {
+        Runnable listener = this.reducedMeasurementListener;
+        if (listener != null) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                // Don't stop the producer of the measurements
+                LOG.warning("Error in the reduced measurement listener: " + e);
+                e.printStackTrace();
+            }
         }
     }
 }
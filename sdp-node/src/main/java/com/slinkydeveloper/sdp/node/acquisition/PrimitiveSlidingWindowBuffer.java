@@ -0,0 +1,184 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.log.LoggerConfig;
+import com.slinkydeveloper.sdp.node.simulator.Measurement;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.OptionalDouble;
+import java.util.logging.Logger;
+
+/**
+ * Overlapping sliding window like {@link OverlappingSlidingWindowBuffer}, but the window and the queue
+ * of the reduced values are arrays of doubles and the window is reduced incrementally by a {@link WindowReducer},
+ * so adding a measurement doesn't allocate and costs O(1).
+ * <p>
+ * The reducer is rebuilt from the window every time the window wraps, so the rounding errors
+ * of the running values don't accumulate.
+ * <p>
+ * The reduced values are kept in a bounded {@link ReducedMeasurementQueue}, so the memory stays flat
+ * when nobody polls them.
+ * <p>
+ * Thread safety: Only one thread can add measurements, but more threads can concurrently access
+ * to the available reduced values
+ */
+public class PrimitiveSlidingWindowBuffer implements ReducedBuffer<Double> {
+
+    private final static Logger LOG = LoggerConfig.getLogger(PrimitiveSlidingWindowBuffer.class);
+
+    private final static int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    // Ring buffer of the window, accessed only by the thread adding the measurements
+    private final double[] window;
+    private final WindowReducer reducer;
+    private final int overlapNumber;
+    private int windowWriteIndex;
+    private long written;
+
+    private final ReducedMeasurementQueue reducedMeasurements;
+
+    private volatile Runnable reducedMeasurementListener;
+
+    public PrimitiveSlidingWindowBuffer(int slidingWindowCapacity, double overlap, WindowReducer reducer) {
+        this(slidingWindowCapacity, overlap, reducer, DEFAULT_QUEUE_CAPACITY, ReducedMeasurementQueue.OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * @param queueCapacity  maximum number of reduced values waiting to be polled
+     * @param overflowPolicy what to do with a new reduced value when the queue is full
+     */
+    public PrimitiveSlidingWindowBuffer(int slidingWindowCapacity, double overlap, WindowReducer reducer, int queueCapacity, ReducedMeasurementQueue.OverflowPolicy overflowPolicy) {
+        Objects.requireNonNull(reducer);
+        this.overlapNumber = (int) (slidingWindowCapacity * overlap);
+        if (slidingWindowCapacity < 1 || this.overlapNumber < 1) {
+            throw new IllegalArgumentException("The window must slide by at least one measurement");
+        }
+        this.window = new double[slidingWindowCapacity];
+        this.reducer = reducer;
+        this.reducer.clear();
+        this.reducedMeasurements = new ReducedMeasurementQueue(queueCapacity, overflowPolicy, reducer::merge);
+    }
+
+    @Override
+    public void addMeasurement(Measurement m) {
+        addMeasurement(m.getValue());
+    }
+
+    /**
+     * Like {@link #addMeasurement(Measurement)}, without the measurement object.
+     * Note: this method is not thread-safe, only a single thread can add measurements
+     */
+    public void addMeasurement(double value) {
+        if (add(value)) {
+            notifyListener();
+        }
+    }
+
+    /**
+     * Add the values in one pass, invoking the listener once at the end if they completed some windows,
+     * or before the queue of the reduced values overflows.
+     * Note: this method is not thread-safe, only a single thread can add measurements
+     */
+    @Override
+    public void addMeasurements(String id, String type, double[] values, long[] timestamps, int length) {
+        boolean enqueued = false;
+        for (int i = 0; i < length; i++) {
+            if (add(values[i])) {
+                enqueued = true;
+                // Let the consumers poll before the full queue applies its overflow policy, which could block
+                if (this.reducedMeasurements.size() == this.reducedMeasurements.capacity()) {
+                    notifyListener();
+                    enqueued = false;
+                }
+            }
+        }
+        if (enqueued) {
+            notifyListener();
+        }
+    }
+
+    /**
+     * @return true if the value completed a window and its reduced value was enqueued
+     */
+    private boolean add(double value) {
+        if (this.written >= this.window.length) {
+            this.reducer.remove(this.window[this.windowWriteIndex]);
+        }
+        this.window[this.windowWriteIndex] = value;
+        this.reducer.add(value);
+        this.windowWriteIndex++;
+        this.written++;
+
+        if (this.windowWriteIndex == this.window.length) {
+            this.windowWriteIndex = 0;
+            rebuildReducer();
+        }
+        if (this.written >= this.window.length && (this.written % this.overlapNumber == 0)) {
+            double reduced = this.reducer.reduce();
+            LOG.finest(() -> "New reduced value " + reduced);
+            return this.reducedMeasurements.offer(reduced);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasReducedMeasurements() {
+        return !this.reducedMeasurements.isEmpty();
+    }
+
+    /**
+     * Non waiting poll for a reduced measurement
+     *
+     * @return Empty if there isn't any reduced measurement, otherwise returns the head of the queue
+     */
+    public OptionalDouble pollReducedMeasurement() {
+        return this.reducedMeasurements.poll();
+    }
+
+    /**
+     * Non waiting poll for more reduced measurements, without boxing them
+     *
+     * @param into array filled with the oldest reduced measurements in the queue
+     * @return the number of reduced measurements polled
+     */
+    public int pollReducedMeasurements(double[] into) {
+        return this.reducedMeasurements.poll(into);
+    }
+
+    @Override
+    public List<Double> pollReducedMeasurements(int max) {
+        return this.reducedMeasurements.poll(max);
+    }
+
+    /**
+     * @return the queue of the reduced values, to inspect its occupancy and the overflow counters
+     */
+    public ReducedMeasurementQueue getReducedMeasurementQueue() {
+        return this.reducedMeasurements;
+    }
+
+    @Override
+    public void setReducedMeasurementListener(Runnable listener) {
+        this.reducedMeasurementListener = listener;
+    }
+
+    private void rebuildReducer() {
+        this.reducer.clear();
+        for (double value : this.window) {
+            this.reducer.add(value);
+        }
+    }
+
+    private void notifyListener() {
+        Runnable listener = this.reducedMeasurementListener;
+        if (listener != null) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                // Don't stop the producer of the measurements
+                LOG.warning("Error in the reduced measurement listener: " + e);
+                e.printStackTrace();
+            }
+        }
+    }
+}
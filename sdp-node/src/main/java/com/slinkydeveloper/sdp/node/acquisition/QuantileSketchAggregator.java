@@ -0,0 +1,39 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.node.SensorReadingsAggregate;
+
+import java.util.Map;
+
+/**
+ * Median, 95th and 99th percentile, estimated with a {@link KllSketch}
+ */
+class QuantileSketchAggregator implements SensorReadingsAggregator {
+
+    private final int k;
+
+    QuantileSketchAggregator(int k) {
+        this.k = k;
+    }
+
+    @Override
+    public void add(SensorReadingsAggregate aggregate, double value, SensorReadingsAggregate.Builder into) {
+        KllSketch sketch = KllSketch.fromProto(aggregate.getSketch(), this.k);
+        sketch.add(value);
+        into.setSketch(sketch.toProto());
+    }
+
+    @Override
+    public void merge(SensorReadingsAggregate a, SensorReadingsAggregate b, SensorReadingsAggregate.Builder into) {
+        KllSketch sketch = KllSketch.fromProto(a.getSketch(), this.k);
+        sketch.merge(KllSketch.fromProto(b.getSketch(), this.k));
+        into.setSketch(sketch.toProto());
+    }
+
+    @Override
+    public void report(SensorReadingsAggregate aggregate, Map<String, Double> into) {
+        KllSketch sketch = KllSketch.fromProto(aggregate.getSketch(), this.k);
+        into.put("p50", sketch.quantile(0.5));
+        into.put("p95", sketch.quantile(0.95));
+        into.put("p99", sketch.quantile(0.99));
+    }
+}
@@ -0,0 +1,45 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.node.simulator.Buffer;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Buffer of measurements that produces reduced values, consumed by the {@link SensorReadingsHandler}
+ *
+ * @param <T> Reduced values type
+ */
+public interface ReducedBuffer<T> extends Buffer {
+
+    /**
+     * @return true if there are any reduced measurements
+     */
+    boolean hasReducedMeasurements();
+
+    /**
+     * Non waiting poll for more reduced measurements
+     *
+     * @param max maximum number of reduced measurements to poll
+     * @return the oldest reduced measurements in the queue, empty if there isn't any reduced measurement
+     */
+    List<T> pollReducedMeasurements(int max);
+
+    /**
+     * Like {@link #pollReducedMeasurements(int)}, with the bounds of the windows of the reduced measurements
+     * when the buffer knows them
+     */
+    default List<WindowedMeasurement<T>> pollWindowedMeasurements(int max) {
+        return pollReducedMeasurements(max)
+            .stream()
+            .map(WindowedMeasurement::unbounded)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Set the listener invoked after a new reduced measurement is enqueued.
+     * The listener is invoked on the thread adding the measurements, so it should return quickly
+     */
+    void setReducedMeasurementListener(Runnable listener);
+
+}
@@ -0,0 +1,344 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.log.LoggerConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Append only log of reduced values, stored in memory mapped segments of fixed size inside a directory.
+ * Every record has a sequence number, and the values up to the consumed sequence number,
+ * stored in a separate mapped file, are not replayed anymore.
+ * <p>
+ * An append is a write to the page cache: the segments are forced to the disk by a background thread
+ * every {@code syncIntervalMillis} and after {@code syncEvery} records, so the appending thread never waits for the disk.
+ * A crash of the machine can lose the values appended since the last sync, a crash of the process doesn't lose anything.
+ * A record is [start, end, value, sequence number] and the sequence number is written last,
+ * so a torn record at the end of the log is not replayed.
+ * <p>
+ * This class is thread safe
+ */
+public class ReducedMeasurementLog implements Closeable {
+
+    private final static Logger LOG = LoggerConfig.getLogger(ReducedMeasurementLog.class);
+
+    private final static int RECORD_SIZE = 4 * Long.BYTES;
+    private final static int SEQUENCE_OFFSET = 3 * Long.BYTES;
+    private final static String SEGMENT_SUFFIX = ".log";
+    private final static String CONSUMED_FILE = "consumed";
+    private final static long CLOSE_TIMEOUT_MILLIS = 5 * 1000;
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final int syncEvery;
+    private final long syncIntervalMillis;
+    private final ScheduledExecutorService syncThread;
+
+    // First sequence number -> segment
+    private final TreeMap<Long, Path> segments;
+    private final MappedByteBuffer consumed;
+    private MappedByteBuffer active;
+    // Rotated segments not forced yet
+    private final List<MappedByteBuffer> unsyncedSegments;
+    private long activeFirstSequence;
+    private long nextSequence;
+    private long consumedSequence;
+    private int unsynced;
+    private boolean syncRequested;
+    private boolean closed;
+
+    private ReducedMeasurementLog(Path directory, int recordsPerSegment, int syncEvery, long syncIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+        this.syncEvery = syncEvery;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.segments = new TreeMap<>();
+        this.unsyncedSegments = new ArrayList<>();
+        this.consumed = map(directory.resolve(CONSUMED_FILE), Long.BYTES);
+        this.consumedSequence = this.consumed.getLong(0);
+        recover();
+
+        this.syncThread = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "reduced-measurement-log-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        if (syncIntervalMillis > 0) {
+            this.syncThread.scheduleWithFixedDelay(this::syncInBackground, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Open the log in the directory, creating it if it doesn't exist
+     *
+     * @param recordsPerSegment  number of records in a segment file
+     * @param syncEvery          number of records appended that trigger a sync
+     * @param syncIntervalMillis time between two periodic syncs, or 0 to sync after every append
+     */
+    public static ReducedMeasurementLog open(Path directory, int recordsPerSegment, int syncEvery, long syncIntervalMillis) throws IOException {
+        if (recordsPerSegment < 1 || syncEvery < 1 || syncIntervalMillis < 0) {
+            throw new IllegalArgumentException("Records per segment and sync batch must be positive, the sync interval can't be negative");
+        }
+        Files.createDirectories(directory);
+        return new ReducedMeasurementLog(directory, recordsPerSegment, syncEvery, syncIntervalMillis);
+    }
+
+    /**
+     * @return the sequence number of the appended value
+     */
+    public synchronized long append(WindowedMeasurement<Double> measurement) throws IOException {
+        checkOpen();
+        int index = (int) (this.nextSequence - this.activeFirstSequence);
+        if (index == this.recordsPerSegment) {
+            rotate();
+            index = 0;
+        }
+        int offset = index * RECORD_SIZE;
+        this.active.putLong(offset, measurement.getStart());
+        this.active.putLong(offset + Long.BYTES, measurement.getEnd());
+        this.active.putDouble(offset + 2 * Long.BYTES, measurement.getValue());
+        this.active.putLong(offset + SEQUENCE_OFFSET, this.nextSequence);
+        long sequence = this.nextSequence++;
+
+        this.unsynced++;
+        if (!this.syncRequested && (this.unsynced >= this.syncEvery || this.syncIntervalMillis == 0)) {
+            this.syncRequested = true;
+            this.syncThread.execute(this::syncInBackground);
+        }
+        return sequence;
+    }
+
+    /**
+     * Mark as consumed the values up to the sequence number, included.
+     * The segments with only consumed values are deleted
+     */
+    public synchronized void markConsumed(long sequence) {
+        checkOpen();
+        if (sequence <= this.consumedSequence) {
+            return;
+        }
+        this.consumedSequence = Math.min(sequence, this.nextSequence - 1);
+        this.consumed.putLong(0, this.consumedSequence);
+
+        // The active segment, the last one, is never deleted
+        while (this.segments.size() > 1) {
+            Map.Entry<Long, Path> first = this.segments.firstEntry();
+            if (this.segments.higherKey(first.getKey()) - 1 > this.consumedSequence) {
+                break;
+            }
+            delete(first.getValue());
+            this.segments.pollFirstEntry();
+        }
+    }
+
+    /**
+     * @return the values not consumed yet, in the order they were appended.
+     * The first one has sequence number {@link #getConsumedSequence()} + 1
+     */
+    public synchronized List<WindowedMeasurement<Double>> replay() throws IOException {
+        checkOpen();
+        List<WindowedMeasurement<Double>> replayed = new ArrayList<>();
+        Long from = this.segments.floorKey(this.consumedSequence + 1);
+        for (Map.Entry<Long, Path> segment : this.segments.tailMap(from != null ? from : this.segments.firstKey(), true).entrySet()) {
+            MappedByteBuffer buffer = segment.getKey() == this.activeFirstSequence ? this.active : map(segment.getValue(), this.recordsPerSegment * RECORD_SIZE);
+            for (int index = 0; index < this.recordsPerSegment; index++) {
+                long sequence = segment.getKey() + index;
+                if (sequence >= this.nextSequence) {
+                    break;
+                }
+                if (sequence > this.consumedSequence) {
+                    int offset = index * RECORD_SIZE;
+                    replayed.add(new WindowedMeasurement<>(
+                        buffer.getLong(offset),
+                        buffer.getLong(offset + Long.BYTES),
+                        buffer.getDouble(offset + 2 * Long.BYTES)
+                    ));
+                }
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Force the appended values and the consumed sequence number to the disk.
+     * The lock is not held while forcing, so the appends don't wait for the disk
+     */
+    public void sync() {
+        List<MappedByteBuffer> unsynced;
+        synchronized (this) {
+            checkOpen();
+            unsynced = takeUnsynced();
+        }
+        force(unsynced);
+    }
+
+    public synchronized long getConsumedSequence() {
+        return this.consumedSequence;
+    }
+
+    /**
+     * @return the sequence number of the next appended value
+     */
+    public synchronized long getNextSequence() {
+        return this.nextSequence;
+    }
+
+    /**
+     * Stop the sync thread and force the values appended since the last sync
+     */
+    @Override
+    public void close() {
+        List<MappedByteBuffer> unsynced;
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            unsynced = takeUnsynced();
+        }
+        this.syncThread.shutdown();
+        force(unsynced);
+        try {
+            // A sync may still be forcing the values taken before closing
+            if (!this.syncThread.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                LOG.warning("The sync of the log " + this.directory + " didn't complete in " + CLOSE_TIMEOUT_MILLIS + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void syncInBackground() {
+        List<MappedByteBuffer> unsynced;
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            unsynced = takeUnsynced();
+        }
+        try {
+            force(unsynced);
+        } catch (Exception e) {
+            LOG.warning("Cannot sync the log " + this.directory + ": " + e);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Must be invoked holding the lock
+     *
+     * @return the mapped files to force
+     */
+    private List<MappedByteBuffer> takeUnsynced() {
+        List<MappedByteBuffer> unsynced = new ArrayList<>(this.unsyncedSegments);
+        unsynced.add(this.active);
+        unsynced.add(this.consumed);
+        this.unsyncedSegments.clear();
+        this.unsynced = 0;
+        this.syncRequested = false;
+        return unsynced;
+    }
+
+    // Must be invoked holding the lock
+    private void rotate() throws IOException {
+        // The full segment is forced by the next sync
+        this.unsyncedSegments.add(this.active);
+        this.activeFirstSequence = this.nextSequence;
+        Path segment = segmentPath(this.activeFirstSequence);
+        this.active = map(segment, this.recordsPerSegment * RECORD_SIZE);
+        this.segments.put(this.activeFirstSequence, segment);
+        LOG.fine(() -> "New segment " + segment);
+    }
+
+    /**
+     * Load the segments and find the end of the log, which is the first record without the expected sequence number
+     */
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stream) {
+                String name = segment.getFileName().toString();
+                this.segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), segment);
+            }
+        }
+        if (this.segments.isEmpty()) {
+            this.nextSequence = this.consumedSequence + 1;
+            this.activeFirstSequence = this.nextSequence;
+            this.active = map(segmentPath(this.activeFirstSequence), this.recordsPerSegment * RECORD_SIZE);
+            this.segments.put(this.activeFirstSequence, segmentPath(this.activeFirstSequence));
+            return;
+        }
+
+        boolean torn = false;
+        for (Iterator<Map.Entry<Long, Path>> it = this.segments.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Path> segment = it.next();
+            if (torn) {
+                // Nothing after the end of the log is valid
+                LOG.warning("Deleting the segment " + segment.getValue() + " after the end of the log");
+                delete(segment.getValue());
+                it.remove();
+                continue;
+            }
+            MappedByteBuffer buffer = map(segment.getValue(), this.recordsPerSegment * RECORD_SIZE);
+            int index = 0;
+            while (index < this.recordsPerSegment && buffer.getLong(index * RECORD_SIZE + SEQUENCE_OFFSET) == segment.getKey() + index) {
+                index++;
+            }
+            this.active = buffer;
+            this.activeFirstSequence = segment.getKey();
+            this.nextSequence = segment.getKey() + index;
+            torn = index < this.recordsPerSegment;
+        }
+        if (this.nextSequence <= this.consumedSequence) {
+            // The records were lost, but their values were consumed
+            this.nextSequence = this.consumedSequence + 1;
+            rotate();
+        }
+        LOG.fine(() -> "Recovered log " + this.directory + " up to the sequence number " + (this.nextSequence - 1) + ", consumed up to " + this.consumedSequence);
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return this.directory.resolve(String.format("%020d", firstSequence) + SEGMENT_SUFFIX);
+    }
+
+    private void checkOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("The log " + this.directory + " is closed");
+        }
+    }
+
+    private static void force(List<MappedByteBuffer> buffers) {
+        // Forcing a mapped file doesn't change the buffer, so it can run while the appends write the next records
+        buffers.forEach(MappedByteBuffer::force);
+    }
+
+    private static MappedByteBuffer map(Path file, int size) throws IOException {
+        // The mapping stays valid after closing the channel
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warning("Cannot delete the segment " + file + ": " + e);
+            e.printStackTrace();
+        }
+    }
+}
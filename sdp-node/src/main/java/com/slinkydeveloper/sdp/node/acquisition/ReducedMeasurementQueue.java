@@ -0,0 +1,219 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.log.LoggerConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.function.DoubleBinaryOperator;
+import java.util.logging.Logger;
+
+/**
+ * Bounded FIFO queue of reduced values, stored in an array of doubles that grows up to the capacity.
+ * When the queue is full, for example because the token is on hold during a long discovery,
+ * the {@link OverflowPolicy} decides what to do with a new value.
+ * <p>
+ * This class is thread safe
+ */
+public class ReducedMeasurementQueue {
+
+    private final static Logger LOG = LoggerConfig.getLogger(ReducedMeasurementQueue.class);
+
+    private final static int INITIAL_CAPACITY = 16;
+
+    public enum OverflowPolicy {
+        /**
+         * Remove the oldest value
+         */
+        DROP_OLDEST,
+        /**
+         * Discard the new value
+         */
+        DROP_NEWEST,
+        /**
+         * Merge every pair of consecutive values, halving the resolution of the queued values
+         */
+        MERGE,
+        /**
+         * Wait until a consumer polls a value
+         */
+        BLOCK
+    }
+
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final DoubleBinaryOperator merger;
+
+    private double[] values;
+    private int head;
+    private int size;
+    private long dropped;
+    private long merged;
+    private boolean overflowing;
+
+    /**
+     * @param merger merges two consecutive values, used only by {@link OverflowPolicy#MERGE}
+     */
+    public ReducedMeasurementQueue(int capacity, OverflowPolicy policy, DoubleBinaryOperator merger) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2");
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+        this.merger = merger;
+        this.values = new double[Math.min(capacity, INITIAL_CAPACITY)];
+    }
+
+    /**
+     * Add a value, applying the overflow policy if the queue is full
+     *
+     * @return false if the value was discarded
+     */
+    public synchronized boolean offer(double value) {
+        if (this.size == this.capacity) {
+            if (!this.overflowing) {
+                this.overflowing = true;
+                LOG.warning("Queue of the reduced measurements full, applying the policy " + this.policy);
+            }
+            switch (this.policy) {
+                case DROP_OLDEST:
+                    dequeue();
+                    this.dropped++;
+                    break;
+                case DROP_NEWEST:
+                    this.dropped++;
+                    return false;
+                case MERGE:
+                    mergeConsecutive();
+                    break;
+                case BLOCK:
+                    while (this.size == this.capacity) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            this.dropped++;
+                            return false;
+                        }
+                    }
+                    break;
+            }
+        }
+        if (this.size == this.values.length) {
+            grow();
+        }
+        this.values[(this.head + this.size) % this.values.length] = value;
+        this.size++;
+        return true;
+    }
+
+    public synchronized boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @return the number of values in the queue
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return the number of values discarded or removed because the queue was full
+     */
+    public synchronized long droppedCount() {
+        return this.dropped;
+    }
+
+    /**
+     * @return the number of merges of two consecutive values because the queue was full
+     */
+    public synchronized long mergedCount() {
+        return this.merged;
+    }
+
+    public synchronized OptionalDouble poll() {
+        if (this.size == 0) {
+            return OptionalDouble.empty();
+        }
+        double value = dequeue();
+        onPolled();
+        return OptionalDouble.of(value);
+    }
+
+    /**
+     * @param into array filled with the oldest values
+     * @return the number of values polled
+     */
+    public synchronized int poll(double[] into) {
+        int polled = Math.min(into.length, this.size);
+        for (int i = 0; i < polled; i++) {
+            into[i] = dequeue();
+        }
+        if (polled > 0) {
+            onPolled();
+        }
+        return polled;
+    }
+
+    public synchronized List<Double> poll(int max) {
+        List<Double> polled = new ArrayList<>(Math.min(max, this.size));
+        while (polled.size() < max && this.size > 0) {
+            polled.add(dequeue());
+        }
+        if (!polled.isEmpty()) {
+            onPolled();
+        }
+        return polled;
+    }
+
+    // Must be invoked holding the lock
+    private void onPolled() {
+        this.overflowing = false;
+        if (this.policy == OverflowPolicy.BLOCK) {
+            notifyAll();
+        }
+    }
+
+    // Must be invoked holding the lock
+    private double dequeue() {
+        double value = this.values[this.head];
+        this.head = (this.head + 1) % this.values.length;
+        this.size--;
+        return value;
+    }
+
+    // Must be invoked holding the lock
+    private void grow() {
+        double[] grown = new double[(int) Math.min(this.capacity, this.values.length * 2L)];
+        for (int i = 0; i < this.size; i++) {
+            grown[i] = this.values[(this.head + i) % this.values.length];
+        }
+        this.values = grown;
+        this.head = 0;
+    }
+
+    // Must be invoked holding the lock
+    private void mergeConsecutive() {
+        // The i-th value is written after reading the (2i)-th and (2i + 1)-th, so it can be done in place
+        int mergedSize = (this.size + 1) / 2;
+        for (int i = 0; i < mergedSize; i++) {
+            double first = get(2 * i);
+            set(i, 2 * i + 1 < this.size ? this.merger.applyAsDouble(first, get(2 * i + 1)) : first);
+        }
+        this.merged += this.size / 2;
+        this.size = mergedSize;
+    }
+
+    private double get(int index) {
+        return this.values[(this.head + index) % this.values.length];
+    }
+
+    private void set(int index, double value) {
+        this.values[(this.head + index) % this.values.length] = value;
+    }
+}
@@ -0,0 +1,46 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+/**
+ * Running sum and count of the values in the window
+ */
+class RunningSumReducer implements WindowReducer {
+
+    private final boolean average;
+    private double sum;
+    private int count;
+
+    RunningSumReducer(boolean average) {
+        this.average = average;
+    }
+
+    @Override
+    public void add(double value) {
+        this.sum += value;
+        this.count++;
+    }
+
+    @Override
+    public void remove(double value) {
+        this.sum -= value;
+        this.count--;
+    }
+
+    @Override
+    public void clear() {
+        this.sum = 0;
+        this.count = 0;
+    }
+
+    @Override
+    public double reduce() {
+        if (this.count == 0) {
+            return Double.NaN;
+        }
+        return this.average ? this.sum / this.count : this.sum;
+    }
+
+    @Override
+    public double merge(double first, double second) {
+        return this.average ? (first + second) / 2 : first + second;
+    }
+}
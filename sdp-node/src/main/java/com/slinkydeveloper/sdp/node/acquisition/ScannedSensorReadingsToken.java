@@ -0,0 +1,184 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import com.slinkydeveloper.sdp.node.SensorReadingsToken;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Serialized {@link SensorReadingsToken}, with only the fields needed to decide how to handle it:
+ * when the node has nothing to add, the token is forwarded as the received bytes without parsing it.
+ * <p>
+ * This class is immutable, the bytes must not be modified after the scan
+ */
+public class ScannedSensorReadingsToken {
+
+    // Field numbers in node.proto
+    private final static int GENERATION_UUID = 1;
+    private final static int LAST_MEASUREMENTS = 2;
+    private final static int AGGREGATE = 3;
+    private final static int RING = 6;
+    private final static int MERGED_RINGS = 7;
+    private final static int VERSION = 8;
+    private final static int MAP_ENTRY_KEY = 1;
+    private final static int AGGREGATE_CONTRIBUTORS = 5;
+
+    private final byte[] bytes;
+    private final String generationUUID;
+    private final long version;
+    private final int ring;
+    private final boolean hasAggregate;
+    private final Set<Integer> participatingNodes;
+    private final BitSet mergedRings;
+
+    private ScannedSensorReadingsToken(byte[] bytes, String generationUUID, long version, int ring, boolean hasAggregate, Set<Integer> participatingNodes, BitSet mergedRings) {
+        this.bytes = bytes;
+        this.generationUUID = generationUUID;
+        this.version = version;
+        this.ring = ring;
+        this.hasAggregate = hasAggregate;
+        this.participatingNodes = participatingNodes;
+        this.mergedRings = mergedRings;
+    }
+
+    /**
+     * Scan the serialized token, skipping the values of the measurements
+     */
+    public static ScannedSensorReadingsToken scan(byte[] bytes) throws InvalidProtocolBufferException {
+        CodedInputStream input = CodedInputStream.newInstance(bytes);
+        String generationUUID = "";
+        long version = 0;
+        int ring = 0;
+        boolean hasAggregate = false;
+        Set<Integer> lastMeasurementsNodes = new HashSet<>();
+        BitSet contributors = new BitSet();
+        BitSet mergedRings = new BitSet();
+        try {
+            int tag;
+            while ((tag = input.readTag()) != 0) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                    case GENERATION_UUID:
+                        generationUUID = input.readStringRequireUtf8();
+                        break;
+                    case LAST_MEASUREMENTS:
+                        int entryLimit = input.pushLimit(input.readRawVarint32());
+                        lastMeasurementsNodes.add(scanMapEntryKey(input));
+                        input.popLimit(entryLimit);
+                        break;
+                    case AGGREGATE:
+                        // Like the parser, a repeated embedded message is merged, keeping the last contributors
+                        hasAggregate = true;
+                        int aggregateLimit = input.pushLimit(input.readRawVarint32());
+                        contributors = scanContributors(input, contributors);
+                        input.popLimit(aggregateLimit);
+                        break;
+                    case RING:
+                        ring = input.readInt32();
+                        break;
+                    case MERGED_RINGS:
+                        mergedRings = BitSet.valueOf(input.readByteArray());
+                        break;
+                    case VERSION:
+                        version = input.readInt64();
+                        break;
+                    default:
+                        input.skipField(tag);
+                }
+            }
+        } catch (InvalidProtocolBufferException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidProtocolBufferException(e);
+        }
+
+        return new ScannedSensorReadingsToken(
+            bytes,
+            generationUUID,
+            version,
+            ring,
+            hasAggregate,
+            Collections.unmodifiableSet(hasAggregate ? contributors.stream().boxed().collect(Collectors.toSet()) : lastMeasurementsNodes),
+            mergedRings
+        );
+    }
+
+    private static int scanMapEntryKey(CodedInputStream input) throws IOException {
+        int key = 0;
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (WireFormat.getTagFieldNumber(tag) == MAP_ENTRY_KEY) {
+                key = input.readInt32();
+            } else {
+                input.skipField(tag);
+            }
+        }
+        return key;
+    }
+
+    private static BitSet scanContributors(CodedInputStream input, BitSet contributors) throws IOException {
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (WireFormat.getTagFieldNumber(tag) == AGGREGATE_CONTRIBUTORS) {
+                contributors = BitSet.valueOf(input.readByteArray());
+            } else {
+                input.skipField(tag);
+            }
+        }
+        return contributors;
+    }
+
+    public byte[] getBytes() {
+        return this.bytes;
+    }
+
+    public String getGenerationUUID() {
+        return this.generationUUID;
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    public int getRing() {
+        return this.ring;
+    }
+
+    public boolean hasAggregate() {
+        return this.hasAggregate;
+    }
+
+    /**
+     * @return the nodes whose values are in the token, in both the token formats
+     */
+    public Set<Integer> getParticipatingNodes() {
+        return this.participatingNodes;
+    }
+
+    public BitSet getMergedRings() {
+        return (BitSet) this.mergedRings.clone();
+    }
+
+    /**
+     * Parse the whole token, when the node needs to change it
+     */
+    public SensorReadingsToken parse() throws InvalidProtocolBufferException {
+        return SensorReadingsToken.parseFrom(this.bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "ScannedSensorReadingsToken{" +
+            "ring=" + this.ring +
+            ", version=" + this.version +
+            ", participatingNodes=" + this.participatingNodes +
+            ", bytes=" + this.bytes.length +
+            '}';
+    }
+}
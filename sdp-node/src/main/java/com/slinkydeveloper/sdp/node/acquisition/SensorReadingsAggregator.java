@@ -0,0 +1,73 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.node.SensorReadingsAggregate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mergeable statistic carried in the {@link SensorReadingsAggregate} of the token, with a state of constant size.
+ * <p>
+ * Every implementation owns some fields of the aggregate and writes only them, while count, sum and contributors
+ * are updated by the {@link SensorReadingsHandler}. The states read by the methods are the ones before the update,
+ * so the implementations don't depend on the order in which they're invoked
+ */
+public interface SensorReadingsAggregator {
+
+    /**
+     * Write in the builder the state after adding the value to the aggregate
+     */
+    void add(SensorReadingsAggregate aggregate, double value, SensorReadingsAggregate.Builder into);
+
+    /**
+     * Write in the builder the state merging two non empty aggregates
+     */
+    void merge(SensorReadingsAggregate a, SensorReadingsAggregate b, SensorReadingsAggregate.Builder into);
+
+    /**
+     * Put the statistics computed from the non empty aggregate, keyed by name
+     */
+    void report(SensorReadingsAggregate aggregate, Map<String, Double> into);
+
+    static SensorReadingsAggregator minMax() {
+        return new MinMaxAggregator();
+    }
+
+    static SensorReadingsAggregator variance() {
+        return new VarianceAggregator();
+    }
+
+    /**
+     * @param k accuracy of the sketch, its error on the rank is about 1.7 / k
+     */
+    static SensorReadingsAggregator quantiles(int k) {
+        return new QuantileSketchAggregator(k);
+    }
+
+    /**
+     * @param names comma separated list of minmax, variance and quantiles
+     * @param sketchK accuracy of the quantiles sketch
+     */
+    static List<SensorReadingsAggregator> fromNames(String names, int sketchK) {
+        List<SensorReadingsAggregator> aggregators = new ArrayList<>();
+        for (String name : names.split(",")) {
+            switch (name.trim().toLowerCase()) {
+                case "":
+                    break;
+                case "minmax":
+                    aggregators.add(minMax());
+                    break;
+                case "variance":
+                    aggregators.add(variance());
+                    break;
+                case "quantiles":
+                    aggregators.add(quantiles(sketchK));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown sensor readings aggregator " + name);
+            }
+        }
+        return aggregators;
+    }
+}
@@ -1,47 +1,404 @@
 package com.slinkydeveloper.sdp.node.acquisition;
 
+import com.google.protobuf.ByteString;
 import com.slinkydeveloper.sdp.gateway.client.GatewayNodeService;
 import com.slinkydeveloper.sdp.log.LoggerConfig;
+import com.slinkydeveloper.sdp.model.SensorDataAverage;
+import com.slinkydeveloper.sdp.model.SensorDataPartialAverages;
+import com.slinkydeveloper.sdp.node.MeasurementBatch;
+import com.slinkydeveloper.sdp.node.SensorReadingsAggregate;
 import com.slinkydeveloper.sdp.node.SensorReadingsToken;
 
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
+/**
+ * The token format is chosen by the {@link SensorReadingsMode} when the token is generated,
+ * then every node handles the token in the format it receives.
+ * <p>
+ * At every visit a node drains up to batchSize reduced values from its buffer: the i-th value of every node
+ * is published to the gateway as the i-th average of the round
+ * <p>
+ * In a hierarchical topology the representative of a sub-ring keeps the completed rounds of its sub-ring,
+ * then merges them in the token of the upper ring, which is published when it contains a round of every sub-ring.
+ * In a sharded topology every shard publishes its rounds as partial averages
+ * <p>
+ * Besides count and sum, the aggregates carry the mergeable states of the {@link SensorReadingsAggregator}s,
+ * whose statistics are published together with the averages. When the buffer knows the event time windows
+ * of its values, the aggregates carry their union too, so the gateway can place the averages in time
+ */
 public class SensorReadingsHandler {
 
     private final static Logger LOG = LoggerConfig.getLogger(SensorReadingsHandler.class);
 
     private final int myId;
-    private final OverlappingSlidingWindowBuffer<Double> slidingWindowBuffer;
+    private final ReducedBuffer<Double> slidingWindowBuffer;
     private final GatewayNodeService gatewayService;
+    private final SensorReadingsMode mode;
+    private final int batchSize;
+    private final List<SensorReadingsAggregator> aggregators;
 
-    public SensorReadingsHandler(int myId, OverlappingSlidingWindowBuffer<Double> slidingWindowBuffer, GatewayNodeService gatewayService) {
+    // Latest complete round of every sub-ring I'm the representative of, not merged in the upper ring yet
+    private final Map<Integer, List<SensorReadingsAggregate>> subRingRounds;
+
+    public SensorReadingsHandler(int myId, ReducedBuffer<Double> slidingWindowBuffer, GatewayNodeService gatewayService) {
+        this(myId, slidingWindowBuffer, gatewayService, SensorReadingsMode.MAP, 1);
+    }
+
+    public SensorReadingsHandler(int myId, ReducedBuffer<Double> slidingWindowBuffer, GatewayNodeService gatewayService, SensorReadingsMode mode, int batchSize) {
+        this(myId, slidingWindowBuffer, gatewayService, mode, batchSize, Collections.emptyList());
+    }
+
+    public SensorReadingsHandler(int myId, ReducedBuffer<Double> slidingWindowBuffer, GatewayNodeService gatewayService, SensorReadingsMode mode, int batchSize, List<SensorReadingsAggregator> aggregators) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
         this.myId = myId;
         this.slidingWindowBuffer = slidingWindowBuffer;
         this.gatewayService = gatewayService;
+        this.mode = mode;
+        this.batchSize = batchSize;
+        this.aggregators = aggregators;
+        this.subRingRounds = new ConcurrentHashMap<>();
     }
 
     public SensorReadingsToken handleSensorReadingsToken(final SensorReadingsToken request, final Set<Integer> knownHosts) {
+        SensorReadingsToken token = contribute(request);
+        if (!participatingNodes(token).containsAll(knownHosts)) {
+            return token;
+        }
+
+        LOG.info("We have data from everybody, I'm going to send values to the gateway");
+        if (token.hasAggregate()) {
+            publish(toAggregates(token));
+        } else {
+            if (token.getExtraMeasurementsCount() == 0) {
+                gatewayService.publishNewAverage(this.myId, token.getLastMeasurementsMap());
+            } else {
+                gatewayService.publishNewAverages(this.myId, computeAverages(token));
+            }
+        }
+        return reset(token);
+    }
+
+    /**
+     * Handle the token of a sub-ring: when the round is complete, the representative keeps it for the upper ring.
+     * Only the latest round is kept, replacing the one not merged yet
+     */
+    public SensorReadingsToken handleSubRingToken(final SensorReadingsToken request, final Set<Integer> members, boolean isRepresentative) {
+        SensorReadingsToken token = contribute(request);
+        if (isRepresentative && participatingNodes(token).containsAll(members)) {
+            LOG.info("We have data from everybody in the sub-ring, I'm going to merge it in the upper ring");
+            if (this.subRingRounds.put(token.getRing(), toAggregates(token)) != null) {
+                LOG.fine(() -> "Replacing the round of sub-ring " + token.getRing() + " not merged in the upper ring yet");
+            }
+            return reset(token);
+        }
+        return token;
+    }
+
+    /**
+     * Handle the token of a shard, publishing the round as partial averages when it's complete
+     */
+    public SensorReadingsToken handleShardToken(final SensorReadingsToken request, final Set<Integer> members, int shard, int shards) {
+        SensorReadingsToken token = contribute(request);
+        if (!participatingNodes(token).containsAll(members)) {
+            return token;
+        }
+
+        LOG.info("We have data from everybody in the shard " + shard + ", I'm going to send values to the gateway");
+        gatewayService.publishNewPartialAverages(this.myId, new SensorDataPartialAverages(shard, shards, toAverages(toAggregates(token))));
+        return reset(token);
+    }
+
+    /**
+     * Handle the token of the upper ring, merging the latest round of my sub-ring
+     */
+    public SensorReadingsToken handleUpperRingToken(final SensorReadingsToken request, int mySubRing, final Set<Integer> subRings) {
         SensorReadingsToken token = request;
-        if (!request.containsLastMeasurements(this.myId)) {
-            LOG.fine("Token does not contain data from myself");
-            Optional<Double> newAverage = slidingWindowBuffer.pollReducedMeasurement();
-            if (newAverage.isPresent()) {
-                token = token.toBuilder().putLastMeasurements(this.myId, newAverage.get()).build();
+        BitSet mergedRings = BitSet.valueOf(request.getMergedRings().asReadOnlyByteBuffer());
+        if (!mergedRings.get(mySubRing)) {
+            List<SensorReadingsAggregate> round = this.subRingRounds.remove(mySubRing);
+            if (round != null) {
+                mergedRings.set(mySubRing);
+                SensorReadingsToken.Builder builder = token.toBuilder()
+                    .setAggregate(merge(token.getAggregate(), round.get(0)))
+                    .setMergedRings(ByteString.copyFrom(mergedRings.toByteArray()));
+                for (int i = 1; i < round.size(); i++) {
+                    if (i - 1 < builder.getExtraAggregatesCount()) {
+                        builder.setExtraAggregates(i - 1, merge(builder.getExtraAggregates(i - 1), round.get(i)));
+                    } else {
+                        builder.addExtraAggregates(round.get(i));
+                    }
+                }
+                token = builder.build();
+            } else {
+                LOG.fine("No round of my sub-ring to merge");
             }
         } else {
+            LOG.fine("Upper ring token already contains the round of my sub-ring");
+        }
+
+        if (subRings.stream().allMatch(mergedRings::get)) {
+            LOG.info("We have data from every sub-ring, I'm going to send values to the gateway");
+            publish(toAggregates(token));
+            return SensorReadingsToken.newBuilder()
+                .setGenerationUUID(token.getGenerationUUID())
+                .setRing(token.getRing())
+                .setAggregate(SensorReadingsAggregate.getDefaultInstance())
+                .build();
+        }
+        return token;
+    }
+
+    /**
+     * @param collectedMembers the members whose values complete the round when I collect it, or null if I don't
+     * @return true if handling the token wouldn't change it, so it can be forwarded as received
+     */
+    public boolean isLeftUnchanged(final ScannedSensorReadingsToken token, final Set<Integer> collectedMembers) {
+        Set<Integer> participatingNodes = token.getParticipatingNodes();
+        if (collectedMembers != null && participatingNodes.containsAll(collectedMembers)) {
+            return false;
+        }
+        if (participatingNodes.isEmpty() && !token.hasAggregate() && this.mode == SensorReadingsMode.AGGREGATE) {
+            // A new token is converted to the aggregate format
+            return false;
+        }
+        return participatingNodes.contains(this.myId) || !this.slidingWindowBuffer.hasReducedMeasurements();
+    }
+
+    /**
+     * Like {@link #isLeftUnchanged(ScannedSensorReadingsToken, Set)}, for the token of the upper ring
+     */
+    public boolean isUpperRingTokenLeftUnchanged(final ScannedSensorReadingsToken token, int mySubRing, final Set<Integer> subRings) {
+        BitSet mergedRings = token.getMergedRings();
+        if (subRings.stream().allMatch(mergedRings::get)) {
+            return false;
+        }
+        return mergedRings.get(mySubRing) || !this.subRingRounds.containsKey(mySubRing);
+    }
+
+    /**
+     * Discard the rounds of the sub-rings not merged yet, since the rings changed with the view
+     */
+    public void clearSubRingRounds() {
+        this.subRingRounds.clear();
+    }
+
+    /**
+     * @return true if I have values to add to a token: the round of my sub-ring for the upper ring,
+     * otherwise the reduced values of my buffer
+     */
+    public boolean hasValuesToContribute(boolean upperRing) {
+        return upperRing ? !this.subRingRounds.isEmpty() : this.slidingWindowBuffer.hasReducedMeasurements();
+    }
+
+    /**
+     * Add my values to the token, if it doesn't already contain them
+     */
+    private SensorReadingsToken contribute(final SensorReadingsToken request) {
+        boolean isNewToken = request.getLastMeasurementsCount() == 0 && !request.hasAggregate();
+        if (request.hasAggregate() || (isNewToken && this.mode == SensorReadingsMode.AGGREGATE)) {
+            return contributeToAggregate(request);
+        }
+
+        if (request.containsLastMeasurements(this.myId)) {
             LOG.fine("Token already contains data from myself");
+            return request;
+        }
+        LOG.fine("Token does not contain data from myself");
+        List<Double> newAverages = slidingWindowBuffer.pollReducedMeasurements(this.batchSize);
+        if (newAverages.isEmpty()) {
+            return request;
+        }
+        SensorReadingsToken.Builder builder = request.toBuilder().putLastMeasurements(this.myId, newAverages.get(0));
+        if (newAverages.size() > 1) {
+            builder.putExtraMeasurements(
+                this.myId,
+                MeasurementBatch.newBuilder().addAllValues(newAverages.subList(1, newAverages.size())).build()
+            );
         }
+        return builder.build();
+    }
 
-        if (token.getLastMeasurementsMap().keySet().containsAll(knownHosts)) {
-            LOG.info("We have data from everybody, I'm going to send values to the gateway");
+    private SensorReadingsToken contributeToAggregate(final SensorReadingsToken request) {
+        if (contributors(request.getAggregate()).get(this.myId)) {
+            LOG.fine("Aggregate already contains data from myself");
+            return request;
+        }
+        LOG.fine("Aggregate does not contain data from myself");
+        SensorReadingsToken.Builder builder = request.toBuilder()
+            .setAggregate(request.getAggregate());
+        List<WindowedMeasurement<Double>> newAverages = slidingWindowBuffer.pollWindowedMeasurements(this.batchSize);
+        if (!newAverages.isEmpty()) {
+            builder.setAggregate(accumulate(request.getAggregate(), this.myId, newAverages.get(0)));
+            for (int i = 1; i < newAverages.size(); i++) {
+                if (i - 1 < builder.getExtraAggregatesCount()) {
+                    builder.setExtraAggregates(i - 1, accumulate(builder.getExtraAggregates(i - 1), this.myId, newAverages.get(i)));
+                } else {
+                    builder.addExtraAggregates(accumulate(SensorReadingsAggregate.getDefaultInstance(), this.myId, newAverages.get(i)));
+                }
+            }
+        }
+        return builder.build();
+    }
 
-            gatewayService.publishNewAverage(this.myId, token.getLastMeasurementsMap());
+    private void publish(List<SensorReadingsAggregate> aggregates) {
+        List<SensorDataAverage> averages = toAverages(aggregates);
+        if (averages.size() == 1) {
+            gatewayService.publishNewAverage(this.myId, averages.get(0));
+        } else {
+            gatewayService.publishNewAverages(this.myId, averages);
+        }
+    }
 
-            return SensorReadingsToken.newBuilder().setGenerationUUID(token.getGenerationUUID()).build();
+    private List<SensorDataAverage> toAverages(List<SensorReadingsAggregate> aggregates) {
+        return aggregates.stream()
+            .map(a -> new SensorDataAverage(
+                participatingNodes(a),
+                a.getSum() / a.getCount(),
+                statistics(a),
+                a.getWindowEnd() > 0 ? a.getWindowStart() : null,
+                a.getWindowEnd() > 0 ? a.getWindowEnd() : null
+            ))
+            .collect(Collectors.toList());
+    }
+
+    private Map<String, Double> statistics(SensorReadingsAggregate aggregate) {
+        if (this.aggregators.isEmpty() || aggregate.getCount() == 0) {
+            return null;
         }
-        return token;
+        Map<String, Double> statistics = new HashMap<>();
+        this.aggregators.forEach(aggregator -> aggregator.report(aggregate, statistics));
+        return statistics;
+    }
+
+    /**
+     * @return an empty token of the same ring and format
+     */
+    private static SensorReadingsToken reset(SensorReadingsToken token) {
+        SensorReadingsToken.Builder builder = SensorReadingsToken.newBuilder()
+            .setGenerationUUID(token.getGenerationUUID())
+            .setRing(token.getRing());
+        if (token.hasAggregate()) {
+            builder.setAggregate(SensorReadingsAggregate.getDefaultInstance());
+        }
+        return builder.build();
+    }
+
+    private SensorReadingsAggregate accumulate(SensorReadingsAggregate aggregate, int nodeId, double value) {
+        return accumulate(aggregate, nodeId, WindowedMeasurement.unbounded(value));
+    }
+
+    private SensorReadingsAggregate accumulate(SensorReadingsAggregate aggregate, int nodeId, WindowedMeasurement<Double> windowed) {
+        double value = windowed.getValue();
+        BitSet contributors = contributors(aggregate);
+        contributors.set(nodeId);
+        SensorReadingsAggregate.Builder builder = aggregate.toBuilder()
+            .setSum(aggregate.getSum() + value)
+            .setCount(aggregate.getCount() + 1)
+            .setContributors(ByteString.copyFrom(contributors.toByteArray()));
+        if (windowed.hasBounds()) {
+            builder
+                .setWindowStart(aggregate.getWindowEnd() > 0 ? Math.min(aggregate.getWindowStart(), windowed.getStart()) : windowed.getStart())
+                .setWindowEnd(Math.max(aggregate.getWindowEnd(), windowed.getEnd()));
+        }
+        this.aggregators.forEach(aggregator -> aggregator.add(aggregate, value, builder));
+        return builder.build();
+    }
+
+    private SensorReadingsAggregate merge(SensorReadingsAggregate a, SensorReadingsAggregate b) {
+        if (a.getCount() == 0) {
+            return b;
+        }
+        if (b.getCount() == 0) {
+            return a;
+        }
+        BitSet contributors = contributors(a);
+        contributors.or(contributors(b));
+        SensorReadingsAggregate.Builder builder = SensorReadingsAggregate.newBuilder()
+            .setSum(a.getSum() + b.getSum())
+            .setCount(a.getCount() + b.getCount())
+            .setContributors(ByteString.copyFrom(contributors.toByteArray()));
+        if (a.getWindowEnd() > 0 || b.getWindowEnd() > 0) {
+            builder
+                .setWindowStart(
+                    a.getWindowEnd() == 0 ? b.getWindowStart() :
+                        b.getWindowEnd() == 0 ? a.getWindowStart() :
+                            Math.min(a.getWindowStart(), b.getWindowStart())
+                )
+                .setWindowEnd(Math.max(a.getWindowEnd(), b.getWindowEnd()));
+        }
+        this.aggregators.forEach(aggregator -> aggregator.merge(a, b, builder));
+        return builder.build();
+    }
+
+    private static BitSet contributors(SensorReadingsAggregate aggregate) {
+        return BitSet.valueOf(aggregate.getContributors().asReadOnlyByteBuffer());
+    }
+
+    private static Set<Integer> participatingNodes(SensorReadingsAggregate aggregate) {
+        return contributors(aggregate).stream().boxed().collect(Collectors.toSet());
+    }
+
+    private static Set<Integer> participatingNodes(SensorReadingsToken token) {
+        return token.hasAggregate() ? participatingNodes(token.getAggregate()) : token.getLastMeasurementsMap().keySet();
+    }
+
+    /**
+     * @return an aggregate for every position of the batches, in both the token formats
+     */
+    private List<SensorReadingsAggregate> toAggregates(SensorReadingsToken token) {
+        List<SensorReadingsAggregate> aggregates = new ArrayList<>();
+        if (token.hasAggregate()) {
+            aggregates.add(token.getAggregate());
+            aggregates.addAll(token.getExtraAggregatesList());
+            return aggregates;
+        }
+
+        SensorReadingsAggregate aggregate = SensorReadingsAggregate.getDefaultInstance();
+        for (Map.Entry<Integer, Double> e : token.getLastMeasurementsMap().entrySet()) {
+            aggregate = accumulate(aggregate, e.getKey(), e.getValue());
+        }
+        aggregates.add(aggregate);
+        for (Map.Entry<Integer, MeasurementBatch> e : token.getExtraMeasurementsMap().entrySet()) {
+            for (int i = 0; i < e.getValue().getValuesCount(); i++) {
+                if (i + 1 < aggregates.size()) {
+                    aggregates.set(i + 1, accumulate(aggregates.get(i + 1), e.getKey(), e.getValue().getValues(i)));
+                } else {
+                    aggregates.add(accumulate(SensorReadingsAggregate.getDefaultInstance(), e.getKey(), e.getValue().getValues(i)));
+                }
+            }
+        }
+        return aggregates;
+    }
+
+    /**
+     * @return an average for every position of the batches, starting from the one of lastMeasurements
+     */
+    private static List<SensorDataAverage> computeAverages(SensorReadingsToken token) {
+        List<SensorDataAverage> averages = new ArrayList<>();
+        averages.add(new SensorDataAverage(
+            token.getLastMeasurementsMap().keySet(),
+            token.getLastMeasurementsMap().values().stream().collect(Collectors.averagingDouble(Double::doubleValue))
+        ));
+
+        int maxBatchLength = token.getExtraMeasurementsMap().values().stream().mapToInt(MeasurementBatch::getValuesCount).max().orElse(0);
+        for (int i = 0; i < maxBatchLength; i++) {
+            Map<Integer, Double> values = new HashMap<>();
+            for (Map.Entry<Integer, MeasurementBatch> e : token.getExtraMeasurementsMap().entrySet()) {
+                if (i < e.getValue().getValuesCount()) {
+                    values.put(e.getKey(), e.getValue().getValues(i));
+                }
+            }
+            averages.add(new SensorDataAverage(
+                values.keySet(),
+                values.values().stream().collect(Collectors.averagingDouble(Double::doubleValue))
+            ));
+        }
+        return averages;
     }
 
 }
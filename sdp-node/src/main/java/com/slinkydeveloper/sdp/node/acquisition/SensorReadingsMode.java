@@ -0,0 +1,12 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+public enum SensorReadingsMode {
+    /**
+     * Every node puts its measurement in the token map, useful to debug the single readings
+     */
+    MAP,
+    /**
+     * Every node accumulates its measurement in a fixed size aggregate
+     */
+    AGGREGATE
+}
@@ -0,0 +1,34 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.node.SensorReadingsAggregate;
+
+import java.util.Map;
+
+/**
+ * Welford's online variance, merged with the parallel formula of Chan et al.
+ */
+class VarianceAggregator implements SensorReadingsAggregator {
+
+    @Override
+    public void add(SensorReadingsAggregate aggregate, double value, SensorReadingsAggregate.Builder into) {
+        if (aggregate.getCount() == 0) {
+            into.setM2(0);
+            return;
+        }
+        double mean = aggregate.getSum() / aggregate.getCount();
+        double newMean = (aggregate.getSum() + value) / (aggregate.getCount() + 1);
+        into.setM2(aggregate.getM2() + (value - mean) * (value - newMean));
+    }
+
+    @Override
+    public void merge(SensorReadingsAggregate a, SensorReadingsAggregate b, SensorReadingsAggregate.Builder into) {
+        double delta = b.getSum() / b.getCount() - a.getSum() / a.getCount();
+        double count = a.getCount() + b.getCount();
+        into.setM2(a.getM2() + b.getM2() + delta * delta * a.getCount() * b.getCount() / count);
+    }
+
+    @Override
+    public void report(SensorReadingsAggregate aggregate, Map<String, Double> into) {
+        into.put("standardDeviation", Math.sqrt(aggregate.getM2() / aggregate.getCount()));
+    }
+}
@@ -0,0 +1,36 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+/**
+ * Reducer of a sliding window updated incrementally: every value is added when it enters the window
+ * and removed when it leaves it, so reducing the window costs O(1) per value
+ */
+public interface WindowReducer {
+
+    void add(double value);
+
+    void remove(double value);
+
+    /**
+     * Forget all the values added
+     */
+    void clear();
+
+    /**
+     * @return the reduced value of the values in the window, NaN if the window is empty
+     */
+    double reduce();
+
+    /**
+     * @return a single value for two reduced values of consecutive windows, like the one of a coarser window
+     */
+    double merge(double first, double second);
+
+    static WindowReducer average() {
+        return new RunningSumReducer(true);
+    }
+
+    static WindowReducer sum() {
+        return new RunningSumReducer(false);
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import java.util.Objects;
+
+/**
+ * Reduced value of the window [start, end), with the bounds in epoch milliseconds
+ *
+ * @param <T> Reduced value type
+ */
+public class WindowedMeasurement<T> {
+
+    private final long start;
+    private final long end;
+    private final T value;
+
+    public WindowedMeasurement(long start, long end, T value) {
+        this.start = start;
+        this.end = end;
+        this.value = value;
+    }
+
+    /**
+     * @return a value whose window bounds are unknown
+     */
+    public static <T> WindowedMeasurement<T> unbounded(T value) {
+        return new WindowedMeasurement<>(0, 0, value);
+    }
+
+    public boolean hasBounds() {
+        return this.end > 0;
+    }
+
+    public long getStart() {
+        return this.start;
+    }
+
+    public long getEnd() {
+        return this.end;
+    }
+
+    public T getValue() {
+        return this.value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        WindowedMeasurement<?> that = (WindowedMeasurement<?>) o;
+        return this.start == that.start &&
+            this.end == that.end &&
+            Objects.equals(this.value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.start, this.end, this.value);
+    }
+
+    @Override
+    public String toString() {
+        return "WindowedMeasurement{" +
+            "start=" + this.start +
+            ", end=" + this.end +
+            ", value=" + this.value +
+            '}';
+    }
+}
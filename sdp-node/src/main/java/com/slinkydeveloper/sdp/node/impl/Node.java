@@ -4,13 +4,29 @@ import com.slinkydeveloper.sdp.gateway.client.GatewayNodeService;
 import com.slinkydeveloper.sdp.gateway.client.impl.GatewayNodeServiceFileLogger;
 import com.slinkydeveloper.sdp.gateway.client.impl.GatewayNodeServiceImpl;
 import com.slinkydeveloper.sdp.jersey.JerseyUtils;
-import com.slinkydeveloper.sdp.node.acquisition.OverlappingSlidingWindowBuffer;
+import com.slinkydeveloper.sdp.node.acquisition.EventTimeWindowBuffer;
+import com.slinkydeveloper.sdp.node.acquisition.JournaledReducedBuffer;
+import com.slinkydeveloper.sdp.node.acquisition.MultiSensorBuffer;
+import com.slinkydeveloper.sdp.node.acquisition.PrimitiveSlidingWindowBuffer;
+import com.slinkydeveloper.sdp.node.acquisition.ReducedBuffer;
+import com.slinkydeveloper.sdp.node.acquisition.ReducedMeasurementLog;
+import com.slinkydeveloper.sdp.node.acquisition.ReducedMeasurementQueue;
+import com.slinkydeveloper.sdp.node.acquisition.WindowReducer;
 import com.slinkydeveloper.sdp.node.simulator.PM10Simulator;
+import com.slinkydeveloper.sdp.node.simulator.PM10VirtualSensor;
+import com.slinkydeveloper.sdp.node.simulator.ReplaySimulator;
+import com.slinkydeveloper.sdp.node.simulator.Simulator;
+import com.slinkydeveloper.sdp.node.simulator.SimulatorRuntime;
+import com.slinkydeveloper.sdp.node.simulator.SyntheticLoadSimulator;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 public class Node {
@@ -47,17 +63,83 @@ public class Node {
                 throw new IllegalArgumentException("Mode '" + mode + "' not recognized");
         }
 
-        // Start the measurements simulator
-        OverlappingSlidingWindowBuffer<Double> buffer = new OverlappingSlidingWindowBuffer<>(10, 0.5, OverlappingSlidingWindowBuffer.AVERAGE_REDUCER);
-        PM10Simulator simulator = new PM10Simulator(buffer);
-        simulator.setDaemon(true);
-        simulator.start();
+        // Start the measurements simulators
+        int queueCapacity = Optional.ofNullable(System.getenv("SDP_REDUCED_QUEUE_CAPACITY")).map(Integer::parseInt).orElse(1024);
+        ReducedMeasurementQueue.OverflowPolicy overflowPolicy = Optional.ofNullable(System.getenv("SDP_REDUCED_QUEUE_POLICY"))
+            .map(String::toUpperCase)
+            .map(ReducedMeasurementQueue.OverflowPolicy::valueOf)
+            .orElse(ReducedMeasurementQueue.OverflowPolicy.DROP_OLDEST);
+        Supplier<ReducedBuffer<Double>> windowFactory;
+        if ("time".equalsIgnoreCase(System.getenv("SDP_WINDOW"))) {
+            long size = Optional.ofNullable(System.getenv("SDP_WINDOW_SIZE_MILLIS")).map(Long::parseLong).orElse(5000L);
+            long slide = Optional.ofNullable(System.getenv("SDP_WINDOW_SLIDE_MILLIS")).map(Long::parseLong).orElse(size / 2);
+            long lateness = Optional.ofNullable(System.getenv("SDP_WINDOW_LATENESS_MILLIS")).map(Long::parseLong).orElse(1000L);
+            windowFactory = () -> new EventTimeWindowBuffer(size, slide, lateness, WindowReducer.average(), queueCapacity);
+        } else {
+            windowFactory = () -> new PrimitiveSlidingWindowBuffer(10, 0.5, WindowReducer.average(), queueCapacity, overflowPolicy);
+        }
+        MultiSensorBuffer buffer = new MultiSensorBuffer(1024, windowFactory);
+        ReducedBuffer<Double> pm10Buffer = buffer.forType("PM10");
+        Optional<String> walDirectory = Optional.ofNullable(System.getenv("SDP_WAL_DIR"));
+        if (walDirectory.isPresent()) {
+            // Replay the reduced values not put on the token before the last shutdown
+            int syncEvery = Optional.ofNullable(System.getenv("SDP_WAL_SYNC_EVERY")).map(Integer::parseInt).orElse(64);
+            long syncInterval = Optional.ofNullable(System.getenv("SDP_WAL_SYNC_INTERVAL_MILLIS")).map(Long::parseLong).orElse(1000L);
+            ReducedMeasurementLog log = ReducedMeasurementLog.open(Paths.get(walDirectory.get(), "node-" + myId), 4096, syncEvery, syncInterval);
+            Runtime.getRuntime().addShutdownHook(new Thread(log::close));
+            pm10Buffer = new JournaledReducedBuffer(pm10Buffer, log, queueCapacity);
+        }
+        int sensors = Optional.ofNullable(System.getenv("SDP_SENSORS")).map(Integer::parseInt).orElse(1);
+        String simulatorKind = Optional.ofNullable(System.getenv("SDP_SIMULATOR")).orElse("pm10").toLowerCase();
+        double loadRate = Optional.ofNullable(System.getenv("SDP_LOAD_RATE")).map(Double::parseDouble).orElse(1000d);
+        SyntheticLoadSimulator.Arrival loadArrival = Optional.ofNullable(System.getenv("SDP_LOAD_ARRIVAL"))
+            .map(String::toUpperCase)
+            .map(SyntheticLoadSimulator.Arrival::valueOf)
+            .orElse(SyntheticLoadSimulator.Arrival.CONSTANT);
+        SyntheticLoadSimulator.Waveform loadWaveform = Optional.ofNullable(System.getenv("SDP_LOAD_WAVEFORM"))
+            .map(String::toUpperCase)
+            .map(SyntheticLoadSimulator.Waveform::valueOf)
+            .orElse(SyntheticLoadSimulator.Waveform.SINE);
+        int loadBurstSize = Optional.ofNullable(System.getenv("SDP_LOAD_BURST_SIZE")).map(Integer::parseInt).orElse(100);
+        Optional<Path> replayTrace = Optional.ofNullable(System.getenv("SDP_REPLAY_FILE")).map(Paths::get);
+        double replaySpeedup = Optional.ofNullable(System.getenv("SDP_REPLAY_SPEEDUP"))
+            .map(s -> "max".equalsIgnoreCase(s) ? ReplaySimulator.AS_FAST_AS_POSSIBLE : Double.parseDouble(s))
+            .orElse(ReplaySimulator.REAL_TIME);
+        boolean replayLoop = Optional.ofNullable(System.getenv("SDP_REPLAY_LOOP")).map(Boolean::parseBoolean).orElse(true);
+        if ("virtual".equals(simulatorKind)) {
+            // Thousands of PM10 sensors sharing a few threads
+            int threads = Optional.ofNullable(System.getenv("SDP_SIMULATOR_THREADS")).map(Integer::parseInt).orElse(Runtime.getRuntime().availableProcessors());
+            SimulatorRuntime runtime = new SimulatorRuntime("virtual-sensors", threads);
+            for (int i = 0; i < sensors; i++) {
+                runtime.start("pm10-virtual-" + (i + 1), "PM10", buffer, new PM10VirtualSensor());
+            }
+        } else {
+            for (int i = 0; i < sensors; i++) {
+                Simulator simulator;
+                switch (simulatorKind) {
+                    case "pm10":
+                        simulator = new PM10Simulator(buffer);
+                        break;
+                    case "load":
+                        simulator = new SyntheticLoadSimulator("load-" + (i + 1), "PM10", buffer, loadRate, loadArrival, loadWaveform, loadBurstSize, 10000);
+                        break;
+                    case "replay":
+                        Path trace = replayTrace.orElseThrow(() -> new IllegalArgumentException("SDP_REPLAY_FILE is required to replay a trace"));
+                        simulator = new ReplaySimulator("replay-" + (i + 1), "PM10", buffer, trace, ReplaySimulator.Format.fromPath(trace), replaySpeedup, replayLoop);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Simulator '" + simulatorKind + "' not recognized");
+                }
+                simulator.setDaemon(true);
+                simulator.start();
+            }
+        }
 
         NodeServiceServer serviceServer = new NodeServiceServer(
             myId,
             myAddress,
             initialKnownHosts,
-            buffer,
+            pm10Buffer,
             gatewayNodeService
         );
         serviceServer.start();
@@ -1,115 +1,621 @@
 package com.slinkydeveloper.sdp.node.impl;
 
 import com.google.protobuf.Empty;
-import com.slinkydeveloper.sdp.concurrent.AtomicPointer;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.slinkydeveloper.sdp.concurrent.EventLoop;
 import com.slinkydeveloper.sdp.gateway.client.GatewayNodeService;
 import com.slinkydeveloper.sdp.log.LoggerConfig;
 import com.slinkydeveloper.sdp.node.DiscoveryToken;
 import com.slinkydeveloper.sdp.node.NewNeighbour;
 import com.slinkydeveloper.sdp.node.NodeGrpc;
 import com.slinkydeveloper.sdp.node.SensorReadingsToken;
-import com.slinkydeveloper.sdp.node.acquisition.OverlappingSlidingWindowBuffer;
+import com.slinkydeveloper.sdp.node.SensorReadingsTokenSignal;
+import com.slinkydeveloper.sdp.node.SensorReadingsTokenSignalType;
+import com.slinkydeveloper.sdp.node.TokenAck;
+import com.slinkydeveloper.sdp.node.TokenFrame;
+import com.slinkydeveloper.sdp.node.acquisition.ReducedBuffer;
+import com.slinkydeveloper.sdp.node.acquisition.ScannedSensorReadingsToken;
+import com.slinkydeveloper.sdp.node.acquisition.SensorReadingsAggregator;
 import com.slinkydeveloper.sdp.node.acquisition.SensorReadingsHandler;
+import com.slinkydeveloper.sdp.node.acquisition.SensorReadingsMode;
+import com.slinkydeveloper.sdp.node.network.ChannelRegistry;
 import com.slinkydeveloper.sdp.node.network.DiscoveryHandler;
 import com.slinkydeveloper.sdp.node.network.DiscoveryStatus;
+import com.slinkydeveloper.sdp.node.network.DispatchMode;
+import com.slinkydeveloper.sdp.node.network.MembershipView;
+import com.slinkydeveloper.sdp.node.network.NeighbourMonitor;
 import com.slinkydeveloper.sdp.node.network.NodesRing;
+import com.slinkydeveloper.sdp.node.network.RawMarshaller;
+import com.slinkydeveloper.sdp.node.network.RingTopology;
+import com.slinkydeveloper.sdp.node.network.TimeoutEstimator;
+import com.slinkydeveloper.sdp.node.network.TokenDispatcher;
+import com.slinkydeveloper.sdp.node.network.TokenLapTracker;
+import com.slinkydeveloper.sdp.timer.HashedWheelTimer;
 import com.slinkydeveloper.sdp.timer.TimerScheduler;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.stub.ServerCalls;
 import io.grpc.stub.StreamObserver;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 import static com.slinkydeveloper.sdp.SetUtils.minus;
 import static com.slinkydeveloper.sdp.SetUtils.plus;
 
+/**
+ * When SDP_EVENT_LOOP is enabled, the inbound tokens, the timers, the buffer events and the outcomes of the hops
+ * are all processed by a single {@link EventLoop} thread, in the order they happen.
+ * Otherwise they're processed directly on the gRPC and timer threads
+ */
 public class NodeServiceImpl extends NodeGrpc.NodeImplBase {
 
     private final static Logger LOG = LoggerConfig.getLogger(NodeServiceImpl.class);
 
+    private final static long STOP_TIMEOUT_MILLIS = 5 * 1000;
+
     private final int myId;
     private final String myAddress;
 
-    private final AtomicPointer<SensorReadingsToken> sensorReadingsTokenOnHold;
+    // Sensor readings tokens on hold, by ring
+    private final Map<Integer, SensorReadingsToken> sensorReadingsTokensOnHold;
     private final NodesRing nodesRing;
+    private final Function<Set<Integer>, RingTopology> topologyFactory;
+    private volatile RingTopology topology;
 
     private final SensorReadingsHandler sensorReadingsHandler;
     private final DiscoveryHandler discoveryHandler;
 
     private final long waitMillis;
 
+    // Null when the event loop is disabled
+    private final EventLoop eventLoop;
+    // Null when the dispatch is blocking, so the wait before a hop is a sleep
+    private final HashedWheelTimer dispatchDelays;
+
+    private final TokenDispatcher tokenDispatcher;
+    private final Set<StreamObserver<TokenAck>> inboundTokenStreams;
     private final TimerScheduler timerScheduler;
+    private final TimeoutEstimator timeoutEstimator;
+    private final TokenLapTracker sensorReadingsLaps;
+    // View version and time of the last token generated for every ring, to ignore duplicated DISCOVERED tokens
+    private final Map<Integer, Map.Entry<Long, Long>> generatedSensorReadingsTokens;
+
+    private final boolean tokenParking;
+    // Sensor readings tokens parked by me, by ring
+    private final Map<Integer, SensorReadingsToken> parkedSensorReadingsTokens;
+    // Holder of the parked token of every ring, as notified by the PARKED signal
+    private final Map<Integer, Integer> parkedSensorReadingsRings;
+    // Generation and version of the last token I forwarded in every ring, to detect the laps without contributions
+    private final Map<Integer, Map.Entry<String, Long>> lastForwardedSensorReadingsTokens;
+    private final NeighbourMonitor neighbourMonitor;
+
+    public NodeServiceImpl(int myId, String myAddress, Map<Integer, String> initialKnownHosts, ReducedBuffer<Double> slidingWindowBuffer, GatewayNodeService service) {
+        this(myId, myAddress, initialKnownHosts, slidingWindowBuffer, service, System::getenv);
+    }
 
-    public NodeServiceImpl(int myId, String myAddress, Map<Integer, String> initialKnownHosts, OverlappingSlidingWindowBuffer<Double> slidingWindowBuffer, GatewayNodeService service) {
+    /**
+     * @param env the source of the SDP_* settings, the environment variables when the node is started by {@link Node}
+     */
+    NodeServiceImpl(int myId, String myAddress, Map<Integer, String> initialKnownHosts, ReducedBuffer<Double> slidingWindowBuffer, GatewayNodeService service, Function<String, String> env) {
         this.myId = myId;
         this.myAddress = myAddress;
 
-        this.sensorReadingsTokenOnHold = new AtomicPointer<>("Token on hold");
-        this.nodesRing = new NodesRing(myId, initialKnownHosts);
+        this.sensorReadingsTokensOnHold = new ConcurrentHashMap<>();
+        this.nodesRing = new NodesRing(
+            myId,
+            initialKnownHosts,
+            new ChannelRegistry(Optional.ofNullable(env.apply("SDP_CHANNEL_IDLE_TIMEOUT")).map(Long::parseLong).orElse(30000L))
+        );
+
+        int subRingSize = Optional.ofNullable(env.apply("SDP_SUBRING_SIZE")).map(Integer::parseInt).orElse(0);
+        int shards = Optional.ofNullable(env.apply("SDP_SHARDS")).map(Integer::parseInt).orElse(1);
+        if (subRingSize > 0 && shards > 1) {
+            throw new IllegalArgumentException("SDP_SUBRING_SIZE and SDP_SHARDS cannot be used together");
+        }
+        if (subRingSize > 0) {
+            this.topologyFactory = hosts -> RingTopology.hierarchical(hosts, subRingSize);
+        } else if (shards > 1) {
+            this.topologyFactory = hosts -> RingTopology.sharded(hosts, shards);
+        } else {
+            this.topologyFactory = RingTopology::flat;
+        }
+        this.topology = this.topologyFactory.apply(plus(initialKnownHosts.keySet(), this.myId));
 
-        this.sensorReadingsHandler = new SensorReadingsHandler(this.myId, slidingWindowBuffer, service);
+        this.sensorReadingsHandler = new SensorReadingsHandler(
+            this.myId,
+            slidingWindowBuffer,
+            service,
+            Optional.ofNullable(env.apply("SDP_READINGS_MODE")).map(String::toUpperCase).map(SensorReadingsMode::valueOf).orElse(SensorReadingsMode.MAP),
+            Optional.ofNullable(env.apply("SDP_BATCH_SIZE")).map(Integer::parseInt).orElse(1),
+            SensorReadingsAggregator.fromNames(
+                Optional.ofNullable(env.apply("SDP_AGGREGATORS")).orElse("minmax,variance,quantiles"),
+                Optional.ofNullable(env.apply("SDP_QUANTILE_SKETCH_K")).map(Integer::parseInt).orElse(200)
+            )
+        );
         this.discoveryHandler = new DiscoveryHandler(
             this.myId,
             this.myAddress,
             service,
             this.nodesRing::insertNodes,
-            this.nodesRing::setNodes,
+            this::setKnownHosts,
             this::checkAndDispatchTokenOnHold,
-            this::checkAndGenerateNewSensorReadingsToken
+            this::generateMissingSensorReadingsTokens
         );
 
-        this.waitMillis = Optional.ofNullable(System.getenv("SDP_WAIT")).map(Long::parseLong).orElse(0L);
+        this.waitMillis = Optional.ofNullable(env.apply("SDP_WAIT")).map(Long::parseLong).orElse(0L);
 
+        DispatchMode dispatchMode = Optional.ofNullable(env.apply("SDP_DISPATCH")).map(String::toUpperCase).map(DispatchMode::valueOf).orElse(DispatchMode.BLOCKING);
+        if (Optional.ofNullable(env.apply("SDP_EVENT_LOOP")).map(Boolean::parseBoolean).orElse(false)) {
+            this.eventLoop = new EventLoop("node-event-loop");
+            if (dispatchMode == DispatchMode.BLOCKING) {
+                // A blocking hop stalls the loop, and when every node waits for its next neighbour the ring deadlocks
+                LOG.info("The event loop can't wait for the blocking hops, using the async dispatch mode");
+                dispatchMode = DispatchMode.ASYNC;
+            }
+        } else {
+            this.eventLoop = null;
+        }
+        // The outcome of a non blocking hop is notified on the gRPC or event loop thread, which must not sleep before the next hop
+        this.dispatchDelays = dispatchMode != DispatchMode.BLOCKING ? new HashedWheelTimer("node-dispatch-delays", 10, 512) : null;
+        this.tokenDispatcher = new TokenDispatcher(dispatchMode, this.eventLoop);
+        this.inboundTokenStreams = ConcurrentHashMap.newKeySet();
         this.timerScheduler = new TimerScheduler();
+        this.sensorReadingsLaps = new TokenLapTracker();
+        this.generatedSensorReadingsTokens = new ConcurrentHashMap<>();
+        this.timeoutEstimator = new TimeoutEstimator(
+            Optional.ofNullable(env.apply("SDP_TIMEOUT_SAFETY_FACTOR")).map(Double::parseDouble).orElse(3d)
+        );
+
+        this.tokenParking = Optional.ofNullable(env.apply("SDP_TOKEN_PARKING")).map(Boolean::parseBoolean).orElse(false);
+        this.parkedSensorReadingsTokens = new ConcurrentHashMap<>();
+        this.parkedSensorReadingsRings = new ConcurrentHashMap<>();
+        this.lastForwardedSensorReadingsTokens = new ConcurrentHashMap<>();
+        if (this.tokenParking) {
+            slidingWindowBuffer.setReducedMeasurementListener(() -> {
+                if (!this.parkedSensorReadingsRings.isEmpty()) {
+                    executeOnProtocolThread(this::wakeParkedSensorReadingsTokens);
+                }
+            });
+        }
+
+        long heartbeatInterval = Optional.ofNullable(env.apply("SDP_HEARTBEAT_INTERVAL")).map(Long::parseLong).orElse(1000L);
+        this.neighbourMonitor = heartbeatInterval > 0 ? new NeighbourMonitor(
+            this.nodesRing,
+            heartbeatInterval,
+            Optional.ofNullable(env.apply("SDP_PHI_THRESHOLD")).map(Double::parseDouble).orElse(8d),
+            neighbourId -> executeOnProtocolThread(() -> onNeighbourSuspected(neighbourId))
+        ) : null;
     }
 
     @Override
     public void passSensorReadingsToken(final SensorReadingsToken request, StreamObserver<Empty> responseObserver) {
-        stopSensorReadingsTimeoutTimer();
-        LOG.info("Received sensor readings token:\n" + request);
+        executeOnProtocolThread(() -> onSensorReadingsToken(request, () -> reply(responseObserver)), responseObserver);
+    }
+
+    /**
+     * Like {@link #passSensorReadingsToken(SensorReadingsToken, StreamObserver)}, but the token is received as raw bytes
+     * and it's parsed only if I need to change it
+     */
+    public void passRawSensorReadingsToken(byte[] request, StreamObserver<Empty> responseObserver) {
+        executeOnProtocolThread(() -> onRawSensorReadingsToken(request, responseObserver), responseObserver);
+    }
+
+    private void onRawSensorReadingsToken(byte[] request, StreamObserver<Empty> responseObserver) {
+        ScannedSensorReadingsToken token;
+        SensorReadingsToken parsed = null;
+        try {
+            token = ScannedSensorReadingsToken.scan(request);
+            if (!canForwardUnchanged(token)) {
+                parsed = token.parse();
+            }
+        } catch (InvalidProtocolBufferException e) {
+            LOG.warning("Received malformed sensor readings token: " + e);
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
+
+        if (parsed != null) {
+            onSensorReadingsToken(parsed, () -> reply(responseObserver));
+            return;
+        }
+
+        int ring = token.getRing();
+        stopSensorReadingsTimeoutTimer(ring);
+        LOG.info("Received sensor readings token of ring " + ring + " with nothing to add");
+        recordSensorReadingsTokenLap(ring);
+        this.parkedSensorReadingsRings.remove(ring);
 
         // Reply to the client
         reply(responseObserver);
 
+        if (parkIfIdle(ring, token.getGenerationUUID(), token.getVersion(), () -> parse(token))) {
+            return;
+        }
+        dispatchRawSensorReadingsToken(token);
+    }
+
+    /**
+     * @return the service definition where {@link #passRawSensorReadingsToken(byte[], StreamObserver)} replaces
+     * {@link #passSensorReadingsToken(SensorReadingsToken, StreamObserver)}
+     */
+    public ServerServiceDefinition bindRawTokenService() {
+        ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(NodeGrpc.SERVICE_NAME);
+        for (ServerMethodDefinition<?, ?> method : bindService().getMethods()) {
+            if (!method.getMethodDescriptor().getFullMethodName().equals(RawMarshaller.PASS_SENSOR_READINGS_TOKEN_METHOD.getFullMethodName())) {
+                builder.addMethod(method);
+            }
+        }
+        return builder
+            .addMethod(RawMarshaller.PASS_SENSOR_READINGS_TOKEN_METHOD, ServerCalls.asyncUnaryCall(this::passRawSensorReadingsToken))
+            .build();
+    }
+
+    @Override
+    public void passDiscoveryToken(DiscoveryToken request, StreamObserver<Empty> responseObserver) {
+        executeOnProtocolThread(() -> onDiscoveryToken(
+            request,
+            () -> reply(responseObserver),
+            () -> responseObserver.onError(
+                Status.FAILED_PRECONDITION.withDescription("Unknown base view " + request.getBaseVersion()).asRuntimeException()
+            )
+        ), responseObserver);
+    }
+
+    @Override
+    public void notifyNewNeighbour(NewNeighbour request, StreamObserver<Empty> responseObserver) {
+        executeOnProtocolThread(() -> onNewNeighbour(request, responseObserver), responseObserver);
+    }
+
+    private void onNewNeighbour(NewNeighbour request, StreamObserver<Empty> responseObserver) {
+        LOG.info("I have a new neighbour:\n" + request);
+        this.sensorReadingsLaps.interruptAll();
+
+        // Reply to the client
+        reply(responseObserver);
+
+        // Temporary insert a new neighbour
+        this.nodesRing.insertNode(request.getId(), request.getAddress());
+        this.discoveryHandler.forgetNeighbourView(request.getId());
+
+        // Generate the discovery start token
+        DiscoveryToken token = discoveryHandler
+            .startDiscovery(this.nodesRing.getKnownHosts(), false);
+
+        dispatchDiscoveryToken(token, true);
+    }
+
+    @Override
+    public void heartbeat(Empty request, StreamObserver<Empty> responseObserver) {
+        // Not queued in the event loop, so a busy loop doesn't look like a dead node
+        reply(responseObserver);
+    }
+
+    @Override
+    public void signalSensorReadingsToken(SensorReadingsTokenSignal request, StreamObserver<Empty> responseObserver) {
+        executeOnProtocolThread(() -> onSensorReadingsTokenSignal(request, () -> reply(responseObserver)), responseObserver);
+    }
+
+    @Override
+    public StreamObserver<TokenFrame> openTokenStream(StreamObserver<TokenAck> responseObserver) {
+        LOG.fine("Opened token stream from previous neighbour");
+        this.inboundTokenStreams.add(responseObserver);
+        return new StreamObserver<TokenFrame>() {
+            @Override
+            public void onNext(TokenFrame frame) {
+                executeOnProtocolThread(() -> onTokenFrame(frame));
+            }
+
+            private void onTokenFrame(TokenFrame frame) {
+                Runnable ack = () -> {
+                    synchronized (responseObserver) {
+                        responseObserver.onNext(TokenAck.newBuilder().setSequence(frame.getSequence()).build());
+                    }
+                };
+                // Failures while processing a token must not tear down the stream, because the token was already acked
+                try {
+                    switch (frame.getTokenCase()) {
+                        case SENSORREADINGSTOKEN:
+                            onSensorReadingsToken(frame.getSensorReadingsToken(), ack);
+                            break;
+                        case SENSORREADINGSTOKENSIGNAL:
+                            onSensorReadingsTokenSignal(frame.getSensorReadingsTokenSignal(), ack);
+                            break;
+                        case DISCOVERYTOKEN:
+                            onDiscoveryToken(frame.getDiscoveryToken(), ack, () -> {
+                                synchronized (responseObserver) {
+                                    responseObserver.onNext(TokenAck.newBuilder().setSequence(frame.getSequence()).setRejected(true).build());
+                                }
+                            });
+                            break;
+                        default:
+                            LOG.warning("Received token frame without token:\n" + frame);
+                            ack.run();
+                    }
+                } catch (Exception e) {
+                    LOG.warning("Error while processing the token frame " + frame.getSequence() + ": " + e);
+                    e.printStackTrace();
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                LOG.fine(() -> "Token stream from previous neighbour broken: " + t);
+                inboundTokenStreams.remove(responseObserver);
+            }
+
+            @Override
+            public void onCompleted() {
+                LOG.fine("Token stream from previous neighbour completed");
+                completeInboundTokenStream(responseObserver);
+            }
+        };
+    }
+
+    private void onSensorReadingsToken(final SensorReadingsToken request, Runnable reply) {
+        int ring = request.getRing();
+        stopSensorReadingsTimeoutTimer(ring);
+        LOG.info("Received sensor readings token:\n" + request);
+        recordSensorReadingsTokenLap(ring);
+        this.parkedSensorReadingsRings.remove(ring);
+
+        // Reply to the client
+        reply.run();
+
         // If we're discovering nodes, then keep the token on hold
-        if (this.discoveryHandler.executeIfIsDiscovering(() -> this.sensorReadingsTokenOnHold.set(request))) {
+        if (this.discoveryHandler.executeIfIsDiscovering(() -> holdSensorReadingsToken(request))) {
             LOG.info("We're discovering, the token is on hold");
             return;
         }
 
+        processSensorReadingsToken(request, true);
+    }
+
+    /**
+     * Handle the token and forward it, or park it if nobody contributed during the last lap
+     */
+    private void processSensorReadingsToken(final SensorReadingsToken request, boolean canPark) {
         // Generate the new token to forward
-        SensorReadingsToken newToken = sensorReadingsHandler
-            .handleSensorReadingsToken(request, this.nodesRing.getKnownHosts().keySet());
+        SensorReadingsToken newToken = handleSensorReadingsToken(request);
+        if (newToken == null) {
+            return;
+        }
 
-        if (newToken != null) {
-            dispatchSensorReadingsToken(newToken);
+        if (newToken != request && !newToken.equals(request)) {
+            newToken = newToken.toBuilder().setVersion(request.getVersion() + 1).build();
+        } else if (canPark && parkIfIdle(request.getRing(), request.getGenerationUUID(), request.getVersion(), () -> request)) {
+            return;
         }
+        dispatchSensorReadingsToken(newToken);
+
+        // A round of my sub-ring may be ready for the parked token of the upper ring
+        wakeParkedSensorReadingsTokens();
     }
 
-    @Override
-    public void passDiscoveryToken(DiscoveryToken request, StreamObserver<Empty> responseObserver) {
-        stopDiscoveryTimeoutTimer();
+    /**
+     * Park the token if it's the same version I forwarded, so it did a whole lap without contributions.
+     * The other nodes of the ring are notified with the PARKED signal, so they suspend the timeout of the ring
+     * and they wake the token up when they have new values
+     *
+     * @return true if the token was parked
+     */
+    private boolean parkIfIdle(int ring, String generationUUID, long version, Supplier<SensorReadingsToken> token) {
+        if (!this.tokenParking) {
+            return false;
+        }
+        Map.Entry<String, Long> lastForwarded = this.lastForwardedSensorReadingsTokens.get(ring);
+        if (lastForwarded == null || !lastForwarded.getKey().equals(generationUUID) || lastForwarded.getValue() != version) {
+            return false;
+        }
+
+        LOG.info("Nobody contributed to the sensor readings token of ring " + ring + " during the last lap, parking it");
+        this.parkedSensorReadingsTokens.put(ring, token.get());
+        this.parkedSensorReadingsRings.put(ring, this.myId);
+        this.sensorReadingsLaps.interrupt(ring);
+        dispatchSensorReadingsTokenSignal(
+            SensorReadingsTokenSignal.newBuilder()
+                .setType(SensorReadingsTokenSignalType.PARKED)
+                .setRing(ring)
+                .setHolder(this.myId)
+                .setOrigin(this.myId)
+                .build()
+        );
+
+        // A value may have been reduced after the token was handled
+        wakeParkedSensorReadingsTokens();
+        return true;
+    }
+
+    /**
+     * Wake up the parked tokens of the rings I have new values for
+     */
+    private void wakeParkedSensorReadingsTokens() {
+        if (this.parkedSensorReadingsRings.isEmpty()) {
+            return;
+        }
+        RingTopology topology = this.topology;
+        for (int ring : new ArrayList<>(this.parkedSensorReadingsRings.keySet())) {
+            if (!topology.hasRing(ring) ||
+                (topology.getKind(ring) != RingTopology.RingKind.MAIN && !topology.getMembers(ring).contains(this.myId)) ||
+                !this.sensorReadingsHandler.hasValuesToContribute(topology.getKind(ring) == RingTopology.RingKind.UPPER)) {
+                continue;
+            }
+            Integer holder = this.parkedSensorReadingsRings.remove(ring);
+            if (holder == null) {
+                // Somebody else woke it up
+                continue;
+            }
+            if (holder == this.myId) {
+                resumeParkedSensorReadingsToken(ring);
+            } else {
+                LOG.info("I have new values, waking up the sensor readings token of ring " + ring + " parked by " + holder);
+                dispatchSensorReadingsTokenSignal(
+                    SensorReadingsTokenSignal.newBuilder()
+                        .setType(SensorReadingsTokenSignalType.WAKE_UP)
+                        .setRing(ring)
+                        .setHolder(holder)
+                        .setOrigin(this.myId)
+                        .build()
+                );
+                startSensorReadingsTimeoutTimer(ring);
+            }
+        }
+    }
+
+    private void resumeParkedSensorReadingsToken(int ring) {
+        SensorReadingsToken token = this.parkedSensorReadingsTokens.remove(ring);
+        if (token == null) {
+            return;
+        }
+        LOG.info("Resuming the parked sensor readings token of ring " + ring);
+        if (this.discoveryHandler.executeIfIsDiscovering(() -> holdSensorReadingsToken(token))) {
+            LOG.info("We're discovering, the token is on hold");
+            return;
+        }
+        processSensorReadingsToken(token, false);
+    }
+
+    private void onSensorReadingsTokenSignal(SensorReadingsTokenSignal signal, Runnable reply) {
+        LOG.fine(() -> "Received sensor readings token signal:\n" + signal);
+
+        // Reply to the client
+        reply.run();
+
+        int ring = signal.getRing();
+        switch (signal.getType()) {
+            case PARKED:
+                if (signal.getHolder() == this.myId) {
+                    LOG.fine(() -> "Every node knows the sensor readings token of ring " + ring + " is parked");
+                    return;
+                }
+                LOG.info("The sensor readings token of ring " + ring + " is parked by " + signal.getHolder());
+                this.parkedSensorReadingsRings.put(ring, signal.getHolder());
+                stopSensorReadingsTimeoutTimer(ring);
+                this.sensorReadingsLaps.interrupt(ring);
+                dispatchSensorReadingsTokenSignal(signal);
+                wakeParkedSensorReadingsTokens();
+                return;
+            case WAKE_UP:
+                if (signal.getHolder() == this.myId) {
+                    this.parkedSensorReadingsRings.remove(ring);
+                    resumeParkedSensorReadingsToken(ring);
+                    return;
+                }
+                if (signal.getOrigin() == this.myId) {
+                    LOG.warning("The wake up signal of ring " + ring + " came back, its holder " + signal.getHolder() + " is not in the ring anymore");
+                    return;
+                }
+                this.parkedSensorReadingsRings.remove(ring);
+                startSensorReadingsTimeoutTimer(ring);
+                dispatchSensorReadingsTokenSignal(signal);
+                return;
+            default:
+                LOG.warning("Received unknown sensor readings token signal:\n" + signal);
+        }
+    }
+
+    private SensorReadingsToken handleSensorReadingsToken(SensorReadingsToken request) {
+        RingTopology topology = this.topology;
+        int ring = request.getRing();
+        if (!topology.hasRing(ring)) {
+            LOG.warning("Dropping the sensor readings token of ring " + ring + ", the ring doesn't exist anymore");
+            return null;
+        }
+        Set<Integer> members = topology.getMembers(ring);
+        switch (topology.getKind(ring)) {
+            case SUB_RING:
+                if (!members.contains(this.myId)) {
+                    return request;
+                }
+                return this.sensorReadingsHandler.handleSubRingToken(request, members, topology.getRepresentative(ring) == this.myId);
+            case UPPER:
+                if (!members.contains(this.myId)) {
+                    return request;
+                }
+                return this.sensorReadingsHandler.handleUpperRingToken(request, topology.getSubRingOf(this.myId), topology.getRings(RingTopology.RingKind.SUB_RING));
+            case SHARD:
+                if (!members.contains(this.myId)) {
+                    return request;
+                }
+                return this.sensorReadingsHandler.handleShardToken(
+                    request,
+                    members,
+                    ring - RingTopology.FIRST_SUB_RING,
+                    topology.getRings(RingTopology.RingKind.SHARD).size()
+                );
+            default:
+                return this.sensorReadingsHandler.handleSensorReadingsToken(request, this.nodesRing.getKnownHosts().keySet());
+        }
+    }
+
+    /**
+     * @return true if the token can be forwarded as received, without putting it on hold
+     */
+    private boolean canForwardUnchanged(ScannedSensorReadingsToken token) {
+        RingTopology topology = this.topology;
+        int ring = token.getRing();
+        if (this.discoveryHandler.getStatus().isParticipating() || !topology.hasRing(ring)) {
+            return false;
+        }
+        Set<Integer> members = topology.getMembers(ring);
+        switch (topology.getKind(ring)) {
+            case SUB_RING:
+                return !members.contains(this.myId) ||
+                    this.sensorReadingsHandler.isLeftUnchanged(token, topology.getRepresentative(ring) == this.myId ? members : null);
+            case UPPER:
+                return !members.contains(this.myId) ||
+                    this.sensorReadingsHandler.isUpperRingTokenLeftUnchanged(token, topology.getSubRingOf(this.myId), topology.getRings(RingTopology.RingKind.SUB_RING));
+            case SHARD:
+                return !members.contains(this.myId) || this.sensorReadingsHandler.isLeftUnchanged(token, members);
+            default:
+                return this.sensorReadingsHandler.isLeftUnchanged(token, this.nodesRing.getKnownHosts().keySet());
+        }
+    }
+
+    private void onDiscoveryToken(DiscoveryToken request, Runnable reply, Runnable reject) {
         LOG.info("Received discovery token:\n" + request);
 
+        // The previous node will send the token again with the full base view
+        if (!this.discoveryHandler.isBaseViewKnown(request)) {
+            LOG.info("Rejecting discovery token because I don't know its base view " + request.getBaseVersion());
+            reject.run();
+            return;
+        }
+        stopDiscoveryTimeoutTimer();
+        this.sensorReadingsLaps.interruptAll();
+
         // Reply to the client
-        reply(responseObserver);
+        reply.run();
 
         // Generate the new token to forward
         Map<Integer, String> knownHosts = this.nodesRing.getKnownHosts();
         Map.Entry<Boolean, DiscoveryToken.Builder> token = this.discoveryHandler.handleReceivedDiscovery(
             request,
             minus(
-                request.getKnownHostsMap().keySet(),
+                request.getAddedHostsMap().keySet(),
                 plus(knownHosts.keySet(), this.myId)
-            ).size() > 0,
-            knownHosts
+            ).size() > 0
         );
 
         boolean expectingOtherDiscoveryToken = token.getKey();
         DiscoveryToken.Builder newTokenBuilder = token.getValue();
 
         if (newTokenBuilder != null) {
-            if (!this.sensorReadingsTokenOnHold.isEmpty()) {
-                newTokenBuilder.setGenerateNewSensorReadingsToken(false);
+            if (!this.sensorReadingsTokensOnHold.isEmpty() || !this.parkedSensorReadingsTokens.isEmpty()) {
+                Set<Integer> heldRings = new HashSet<>(newTokenBuilder.getHeldSensorReadingsRingsList());
+                heldRings.addAll(this.sensorReadingsTokensOnHold.keySet());
+                heldRings.addAll(this.parkedSensorReadingsTokens.keySet());
+                newTokenBuilder.clearHeldSensorReadingsRings().addAllHeldSensorReadingsRings(heldRings);
+                if (heldRings.containsAll(this.topology.getRings())) {
+                    newTokenBuilder.setGenerateNewSensorReadingsToken(false);
+                }
             }
             dispatchDiscoveryToken(newTokenBuilder.build(), expectingOtherDiscoveryToken);
         } else if (expectingOtherDiscoveryToken) {
@@ -117,32 +623,19 @@ public class NodeServiceImpl extends NodeGrpc.NodeImplBase {
         }
 
         if (!expectingOtherDiscoveryToken) {
-            startSensorReadingsTimeoutTimer();
+            startSensorReadingsTimeoutTimers();
         }
     }
 
-    @Override
-    public void notifyNewNeighbour(NewNeighbour request, StreamObserver<Empty> responseObserver) {
-        LOG.info("I have a new neighbour:\n" + request);
-
-        // Reply to the client
-        reply(responseObserver);
-
-        // Temporary insert a new neighbour
-        this.nodesRing.insertNode(request.getId(), request.getAddress());
-
-        // Generate the discovery start token
-        DiscoveryToken token = discoveryHandler
-            .startDiscovery(this.nodesRing.getKnownHosts(), false);
-
-        dispatchDiscoveryToken(token, true);
-    }
-
     /**
      * After the service is started, we notify to the previous node my presence so it can start a new discovery
      * Then we're ready to receive the token
      */
     public void start() {
+        if (this.neighbourMonitor != null) {
+            this.neighbourMonitor.start();
+        }
+
         NewNeighbour message = NewNeighbour
             .newBuilder()
             .setId(this.myId)
@@ -165,11 +658,28 @@ public class NodeServiceImpl extends NodeGrpc.NodeImplBase {
             }
         }
         LOG.info("I'm alone in the network");
-        this.sensorReadingsTokenOnHold.set(SensorReadingsToken.newBuilder().setGenerationUUID(UUID.randomUUID().toString()).build());
+        this.topologyFactory.apply(Collections.singleton(this.myId)).getRings()
+            .forEach(ring -> this.sensorReadingsTokensOnHold.put(ring, newSensorReadingsToken(ring)));
     }
 
     public void stop() {
-        checkAndDispatchTokenOnHold();
+        if (this.neighbourMonitor != null) {
+            this.neighbourMonitor.stop();
+        }
+        executeOnProtocolThreadAndWait(() -> {
+            checkAndDispatchTokenOnHold();
+            this.tokenDispatcher.close();
+            // Close the inbound streams, so the previous node falls back to the unary calls and notices we're gone
+            new ArrayList<>(this.inboundTokenStreams).forEach(this::completeInboundTokenStream);
+        });
+        if (this.eventLoop != null) {
+            this.eventLoop.shutdown();
+        }
+        if (this.dispatchDelays != null) {
+            this.dispatchDelays.stop();
+        }
+        this.timerScheduler.stop();
+        this.nodesRing.close();
     }
 
     /**
@@ -177,6 +687,7 @@ public class NodeServiceImpl extends NodeGrpc.NodeImplBase {
      */
     private void startDiscoveryAfterFailure(Set<Integer> failedNodes, boolean askToGenerateNewSensorReadingsToken) {
         this.stopDiscoveryTimeoutTimer();
+        this.sensorReadingsLaps.interruptAll();
 
         LOG.warning("Something went wrong, trying to execute discovery again");
 
@@ -189,68 +700,212 @@ public class NodeServiceImpl extends NodeGrpc.NodeImplBase {
         dispatchDiscoveryToken(token, true);
     }
 
+    private void onNeighbourSuspected(int neighbourId) {
+        if (this.discoveryHandler.getStatus().isParticipating()) {
+            LOG.info("Neighbour " + neighbourId + " is suspected, but a discovery is already running");
+            return;
+        }
+        // The token may still be alive in the ring, the sensor readings timeout will regenerate it if it was lost
+        startDiscoveryAfterFailure(Collections.singleton(neighbourId), false);
+    }
+
+    private void setKnownHosts(Map<Integer, String> knownHosts) {
+        this.nodesRing.setNodes(knownHosts);
+        this.topology = this.topologyFactory.apply(knownHosts.keySet());
+        this.sensorReadingsHandler.clearSubRingRounds();
+        LOG.fine(() -> "New ring topology: " + this.topology);
+    }
+
     private void checkAndDispatchTokenOnHold() {
-        // If there is a sensor readings token on hold, then forward it
-        SensorReadingsToken token = this.sensorReadingsTokenOnHold.getAndClear();
-        if (token != null) {
+        // The rings may be changed, so the parked tokens circulate again until they're parked after an idle lap
+        this.parkedSensorReadingsRings.clear();
+        for (Integer ring : new ArrayList<>(this.parkedSensorReadingsTokens.keySet())) {
+            SensorReadingsToken token = this.parkedSensorReadingsTokens.remove(ring);
+            if (token != null) {
+                this.sensorReadingsTokensOnHold.putIfAbsent(ring, token);
+            }
+        }
+
+        // If there are sensor readings tokens on hold, then forward them
+        for (Integer ring : new ArrayList<>(this.sensorReadingsTokensOnHold.keySet())) {
+            SensorReadingsToken token = this.sensorReadingsTokensOnHold.remove(ring);
+            if (token == null) {
+                continue;
+            }
             LOG.info("Discovery ended and I have the sensor readings token, forwarding:\n" + token);
             dispatchSensorReadingsToken(token);
         }
     }
 
-    private void checkAndGenerateNewSensorReadingsToken() {
-        if (this.sensorReadingsTokenOnHold.isEmpty()) {
-            LOG.info("As a LEADER of the discovery, I'm going to regenerate the sensor readings token");
-            dispatchSensorReadingsToken(SensorReadingsToken.newBuilder().setGenerationUUID(UUID.randomUUID().toString()).build());
-        } else {
-            LOG.info("No need to regenerate the token because I have it");
+    /**
+     * Generate the tokens of the rings I'm the representative of, if they are new or they were lost
+     */
+    private void generateMissingSensorReadingsTokens(DiscoveryToken token) {
+        RingTopology topology = this.topology;
+        MembershipView baseView = this.discoveryHandler.getBaseView(token);
+        Set<Integer> previousRings = baseView != null ? this.topologyFactory.apply(baseView.getHosts().keySet()).getRings() : topology.getRings();
+        long view = this.discoveryHandler.getView().getVersion();
+
+        for (int ring : topology.getRings()) {
+            if (topology.getRepresentative(ring) != this.myId) {
+                continue;
+            }
+            if (!token.getGenerateNewSensorReadingsToken() && previousRings.contains(ring)) {
+                continue;
+            }
+            if (token.getHeldSensorReadingsRingsList().contains(ring) || this.sensorReadingsTokensOnHold.containsKey(ring) || this.parkedSensorReadingsTokens.containsKey(ring)) {
+                LOG.info("No need to regenerate the token of ring " + ring + " because someone has it");
+                continue;
+            }
+            long now = System.currentTimeMillis();
+            Map.Entry<Long, Long> generated = this.generatedSensorReadingsTokens.put(ring, new AbstractMap.SimpleImmutableEntry<>(view, now));
+            if (generated != null && generated.getKey() == view &&
+                now - generated.getValue() < this.timeoutEstimator.sensorReadingsTimeout(ringSize(ring), computeTimeout(1))) {
+                LOG.info("No need to regenerate the token of ring " + ring + " because I've just generated it");
+                continue;
+            }
+            LOG.info("As the representative of ring " + ring + ", I'm going to generate its sensor readings token");
+            dispatchSensorReadingsToken(newSensorReadingsToken(ring));
         }
     }
 
+    private SensorReadingsToken newSensorReadingsToken(int ring) {
+        return SensorReadingsToken.newBuilder()
+            .setGenerationUUID(UUID.randomUUID().toString())
+            .setRing(ring)
+            .build();
+    }
+
     private void dispatchSensorReadingsToken(SensorReadingsToken token) {
-        // Forward to next neighbour
-        Map.Entry<Integer, NodeGrpc.NodeBlockingStub> nextNeighbour = nodesRing.getNext(0);
-        if (nextNeighbour != null) {
-            waitBeforeDispatch();
-            try {
-                nextNeighbour.getValue().passSensorReadingsToken(token);
-                LOG.info("Sensors reading token passed successfully to next neighbour " + nextNeighbour.getKey());
-                this.startSensorReadingsTimeoutTimer();
-            } catch (Exception e) {
-                LOG.warning("Failure while trying to pass the sensors readings token to neighbour " + nextNeighbour.getKey() + ": " + e);
+        int ring = token.getRing();
+        Map.Entry<Integer, NodeGrpc.NodeBlockingStub> nextNeighbour = nextSensorReadingsNeighbour(ring);
+        if (nextNeighbour == null) {
+            return;
+        }
+        if (this.tokenParking) {
+            this.lastForwardedSensorReadingsTokens.put(ring, new AbstractMap.SimpleImmutableEntry<>(token.getGenerationUUID(), token.getVersion()));
+        }
+        afterWait(() -> {
+            long dispatchStart = System.currentTimeMillis();
+            this.tokenDispatcher.passSensorReadingsToken(
+                nextNeighbour,
+                token,
+                () -> onSensorReadingsTokenPassed(ring, nextNeighbour.getKey(), dispatchStart),
+                e -> onSensorReadingsTokenFailure(token, nextNeighbour.getKey(), e)
+            );
+        });
+    }
+
+    private void dispatchRawSensorReadingsToken(ScannedSensorReadingsToken token) {
+        int ring = token.getRing();
+        Map.Entry<Integer, NodeGrpc.NodeBlockingStub> nextNeighbour = nextSensorReadingsNeighbour(ring);
+        if (nextNeighbour == null) {
+            return;
+        }
+        if (this.tokenParking) {
+            this.lastForwardedSensorReadingsTokens.put(ring, new AbstractMap.SimpleImmutableEntry<>(token.getGenerationUUID(), token.getVersion()));
+        }
+        afterWait(() -> {
+            long dispatchStart = System.currentTimeMillis();
+            this.tokenDispatcher.passRawSensorReadingsToken(
+                nextNeighbour,
+                token.getBytes(),
+                () -> onSensorReadingsTokenPassed(ring, nextNeighbour.getKey(), dispatchStart),
+                e -> onSensorReadingsTokenFailure(parse(token), nextNeighbour.getKey(), e)
+            );
+        });
+    }
+
+    private SensorReadingsToken parse(ScannedSensorReadingsToken token) {
+        try {
+            return token.parse();
+        } catch (InvalidProtocolBufferException e) {
+            // Can't happen, the token was scanned when received
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void dispatchSensorReadingsTokenSignal(SensorReadingsTokenSignal signal) {
+        Map.Entry<Integer, NodeGrpc.NodeBlockingStub> nextNeighbour = nextSensorReadingsNeighbour(signal.getRing());
+        if (nextNeighbour == null) {
+            return;
+        }
+        this.tokenDispatcher.passSensorReadingsTokenSignal(
+            nextNeighbour,
+            signal,
+            () -> LOG.fine(() -> "Sensor readings token signal passed successfully to next neighbour " + nextNeighbour.getKey()),
+            e -> {
+                // If a signal is lost, the timeout of some node expires and the discovery resumes the parked token
+                LOG.warning("Failure while trying to pass the sensor readings token signal to neighbour " + nextNeighbour.getKey() + ": " + e);
                 e.printStackTrace();
-                this.sensorReadingsTokenOnHold.set(token);
-                startDiscoveryAfterFailure(Collections.singleton(nextNeighbour.getKey()), false);
             }
-        } else {
+        );
+    }
+
+    /**
+     * @return the next neighbour in the ring of the token, or null if the ring doesn't exist anymore
+     */
+    private Map.Entry<Integer, NodeGrpc.NodeBlockingStub> nextSensorReadingsNeighbour(int ring) {
+        RingTopology topology = this.topology;
+        if (!topology.hasRing(ring)) {
+            LOG.warning("Dropping the sensor readings token of ring " + ring + ", the ring doesn't exist anymore");
+            return null;
+        }
+        Map.Entry<Integer, NodeGrpc.NodeBlockingStub> nextNeighbour = topology.getKind(ring) == RingTopology.RingKind.MAIN ?
+            nodesRing.getNext(0) :
+            nodesRing.getNext(0, topology.getMembers(ring));
+        if (nextNeighbour == null) {
             throw new IllegalStateException("No neighbours found!");
         }
+        return nextNeighbour;
+    }
+
+    private void onSensorReadingsTokenPassed(int ring, int neighbourId, long dispatchStart) {
+        LOG.info("Sensors reading token passed successfully to next neighbour " + neighbourId);
+        this.timeoutEstimator.recordHop(System.currentTimeMillis() - dispatchStart);
+        this.startSensorReadingsTimeoutTimer(ring);
+    }
+
+    private void onSensorReadingsTokenFailure(SensorReadingsToken token, int neighbourId, Throwable e) {
+        LOG.warning("Failure while trying to pass the sensors readings token to neighbour " + neighbourId + ": " + e);
+        e.printStackTrace();
+        holdSensorReadingsToken(token);
+        startDiscoveryAfterFailure(Collections.singleton(neighbourId), false);
     }
 
     private void dispatchDiscoveryToken(DiscoveryToken token, boolean startTimer) {
         // Forward to next neighbour and just skip failing ones
-        int i = 0;
-        Map.Entry<Integer, NodeGrpc.NodeBlockingStub> nextNeighbour = this.nodesRing.getNext(0);
-        while (nextNeighbour != null) {
-            waitBeforeDispatch();
-            try {
-                nextNeighbour.getValue().passDiscoveryToken(token);
-                LOG.info("Discovery token passed successfully to " + (i + 1) + "° neighbour (id " + nextNeighbour.getKey() + ")");
-                if (startTimer) {
-                    startDiscoveryTimeoutTimer();
-                }
-                return;
-            } catch (Exception e) {
-                LOG.warning("Skipping " + (i + 1) + "° neighbour (id " + nextNeighbour.getKey() + ") because something wrong happened while passing the token: " + e);
-                e.printStackTrace();
+        afterWait(() -> this.tokenDispatcher.passDiscoveryToken(
+            this.nodesRing::getNext,
+            token,
+            this::afterWait,
+            new DiscoveryTokenFailover(startTimer)
+        ));
+    }
 
-                token = this.discoveryHandler.fixTokenWhenHostIsUnavailable(token, nextNeighbour.getKey());
-                i++;
-                nextNeighbour = this.nodesRing.getNext(i);
+    /**
+     * No neighbour can receive the discovery token, so I'm alone in the ring:
+     * like when I start alone, the sensor readings tokens are on hold until a new node joins the ring
+     */
+    private void continueAlone() {
+        stopDiscoveryTimeoutTimer();
+        this.topology.getRings().forEach(this::stopSensorReadingsTimeoutTimer);
+        setKnownHosts(Collections.singletonMap(this.myId, this.myAddress));
+        this.topology.getRings().stream()
+            .filter(ring -> !this.parkedSensorReadingsTokens.containsKey(ring))
+            .forEach(ring -> this.sensorReadingsTokensOnHold.computeIfAbsent(ring, this::newSensorReadingsToken));
+    }
+
+    private void completeInboundTokenStream(StreamObserver<TokenAck> ackStream) {
+        if (this.inboundTokenStreams.remove(ackStream)) {
+            synchronized (ackStream) {
+                try {
+                    ackStream.onCompleted();
+                } catch (Exception e) {
+                    LOG.fine(() -> "Error while completing the inbound token stream: " + e);
+                }
             }
         }
-        this.nodesRing.setNodes(Collections.emptyMap());
-        throw new IllegalStateException("All the neighbours are unavailable! Looks like I'm alone!");
     }
 
     private void reply(StreamObserver<Empty> emptyStream) {
@@ -258,6 +913,72 @@ public class NodeServiceImpl extends NodeGrpc.NodeImplBase {
         emptyStream.onCompleted();
     }
 
+    /**
+     * Run the action after SDP_WAIT: with the non blocking dispatch the thread can't sleep,
+     * so the action is scheduled on the protocol thread after the wait
+     */
+    private void afterWait(Runnable action) {
+        if (this.dispatchDelays != null && this.waitMillis > 0) {
+            try {
+                this.dispatchDelays.newTimeout(() -> executeOnProtocolThread(action), this.waitMillis);
+            } catch (IllegalStateException e) {
+                LOG.fine(() -> "Dropping the hop, the node is stopping");
+            }
+            return;
+        }
+        waitBeforeDispatch();
+        action.run();
+    }
+
+    private void executeOnProtocolThread(Runnable task) {
+        if (this.eventLoop == null) {
+            task.run();
+            return;
+        }
+        try {
+            this.eventLoop.execute(task);
+        } catch (RejectedExecutionException e) {
+            LOG.fine(() -> "Dropping the task, the event loop is shut down");
+        }
+    }
+
+    /**
+     * Like {@link #executeOnProtocolThread(Runnable)}, but the call is failed if the event loop is shut down
+     */
+    private void executeOnProtocolThread(Runnable task, StreamObserver<Empty> responseObserver) {
+        if (this.eventLoop == null) {
+            task.run();
+            return;
+        }
+        try {
+            this.eventLoop.execute(task);
+        } catch (RejectedExecutionException e) {
+            responseObserver.onError(Status.UNAVAILABLE.withDescription("The node is stopping").asRuntimeException());
+        }
+    }
+
+    private void executeOnProtocolThreadAndWait(Runnable task) {
+        if (this.eventLoop == null || this.eventLoop.inEventLoop()) {
+            task.run();
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        executeOnProtocolThread(() -> {
+            try {
+                task.run();
+            } finally {
+                done.countDown();
+            }
+        });
+        try {
+            if (!done.await(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                LOG.warning("The event loop didn't execute the task in " + STOP_TIMEOUT_MILLIS + " ms");
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
     private void waitBeforeDispatch() {
         try {
             Thread.sleep(this.waitMillis);
@@ -267,16 +988,17 @@ public class NodeServiceImpl extends NodeGrpc.NodeImplBase {
     }
 
     private void startDiscoveryTimeoutTimer() {
-        stopSensorReadingsTimeoutTimer();
-        long timeout = computeTimeout(1);
+        this.topology.getRings().forEach(this::stopSensorReadingsTimeoutTimer);
+        long timeout = this.timeoutEstimator.discoveryTimeout(this.nodesRing.getKnownHosts().size(), computeTimeout(1));
         this.timerScheduler.schedule(
             "discovery-timeout",
             timeout,
-            () ->
+            () -> executeOnProtocolThread(() ->
                 this.startDiscoveryAfterFailure(
                     Collections.emptySet(),
                     this.discoveryHandler.getStatus() == DiscoveryStatus.GENERATE_TOKEN_PARTICIPATION
                 )
+            )
         );
     }
 
@@ -284,20 +1006,59 @@ public class NodeServiceImpl extends NodeGrpc.NodeImplBase {
         this.timerScheduler.cancel("discovery-timeout");
     }
 
-    private void startSensorReadingsTimeoutTimer() {
-        long timeout = computeTimeout(1);
+    /**
+     * Start the timeout of every ring I'm member of
+     */
+    private void startSensorReadingsTimeoutTimers() {
+        RingTopology topology = this.topology;
+        topology.getRings().stream()
+            .filter(ring -> topology.getKind(ring) == RingTopology.RingKind.MAIN || topology.getMembers(ring).contains(this.myId))
+            .forEach(this::startSensorReadingsTimeoutTimer);
+    }
+
+    private void startSensorReadingsTimeoutTimer(int ring) {
+        if (this.parkedSensorReadingsRings.containsKey(ring)) {
+            // A parked token is not lost: if its holder fails, the discovery started by its previous neighbour resumes the timers
+            return;
+        }
+        long timeout = this.timeoutEstimator.sensorReadingsTimeout(ringSize(ring), computeTimeout(1));
         this.timerScheduler.conditionalSchedule(
             s -> !s.contains("discovery-timeout"),
-            "sensor-readings-timeout",
+            "sensor-readings-timeout-" + ring,
             timeout,
-            () -> this.startDiscoveryAfterFailure(Collections.emptySet(), true)
+            () -> executeOnProtocolThread(() -> this.startDiscoveryAfterFailure(Collections.emptySet(), true))
         );
     }
 
-    private void stopSensorReadingsTimeoutTimer() {
-        this.timerScheduler.cancel("sensor-readings-timeout");
+    private void stopSensorReadingsTimeoutTimer(int ring) {
+        this.timerScheduler.cancel("sensor-readings-timeout-" + ring);
+    }
+
+    private void recordSensorReadingsTokenLap(int ring) {
+        long lap = this.sensorReadingsLaps.onReception(ring);
+        if (lap >= 0) {
+            this.timeoutEstimator.recordLap(lap, ringSize(ring));
+        }
+    }
+
+    /**
+     * Keep the token until the discovery ends, its lap is not measured
+     */
+    private void holdSensorReadingsToken(SensorReadingsToken token) {
+        this.sensorReadingsTokensOnHold.put(token.getRing(), token);
+        this.sensorReadingsLaps.interrupt(token.getRing());
     }
 
+    private int ringSize(int ring) {
+        RingTopology topology = this.topology;
+        return topology.hasRing(ring) && topology.getKind(ring) != RingTopology.RingKind.MAIN ?
+            topology.getMembers(ring).size() :
+            this.nodesRing.getKnownHosts().size();
+    }
+
+    /**
+     * Fixed timeout, used until the {@link TimeoutEstimator} has enough samples
+     */
     private long computeTimeout(long factor) {
         int size = this.nodesRing.getKnownHosts().size();
         if (size == 0) {
@@ -306,4 +1067,48 @@ public class NodeServiceImpl extends NodeGrpc.NodeImplBase {
         return size * 10 * 1000 * factor;
     }
 
+    private class DiscoveryTokenFailover implements TokenDispatcher.DiscoveryFailover {
+
+        private final boolean startTimer;
+
+        private DiscoveryTokenFailover(boolean startTimer) {
+            this.startTimer = startTimer;
+        }
+
+        @Override
+        public DiscoveryToken prepare(DiscoveryToken token, int neighbourId) {
+            return discoveryHandler.prepareForNeighbour(token, neighbourId);
+        }
+
+        @Override
+        public boolean retryRejected(DiscoveryToken prepared, int neighbourId) {
+            if (prepared.getBaseHostsCount() != 0) {
+                return false;
+            }
+            // The neighbour doesn't know the base view of the token, send it again with the full base view
+            discoveryHandler.forgetNeighbourView(neighbourId);
+            return discoveryHandler.prepareForNeighbour(prepared, neighbourId).getBaseHostsCount() != 0;
+        }
+
+        @Override
+        public DiscoveryToken skip(DiscoveryToken token, int neighbourId) {
+            return discoveryHandler.fixTokenWhenHostIsUnavailable(token, neighbourId);
+        }
+
+        @Override
+        public void onPassed(DiscoveryToken prepared, int index, int neighbourId, long hopMillis) {
+            LOG.info("Discovery token passed successfully to " + (index + 1) + "° neighbour (id " + neighbourId + ")");
+            timeoutEstimator.recordHop(hopMillis);
+            discoveryHandler.onTokenDelivered(prepared, neighbourId);
+            if (this.startTimer) {
+                startDiscoveryTimeoutTimer();
+            }
+        }
+
+        @Override
+        public void onAllFailed(DiscoveryToken token) {
+            LOG.warning("All the neighbours are unavailable! Looks like I'm alone!");
+            executeOnProtocolThread(NodeServiceImpl.this::continueAlone);
+        }
+    }
 }
@@ -2,7 +2,7 @@ package com.slinkydeveloper.sdp.node.impl;
 
 import com.slinkydeveloper.sdp.gateway.client.GatewayNodeService;
 import com.slinkydeveloper.sdp.log.LoggerConfig;
-import com.slinkydeveloper.sdp.node.acquisition.OverlappingSlidingWindowBuffer;
+import com.slinkydeveloper.sdp.node.acquisition.ReducedBuffer;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
 
@@ -20,13 +20,13 @@ public class NodeServiceServer {
     private final Server server;
     private final NodeServiceImpl service;
 
-    public NodeServiceServer(int myId, String myAddress, Map<Integer, String> initialKnownHosts, OverlappingSlidingWindowBuffer<Double> measurementsBuffer, GatewayNodeService service) {
+    public NodeServiceServer(int myId, String myAddress, Map<Integer, String> initialKnownHosts, ReducedBuffer<Double> measurementsBuffer, GatewayNodeService service) {
         this.port = Integer.parseInt(myAddress.split(Pattern.quote(":"))[1]);
         this.service = new NodeServiceImpl(myId, myAddress, initialKnownHosts, measurementsBuffer, service);
 
         this.server = ServerBuilder
             .forPort(this.port)
-            .addService(this.service)
+            .addService(this.service.bindRawTokenService())
             .build();
     }
 
@@ -0,0 +1,182 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import com.slinkydeveloper.sdp.log.LoggerConfig;
+import com.slinkydeveloper.sdp.timer.HashedWheelTimer;
+import io.grpc.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Registry of the channels to the other nodes: every address has a single channel, shared by all its users.
+ * <p>
+ * The channels are reference counted by the {@link NodesRing}: the connection is created lazily at the first call,
+ * and it's shut down and removed when the address is not referenced anymore for the idle timeout,
+ * so a node leaving and joining the ring again before the timeout reuses the same channel.
+ * <p>
+ * This class is thread safe
+ */
+public class ChannelRegistry {
+
+    private final static Logger LOG = LoggerConfig.getLogger(ChannelRegistry.class);
+
+    private final long idleTimeoutMillis;
+    private final Map<String, PooledChannel> channels;
+    private final HashedWheelTimer timer;
+    private volatile boolean closed;
+
+    public ChannelRegistry(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.channels = new ConcurrentHashMap<>();
+        this.timer = new HashedWheelTimer("channel-registry", 100, 512);
+    }
+
+    /**
+     * Increment the references to the channel of the address, creating it if needed
+     */
+    public Channel acquire(String address) {
+        // Retained while holding the lock of the entry, so an idle check can't remove the channel in between
+        return this.channels.compute(address, (a, current) -> {
+            PooledChannel channel = current != null ? current : new PooledChannel(a);
+            channel.retain();
+            return channel;
+        });
+    }
+
+    /**
+     * Decrement the references to the channel of the address, shutting it down after the idle timeout
+     */
+    public void release(String address) {
+        PooledChannel channel = this.channels.get(address);
+        if (channel != null && channel.release() == 0) {
+            scheduleIdleCheck(channel, this.idleTimeoutMillis);
+        }
+    }
+
+    /**
+     * @return true if the channel acquired from this registry has an open connection
+     */
+    boolean isOpen(Channel channel) {
+        return ((PooledChannel) channel).isOpen();
+    }
+
+    /**
+     * Shut down all the channels
+     */
+    public void close() {
+        this.closed = true;
+        this.timer.stop();
+        this.channels.values().forEach(PooledChannel::shutdown);
+    }
+
+    private void scheduleIdleCheck(PooledChannel channel, long delayMillis) {
+        try {
+            this.timer.newTimeout(() -> checkIdle(channel), delayMillis);
+        } catch (IllegalStateException e) {
+            // The registry is closed, the channel is already shut down
+        }
+    }
+
+    private void checkIdle(PooledChannel channel) {
+        long[] idleMillis = {-1};
+        // Shut down and removed while holding the lock of the entry, so it can't be acquired in between.
+        // A channel not in the registry anymore, used by a component that outlived it, is only shut down
+        this.channels.compute(channel.address, (address, current) -> {
+            idleMillis[0] = channel.shutdownIfIdle(this.idleTimeoutMillis);
+            return current == channel && channel.isUnused() ? null : current;
+        });
+        if (idleMillis[0] >= 0) {
+            // Used again while waiting, check later
+            scheduleIdleCheck(channel, this.idleTimeoutMillis - idleMillis[0]);
+        }
+    }
+
+    private final class PooledChannel extends Channel {
+
+        private final String address;
+
+        // Guarded by this
+        private ManagedChannel delegate;
+        private int references;
+        private long lastUsedMillis;
+
+        private PooledChannel(String address) {
+            this.address = address;
+        }
+
+        private synchronized void retain() {
+            this.references++;
+        }
+
+        private synchronized int release() {
+            if (this.references > 0) {
+                this.references--;
+            }
+            this.lastUsedMillis = System.currentTimeMillis();
+            return this.references;
+        }
+
+        /**
+         * @return -1 if the channel is shut down or referenced, otherwise the milliseconds since its last use
+         */
+        private synchronized long shutdownIfIdle(long idleTimeoutMillis) {
+            if (this.references > 0 || this.delegate == null) {
+                return -1;
+            }
+            long idleMillis = System.currentTimeMillis() - this.lastUsedMillis;
+            if (idleMillis < idleTimeoutMillis) {
+                return idleMillis;
+            }
+            LOG.fine(() -> "Shutting down idle channel to " + this.address);
+            shutdown();
+            return -1;
+        }
+
+        private synchronized boolean isUnused() {
+            return this.references == 0 && this.delegate == null;
+        }
+
+        private synchronized boolean isOpen() {
+            return this.delegate != null;
+        }
+
+        private synchronized void shutdown() {
+            if (this.delegate != null) {
+                this.delegate.shutdown();
+                this.delegate = null;
+            }
+        }
+
+        private synchronized ManagedChannel delegate() {
+            this.lastUsedMillis = System.currentTimeMillis();
+            if (this.delegate == null) {
+                LOG.fine(() -> "Opening channel to " + this.address);
+                this.delegate = ManagedChannelBuilder
+                    .forTarget(this.address)
+                    .usePlaintext()
+                    .idleTimeout(idleTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .build();
+                if (closed) {
+                    // The calls fail as on any other shut down channel
+                    this.delegate.shutdown();
+                } else if (this.references == 0) {
+                    // Used by a component that outlived the membership of the address
+                    scheduleIdleCheck(this, idleTimeoutMillis);
+                }
+            }
+            return this.delegate;
+        }
+
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> methodDescriptor, CallOptions callOptions) {
+            return delegate().newCall(methodDescriptor, callOptions);
+        }
+
+        @Override
+        public String authority() {
+            return this.address;
+        }
+    }
+}
@@ -6,31 +6,46 @@ import com.slinkydeveloper.sdp.log.LoggerConfig;
 import com.slinkydeveloper.sdp.node.DiscoveryToken;
 import com.slinkydeveloper.sdp.node.DiscoveryTokenType;
 
+import java.util.*;
 import java.util.AbstractMap.SimpleImmutableEntry;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import static com.slinkydeveloper.sdp.node.network.DiscoveryStatus.*;
 
 /**
+ * The membership is exchanged as a delta against the last {@link MembershipView} agreed by the ring:
+ * the full base view is attached to the token only when the next neighbour is not known to have it.
+ * <p>
+ * Every node passes the DISCOVERED token to the generate sensor readings callback after applying the new view,
+ * so it can generate the tokens of the rings it's responsible for.
+ * <p>
  * This class is thread safe
  */
 public class DiscoveryHandler {
 
     private final static Logger LOG = LoggerConfig.getLogger(DiscoveryHandler.class);
 
+    // Number of past views kept to resolve the base view of the received tokens
+    private final static int KNOWN_VIEWS_HISTORY = 4;
+
     private final int myId;
     private final String myAddress;
     private final GatewayNodeService gatewayService;
     private final Consumer<Map<Integer, String>> temporaryKnownHostsCallback;
     private final Consumer<Map<Integer, String>> newKnownHostsCallback;
     private final Runnable endDiscoveryCallback;
-    private final Runnable generateSensorReadingsCallback;
+    private final Consumer<DiscoveryToken> generateSensorReadingsCallback;
 
     private final AtomicPointer<DiscoveryStatus> status;
+    // Guards the status transitions with side effects, while the status can be read without locking
+    private final Object transitionLock;
+    private final AtomicPointer<MembershipView> view;
+    private final Map<Long, MembershipView> knownViews;
+    private final Map<Integer, Long> neighbourViewVersions;
 
-    public DiscoveryHandler(int myId, String myAddress, GatewayNodeService gatewayService, Consumer<Map<Integer, String>> temporaryKnownHostsCallback, Consumer<Map<Integer, String>> newKnownHostsCallback, Runnable endDiscoveryCallback, Runnable generateSensorReadingsCallback) {
+    public DiscoveryHandler(int myId, String myAddress, GatewayNodeService gatewayService, Consumer<Map<Integer, String>> temporaryKnownHostsCallback, Consumer<Map<Integer, String>> newKnownHostsCallback, Runnable endDiscoveryCallback, Consumer<DiscoveryToken> generateSensorReadingsCallback) {
         this.myId = myId;
         this.myAddress = myAddress;
         this.gatewayService = gatewayService;
@@ -40,6 +55,10 @@ public class DiscoveryHandler {
         this.generateSensorReadingsCallback = generateSensorReadingsCallback;
 
         this.status = new AtomicPointer<>("Participating to discovery", DiscoveryStatus.NOT_PARTICIPATING);
+        this.transitionLock = new Object();
+        this.view = new AtomicPointer<>("Membership view", MembershipView.EMPTY);
+        this.knownViews = Collections.synchronizedMap(new BoundedViewHistory());
+        this.neighbourViewVersions = new ConcurrentHashMap<>();
     }
 
     /**
@@ -48,14 +67,18 @@ public class DiscoveryHandler {
     public DiscoveryToken startDiscovery(Map<Integer, String> previousKnownHosts, boolean generateNewSensorReadingsToken) {
         LOG.fine("Generating start discovery token");
         this.status.set(generateNewSensorReadingsToken ? GENERATE_TOKEN_PARTICIPATION : NORMAL_PARTICIPATION);
-        return DiscoveryToken.newBuilder()
+
+        MembershipView baseView = this.view.get();
+        Map<Integer, String> currentHosts = new HashMap<>(previousKnownHosts);
+        currentHosts.put(this.myId, this.myAddress);
+
+        DiscoveryToken.Builder builder = DiscoveryToken.newBuilder()
             .setType(DiscoveryTokenType.DISCOVERY)
             .setLeader(this.myId)
-            .putAllPreviousKnownHosts(previousKnownHosts)
-            .putPreviousKnownHosts(this.myId, this.myAddress)
-            .putKnownHosts(this.myId, this.myAddress)
-            .setGenerateNewSensorReadingsToken(generateNewSensorReadingsToken)
-            .build();
+            .setBaseVersion(baseView.getVersion())
+            .setGenerateNewSensorReadingsToken(generateNewSensorReadingsToken);
+        baseView.diff(currentHosts, builder::putAddedHosts, builder::addRemovedHosts);
+        return builder.build();
     }
 
     /**
@@ -64,21 +87,33 @@ public class DiscoveryHandler {
      * @param token received token
      * @return a true key if we're expecting new discovery tokens and the token to send to the next neighbour, if any
      */
-    public Map.Entry<Boolean, DiscoveryToken.Builder> handleReceivedDiscovery(DiscoveryToken token, boolean hasNewHosts, Map<Integer, String> previousKnownHosts) {
+    public Map.Entry<Boolean, DiscoveryToken.Builder> handleReceivedDiscovery(DiscoveryToken token, boolean hasNewHosts) {
+        MembershipView baseView = resolveBaseView(token);
+        if (baseView == null) {
+            throw new IllegalStateException("Unknown base view " + token.getBaseVersion());
+        }
+
         // Algorithm implemented as https://en.wikipedia.org/wiki/Chang_and_Roberts_algorithm#The_algorithm
         // but tweaked to do the service discovery
         if (token.getType() == DiscoveryTokenType.DISCOVERY) {
-            // Add myself in the new token
+            // Add myself in the new token, if the base view doesn't already contain me
             DiscoveryToken.Builder newTokenBuilder = token
                 .toBuilder()
-                .putKnownHosts(this.myId, this.myAddress)
-                .putAllPreviousKnownHosts(previousKnownHosts);
+                .clearBaseHosts();
+            if (!this.myAddress.equals(baseView.getHosts().get(this.myId)) || token.getRemovedHostsList().contains(this.myId)) {
+                newTokenBuilder.putAddedHosts(this.myId, this.myAddress);
+            }
+
+            // If the base view is attached, I'm not aware of it, so I need it to route the token
+            Map<Integer, String> temporaryHosts = new HashMap<>(token.getBaseHostsMap());
+            token.getRemovedHostsList().forEach(temporaryHosts::remove);
+            temporaryHosts.putAll(token.getAddedHostsMap());
 
             if (token.getLeader() > this.myId) {
-                this.status.swap(old -> {
-                    this.temporaryKnownHostsCallback.accept(token.getPreviousKnownHostsMap());
-                    return token.getGenerateNewSensorReadingsToken() ? GENERATE_TOKEN_PARTICIPATION : NORMAL_PARTICIPATION;
-                });
+                transition(
+                    token.getGenerateNewSensorReadingsToken() ? GENERATE_TOKEN_PARTICIPATION : NORMAL_PARTICIPATION,
+                    () -> this.temporaryKnownHostsCallback.accept(temporaryHosts)
+                );
                 return new SimpleImmutableEntry<>(true, newTokenBuilder);
             } else if (token.getLeader() < this.myId) {
                 // Keep the duplicated discovery if: the discovery token only if 'm already discovering or this token has new hosts we're unaware of
@@ -91,10 +126,10 @@ public class DiscoveryHandler {
                         hasNewHosts ||
                         token.getGenerateNewSensorReadingsToken() && status == NORMAL_PARTICIPATION;
 
-                this.status.swap(old -> {
-                    this.temporaryKnownHostsCallback.accept(token.getPreviousKnownHostsMap());
-                    return token.getGenerateNewSensorReadingsToken() ? GENERATE_TOKEN_PARTICIPATION : NORMAL_PARTICIPATION;
-                });
+                transition(
+                    token.getGenerateNewSensorReadingsToken() ? GENERATE_TOKEN_PARTICIPATION : NORMAL_PARTICIPATION,
+                    () -> this.temporaryKnownHostsCallback.accept(temporaryHosts)
+                );
 
                 LOG.fine("Debug condition token.getLeader() < this.myId:\n" +
                     "!status.isParticipating() = " + !status.isParticipating() + "\n" +
@@ -107,44 +142,54 @@ public class DiscoveryHandler {
                 return new SimpleImmutableEntry<>(true, null);
             } else {
                 DiscoveryToken.Builder discoveredToken = newTokenBuilder
-                    .setType(DiscoveryTokenType.DISCOVERED)
-                    .clearPreviousKnownHosts();
-                LOG.fine("Discovery phase completed and I'm the LEADER. Sending DISCOVERED token with nodes " + discoveredToken.getKnownHostsMap().keySet());
+                    .setType(DiscoveryTokenType.DISCOVERED);
+                MembershipView newView = baseView.apply(discoveredToken.getAddedHostsMap(), discoveredToken.getRemovedHostsList());
+                LOG.fine("Discovery phase completed and I'm the LEADER. Sending DISCOVERED token with nodes " + newView.getHosts().keySet());
 
                 // Notify the new hosts in the same lock of participating flag
-                this.status.swap((old) -> {
-                    this.newKnownHostsCallback.accept(discoveredToken.getKnownHostsMap());
-                    return NOT_PARTICIPATING;
+                transition(NOT_PARTICIPATING, () -> {
+                    this.newKnownHostsCallback.accept(newView.getHosts());
+                    updateView(newView);
                 });
                 return new SimpleImmutableEntry<>(false, discoveredToken);
             }
         } else {
+            MembershipView newView = baseView.apply(token.getAddedHostsMap(), token.getRemovedHostsList());
             if (token.getLeader() == this.myId) {
                 LOG.fine("Discovered phase completed and I'm the LEADER");
 
-                this.gatewayService.publishNewHosts(this.myId, token.getKnownHostsMap());
-
-                if (token.getGenerateNewSensorReadingsToken()) {
-                    this.generateSensorReadingsCallback.run();
+                // Some hosts may have been removed while the DISCOVERED token was travelling
+                if (newView.getVersion() != this.view.get().getVersion()) {
+                    synchronized (this.transitionLock) {
+                        this.newKnownHostsCallback.accept(newView.getHosts());
+                        updateView(newView);
+                    }
                 }
 
+                this.gatewayService.publishNewHosts(this.myId, newView.getHosts());
+
+                this.generateSensorReadingsCallback.accept(token);
                 this.endDiscoveryCallback.run();
                 return new SimpleImmutableEntry<>(false, null);
             } else {
-                this.status.swap((old) -> {
-                    this.newKnownHostsCallback.accept(token.getKnownHostsMap());
-                    return NOT_PARTICIPATING;
+                transition(NOT_PARTICIPATING, () -> {
+                    this.newKnownHostsCallback.accept(newView.getHosts());
+                    updateView(newView);
                 });
+                this.generateSensorReadingsCallback.accept(token);
                 this.endDiscoveryCallback.run();
-                return new SimpleImmutableEntry<>(false, token.toBuilder());
+                return new SimpleImmutableEntry<>(false, token.toBuilder().clearBaseHosts());
             }
         }
     }
 
     public DiscoveryToken fixTokenWhenHostIsUnavailable(DiscoveryToken token, int unavailableNode) {
         DiscoveryToken.Builder builder = token.toBuilder()
-            .removePreviousKnownHosts(unavailableNode)
-            .removeKnownHosts(unavailableNode);
+            .removeAddedHosts(unavailableNode);
+        if (!token.getRemovedHostsList().contains(unavailableNode)) {
+            builder.addRemovedHosts(unavailableNode);
+        }
+        this.neighbourViewVersions.remove(unavailableNode);
 
         if (token.getLeader() == unavailableNode) {
             builder.setLeader(this.myId);
@@ -153,18 +198,123 @@ public class DiscoveryHandler {
         return builder.build();
     }
 
+    /**
+     * @return true if this node can compute the base view of the provided token
+     */
+    public boolean isBaseViewKnown(DiscoveryToken token) {
+        return resolveBaseView(token) != null;
+    }
+
+    /**
+     * @return the base view of the provided token, or null if it's unknown
+     */
+    public MembershipView getBaseView(DiscoveryToken token) {
+        return resolveBaseView(token);
+    }
+
+    /**
+     * Attach the base view to the token if the neighbour is not known to have it
+     */
+    public DiscoveryToken prepareForNeighbour(DiscoveryToken token, int neighbourId) {
+        long baseVersion = token.getBaseVersion();
+        Long neighbourVersion = this.neighbourViewVersions.get(neighbourId);
+        if (baseVersion == MembershipView.EMPTY.getVersion() || token.getBaseHostsCount() != 0 ||
+            (neighbourVersion != null && neighbourVersion == baseVersion)) {
+            return token;
+        }
+
+        MembershipView baseView = this.knownViews.get(baseVersion);
+        if (baseView == null) {
+            LOG.warning("Cannot attach the base view " + baseVersion + " for neighbour " + neighbourId + ", I don't know it");
+            return token;
+        }
+        LOG.fine(() -> "Attaching base view " + baseVersion + " for neighbour " + neighbourId);
+        return token.toBuilder().putAllBaseHosts(baseView.getHosts()).build();
+    }
+
+    /**
+     * Record the view the neighbour knows after receiving the provided token
+     */
+    public void onTokenDelivered(DiscoveryToken token, int neighbourId) {
+        if (token.getType() == DiscoveryTokenType.DISCOVERED) {
+            MembershipView baseView = resolveBaseView(token);
+            if (baseView != null) {
+                this.neighbourViewVersions.put(
+                    neighbourId,
+                    baseView.apply(token.getAddedHostsMap(), token.getRemovedHostsList()).getVersion()
+                );
+            }
+        } else if (token.getBaseHostsCount() != 0) {
+            this.neighbourViewVersions.put(neighbourId, token.getBaseVersion());
+        }
+    }
+
+    /**
+     * Forget the view of the neighbour, so the next tokens will carry the full base view
+     */
+    public void forgetNeighbourView(int neighbourId) {
+        this.neighbourViewVersions.remove(neighbourId);
+    }
+
+    public MembershipView getView() {
+        return this.view.get();
+    }
+
     public DiscoveryStatus getStatus() {
         return this.status.get();
     }
 
     public boolean executeIfIsDiscovering(Runnable runnable) {
-        return this.status.map(s -> {
-            if (s.isParticipating()) {
+        // Fast path without locking: if the status is changing to participating, it's like the runnable came before the change
+        if (!this.status.get().isParticipating()) {
+            return false;
+        }
+        synchronized (this.transitionLock) {
+            if (this.status.get().isParticipating()) {
                 runnable.run();
                 return true;
             }
             return false;
-        });
+        }
+    }
+
+    /**
+     * Execute the side effect and set the new status atomically with respect to {@link #executeIfIsDiscovering(Runnable)}
+     */
+    private void transition(DiscoveryStatus newStatus, Runnable sideEffect) {
+        synchronized (this.transitionLock) {
+            sideEffect.run();
+            this.status.set(newStatus);
+        }
+    }
+
+    private MembershipView resolveBaseView(DiscoveryToken token) {
+        if (token.getBaseVersion() == MembershipView.EMPTY.getVersion()) {
+            return MembershipView.EMPTY;
+        }
+        if (token.getBaseHostsCount() != 0) {
+            MembershipView attached = new MembershipView(token.getBaseHostsMap());
+            this.knownViews.put(attached.getVersion(), attached);
+            return attached;
+        }
+        return this.knownViews.get(token.getBaseVersion());
     }
 
+    private void updateView(MembershipView newView) {
+        this.view.set(newView);
+        this.knownViews.put(newView.getVersion(), newView);
+    }
+
+    /**
+     * Views by version, evicting the oldest one when there are more than {@link #KNOWN_VIEWS_HISTORY}
+     */
+    private static class BoundedViewHistory extends LinkedHashMap<Long, MembershipView> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, MembershipView> eldest) {
+            return size() > KNOWN_VIEWS_HISTORY;
+        }
+    }
 }
@@ -0,0 +1,17 @@
+package com.slinkydeveloper.sdp.node.network;
+
+public enum DispatchMode {
+    /**
+     * The token is passed with the blocking stubs on the thread that wants to dispatch it
+     */
+    BLOCKING,
+    /**
+     * The token is passed with the async stubs and the outcome is notified through callbacks
+     */
+    ASYNC,
+    /**
+     * The token is sent as a frame of a persistent stream opened towards the neighbour.
+     * When the stream is broken, the token is passed with the async stubs like in {@link #ASYNC} mode
+     */
+    STREAM
+}
@@ -0,0 +1,81 @@
+package com.slinkydeveloper.sdp.node.network;
+
+/**
+ * Log-linear histogram of millisecond latencies: values under 16 ms have their own bucket,
+ * then every power of two is split in 8 buckets, so the relative error of a percentile is at most 12.5%.
+ * <p>
+ * When the histogram reaches the maximum number of samples all the counts are halved,
+ * so the old samples fade away and the percentiles follow the recent behaviour.
+ * <p>
+ * This class is thread safe
+ */
+public class LatencyHistogram {
+
+    private final static int LINEAR_BUCKETS = 16;
+    private final static int SUB_BUCKETS_BITS = 3;
+    private final static int SUB_BUCKETS = 1 << SUB_BUCKETS_BITS;
+    private final static int BUCKETS = LINEAR_BUCKETS + (63 - 4) * SUB_BUCKETS;
+
+    private final long[] counts;
+    private final long maxSamples;
+    private long total;
+
+    public LatencyHistogram(long maxSamples) {
+        this.counts = new long[BUCKETS];
+        this.maxSamples = maxSamples;
+    }
+
+    public synchronized void record(long millis) {
+        this.counts[bucketIndex(Math.max(millis, 0))]++;
+        this.total++;
+        if (this.total >= this.maxSamples) {
+            this.total = 0;
+            for (int i = 0; i < this.counts.length; i++) {
+                this.counts[i] >>= 1;
+                this.total += this.counts[i];
+            }
+        }
+    }
+
+    public synchronized long count() {
+        return this.total;
+    }
+
+    /**
+     * @param percentile between 0 and 1
+     * @return the upper bound of the bucket containing the percentile, or -1 if the histogram is empty
+     */
+    public synchronized long percentile(double percentile) {
+        if (this.total == 0) {
+            return -1;
+        }
+        long threshold = (long) Math.ceil(this.total * percentile);
+        long seen = 0;
+        for (int i = 0; i < this.counts.length; i++) {
+            seen += this.counts[i];
+            if (seen >= threshold && this.counts[i] != 0) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(this.counts.length - 1);
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKETS_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKETS_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+}
@@ -0,0 +1,82 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Immutable membership view of the ring, agreed at the end of a discovery.
+ * <p>
+ * The version of a view is computed from its content, so two nodes with the same version have the same view
+ * and the discovery tokens can carry only the delta against it.
+ */
+public class MembershipView {
+
+    public static final MembershipView EMPTY = new MembershipView(Collections.emptyMap());
+
+    private final long version;
+    private final Map<Integer, String> hosts;
+
+    public MembershipView(Map<Integer, String> hosts) {
+        this.hosts = Collections.unmodifiableMap(new HashMap<>(hosts));
+        this.version = computeVersion(this.hosts);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Map<Integer, String> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * Generate a new view removing and then adding the provided hosts
+     */
+    public MembershipView apply(Map<Integer, String> addedHosts, Collection<Integer> removedHosts) {
+        Map<Integer, String> newHosts = new HashMap<>(this.hosts);
+        removedHosts.forEach(newHosts::remove);
+        newHosts.putAll(addedHosts);
+        return new MembershipView(newHosts);
+    }
+
+    /**
+     * Compute the delta to apply to this view to obtain the target hosts
+     */
+    public void diff(Map<Integer, String> targetHosts, BiConsumer<Integer, String> addedHost, Consumer<Integer> removedHost) {
+        targetHosts.forEach((id, address) -> {
+            if (!address.equals(this.hosts.get(id))) {
+                addedHost.accept(id, address);
+            }
+        });
+        this.hosts.keySet().forEach(id -> {
+            if (!targetHosts.containsKey(id)) {
+                removedHost.accept(id);
+            }
+        });
+    }
+
+    private static long computeVersion(Map<Integer, String> hosts) {
+        if (hosts.isEmpty()) {
+            return 0;
+        }
+        // FNV-1a over the sorted entries
+        long hash = 0xcbf29ce484222325L;
+        for (Map.Entry<Integer, String> entry : new TreeMap<>(hosts).entrySet()) {
+            hash = (hash ^ entry.getKey()) * 0x100000001b3L;
+            for (int i = 0; i < entry.getValue().length(); i++) {
+                hash = (hash ^ entry.getValue().charAt(i)) * 0x100000001b3L;
+            }
+        }
+        // 0 is reserved to the empty view
+        return hash == 0 ? 1 : hash;
+    }
+
+    @Override
+    public String toString() {
+        return "MembershipView{" +
+            "version=" + version +
+            ", hosts=" + hosts +
+            '}';
+    }
+}
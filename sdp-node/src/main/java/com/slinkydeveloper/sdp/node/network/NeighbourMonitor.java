@@ -0,0 +1,131 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import com.google.protobuf.Empty;
+import com.slinkydeveloper.sdp.log.LoggerConfig;
+import com.slinkydeveloper.sdp.node.NodeGrpc;
+import com.slinkydeveloper.sdp.timer.HashedWheelTimer;
+import io.grpc.Channel;
+import io.grpc.stub.StreamObserver;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Periodically sends heartbeats to the next neighbour in the ring, through the channel already opened by {@link NodesRing},
+ * and feeds the responses to a {@link PhiAccrualFailureDetector}.
+ * When the suspicion level goes over the threshold, the suspected neighbour is notified once to the provided callback.
+ * <p>
+ * This class is thread safe
+ */
+public class NeighbourMonitor {
+
+    private final static Logger LOG = LoggerConfig.getLogger(NeighbourMonitor.class);
+
+    private final static int MAX_SAMPLE_SIZE = 100;
+    private final static long TICK_MILLIS = 50;
+
+    private final NodesRing nodesRing;
+    private final HashedWheelTimer timer;
+    private final long intervalMillis;
+    private final double threshold;
+    private final IntConsumer suspectedNeighbourCallback;
+    private final PhiAccrualFailureDetector failureDetector;
+
+    private volatile boolean running;
+    private Integer monitoredId;
+    private Channel monitoredChannel;
+    private boolean suspected;
+
+    public NeighbourMonitor(NodesRing nodesRing, long intervalMillis, double threshold, IntConsumer suspectedNeighbourCallback) {
+        this.nodesRing = nodesRing;
+        this.timer = new HashedWheelTimer("neighbour-monitor", TICK_MILLIS, 64);
+        this.intervalMillis = intervalMillis;
+        this.threshold = threshold;
+        this.suspectedNeighbourCallback = suspectedNeighbourCallback;
+        this.failureDetector = new PhiAccrualFailureDetector(MAX_SAMPLE_SIZE, intervalMillis / 4, intervalMillis);
+    }
+
+    public void start() {
+        this.running = true;
+        scheduleNextHeartbeat();
+    }
+
+    /**
+     * Stop sending heartbeats. The monitor can't be started again
+     */
+    public void stop() {
+        this.running = false;
+        this.timer.stop();
+    }
+
+    private void scheduleNextHeartbeat() {
+        if (this.running) {
+            try {
+                this.timer.newTimeout(this::heartbeat, this.intervalMillis);
+            } catch (IllegalStateException e) {
+                LOG.fine("Neighbour monitor stopped");
+            }
+        }
+    }
+
+    private void heartbeat() {
+        try {
+            Map.Entry<Integer, NodeGrpc.NodeBlockingStub> next = this.nodesRing.getNext(0);
+            if (next != null) {
+                checkNeighbour(next.getKey(), next.getValue().getChannel());
+            }
+        } finally {
+            scheduleNextHeartbeat();
+        }
+    }
+
+    private void checkNeighbour(int id, Channel channel) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (this.monitoredId == null || this.monitoredId != id || this.monitoredChannel != channel) {
+                LOG.fine(() -> "Start monitoring neighbour " + id);
+                this.monitoredId = id;
+                this.monitoredChannel = channel;
+                this.suspected = false;
+                this.failureDetector.reset();
+                // Give the new neighbour the time to reply to the first heartbeat
+                this.failureDetector.heartbeat(now);
+            }
+
+            double phi = this.failureDetector.phi(now);
+            if (!this.suspected && phi > this.threshold) {
+                LOG.warning("Neighbour " + id + " is suspected to be down (phi " + phi + ")");
+                this.suspected = true;
+                this.suspectedNeighbourCallback.accept(id);
+            }
+        }
+
+        NodeGrpc.newStub(channel)
+            .withDeadlineAfter(this.intervalMillis * 2, TimeUnit.MILLISECONDS)
+            .heartbeat(Empty.getDefaultInstance(), new StreamObserver<Empty>() {
+                @Override
+                public void onNext(Empty value) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    LOG.fine(() -> "Heartbeat to neighbour " + id + " failed: " + t);
+                }
+
+                @Override
+                public void onCompleted() {
+                    onHeartbeatResponse(id, channel);
+                }
+            });
+    }
+
+    private synchronized void onHeartbeatResponse(int id, Channel channel) {
+        if (this.monitoredId != null && this.monitoredId == id && this.monitoredChannel == channel) {
+            this.failureDetector.heartbeat(System.currentTimeMillis());
+            this.suspected = false;
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import com.slinkydeveloper.sdp.log.LoggerConfig;
+import com.slinkydeveloper.sdp.node.NodeGrpc;
+import com.slinkydeveloper.sdp.node.TokenAck;
+import com.slinkydeveloper.sdp.node.TokenFrame;
+import io.grpc.Channel;
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Long lived bidirectional stream towards a single neighbour. Every token is sent as a {@link TokenFrame}
+ * and the neighbour acknowledges it with a {@link TokenAck} carrying the same sequence number.
+ * <p>
+ * When the stream breaks, every frame still waiting for its ack is failed and the stream can't be used anymore.
+ * <p>
+ * This class is thread safe
+ */
+public class NeighbourTokenStream {
+
+    private final static Logger LOG = LoggerConfig.getLogger(NeighbourTokenStream.class);
+
+    private final int neighbourId;
+    private final Channel channel;
+    private final Map<Long, Map.Entry<Runnable, Consumer<Throwable>>> pendingAcks;
+    private final StreamObserver<TokenFrame> requestObserver;
+
+    private long nextSequence;
+    private volatile boolean broken;
+
+    public NeighbourTokenStream(int neighbourId, Channel channel) {
+        this.neighbourId = neighbourId;
+        this.channel = channel;
+        this.pendingAcks = new ConcurrentHashMap<>();
+
+        // The stream must outlive the inbound call that may have triggered its opening
+        Context streamContext = Context.current().fork();
+        Context previous = streamContext.attach();
+        try {
+            this.requestObserver = NodeGrpc.newStub(channel).openTokenStream(new AckObserver());
+        } finally {
+            streamContext.detach(previous);
+        }
+        LOG.fine(() -> "Opened token stream to neighbour " + neighbourId);
+    }
+
+    public int getNeighbourId() {
+        return neighbourId;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public boolean isBroken() {
+        return broken;
+    }
+
+    /**
+     * Send a new frame on the stream. The sequence number of the frame is assigned by this method
+     *
+     * @return false if the stream is broken and the frame was not sent
+     */
+    public synchronized boolean send(TokenFrame.Builder frame, Runnable onAck, Consumer<Throwable> onFailure) {
+        if (this.broken) {
+            return false;
+        }
+        long sequence = this.nextSequence++;
+        this.pendingAcks.put(sequence, new SimpleImmutableEntry<>(onAck, onFailure));
+        try {
+            this.requestObserver.onNext(frame.setSequence(sequence).build());
+        } catch (Exception e) {
+            this.pendingAcks.remove(sequence);
+            fail(e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Half close the stream. The frames already sent are still acknowledged by the neighbour
+     */
+    public synchronized void close() {
+        if (!this.broken) {
+            this.broken = true;
+            try {
+                this.requestObserver.onCompleted();
+            } catch (Exception e) {
+                LOG.fine(() -> "Error while closing the token stream to neighbour " + neighbourId + ": " + e);
+            }
+        }
+    }
+
+    private void fail(Throwable t) {
+        List<Map.Entry<Runnable, Consumer<Throwable>>> pending;
+        // Holding the lock of send, a frame is either sent before the stream is marked broken and failed here,
+        // or not sent at all
+        synchronized (this) {
+            this.broken = true;
+            pending = new ArrayList<>(this.pendingAcks.values());
+            this.pendingAcks.clear();
+        }
+        pending.forEach(e -> e.getValue().accept(t));
+    }
+
+    private class AckObserver implements StreamObserver<TokenAck> {
+
+        @Override
+        public void onNext(TokenAck ack) {
+            Map.Entry<Runnable, Consumer<Throwable>> callbacks = pendingAcks.remove(ack.getSequence());
+            if (callbacks == null) {
+                return;
+            }
+            if (ack.getRejected()) {
+                callbacks.getValue().accept(
+                    Status.FAILED_PRECONDITION.withDescription("Token rejected by neighbour " + neighbourId).asRuntimeException()
+                );
+            } else {
+                callbacks.getKey().run();
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            LOG.warning("Token stream to neighbour " + neighbourId + " broken: " + t);
+            fail(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            LOG.fine(() -> "Token stream to neighbour " + neighbourId + " completed");
+            fail(new IllegalStateException("Token stream to neighbour " + neighbourId + " closed before receiving the ack"));
+        }
+    }
+
+}
@@ -11,22 +11,32 @@ public class NodesRing {
     private final static Logger LOG = LoggerConfig.getLogger(NodesRing.class);
 
     private final int myId;
+    private final ChannelRegistry channelRegistry;
 
     private Map<Integer, String> knownHosts;
+    // Address of the channel of every client, to release it when the host is removed
+    private Map<Integer, String> clientAddresses;
     private Map<Integer, NodeGrpc.NodeBlockingStub> openClients;
     private List<Integer> nextNeighbours;
 
-    public NodesRing(int myId, Map<Integer, String> initialKnownHosts) {
+    public NodesRing(int myId, Map<Integer, String> initialKnownHosts, ChannelRegistry channelRegistry) {
         this.myId = myId;
+        this.channelRegistry = channelRegistry;
+        this.clientAddresses = new HashMap<>();
+        this.openClients = new HashMap<>();
         this.setNodes(initialKnownHosts);
     }
 
     public synchronized void insertNode(int id, String address) {
         this.knownHosts.put(id, address);
-        if (!this.openClients.containsKey(id) && id != this.myId) {
+        if (id != this.myId && !address.equals(this.clientAddresses.get(id))) {
+            if (this.clientAddresses.containsKey(id)) {
+                this.channelRegistry.release(this.clientAddresses.get(id));
+            }
+            this.clientAddresses.put(id, address);
             this.openClients.put(
                 id,
-                Utils.buildNewClient(address)
+                NodeGrpc.newBlockingStub(this.channelRegistry.acquire(address))
             );
 
             Set<Integer> newNeighbours = new HashSet<>(this.nextNeighbours);
@@ -43,19 +53,28 @@ public class NodesRing {
     }
     public synchronized void setNodes(Map<Integer, String> knownHosts) {
         this.knownHosts = new HashMap<>(knownHosts);
+        Map<Integer, String> newClientAddresses = new HashMap<>();
         Map<Integer, NodeGrpc.NodeBlockingStub> newOpenClients = new HashMap<>();
 
         knownHosts.forEach((id, address) -> {
             if (id != this.myId) {
-                NodeGrpc.NodeBlockingStub stub = Optional
-                    .ofNullable(this.openClients)
-                    .map(m -> m.get(id))
-                    .orElse(Utils.buildNewClient(address));
+                NodeGrpc.NodeBlockingStub stub = address.equals(this.clientAddresses.get(id)) ?
+                    this.openClients.get(id) :
+                    NodeGrpc.newBlockingStub(this.channelRegistry.acquire(address));
 
+                newClientAddresses.put(id, address);
                 newOpenClients.put(id, stub);
             }
         });
 
+        // Release the channels of the removed hosts, after acquiring the new ones so the shared channels are kept
+        this.clientAddresses.forEach((id, address) -> {
+            if (!address.equals(newClientAddresses.get(id))) {
+                this.channelRegistry.release(address);
+            }
+        });
+
+        this.clientAddresses = newClientAddresses;
         this.openClients = newOpenClients;
         this.nextNeighbours = Utils.generateNextNeighboursList(knownHosts.keySet(), this.myId);
 
@@ -70,6 +89,22 @@ public class NodesRing {
         return new AbstractMap.SimpleImmutableEntry<>(id, this.openClients.get(id));
     }
 
+    /**
+     * Like {@link #getNext(int)}, but considering only the neighbours in the provided members of a logical ring
+     */
+    public synchronized Map.Entry<Integer, NodeGrpc.NodeBlockingStub> getNext(int skip, Set<Integer> members) {
+        int found = 0;
+        for (int id : this.nextNeighbours) {
+            if (members.contains(id)) {
+                if (found == skip) {
+                    return new AbstractMap.SimpleImmutableEntry<>(id, this.openClients.get(id));
+                }
+                found++;
+            }
+        }
+        return null;
+    }
+
     public synchronized Map.Entry<Integer, NodeGrpc.NodeBlockingStub> getPrevious(int skip) {
         if (this.openClients.isEmpty() || this.nextNeighbours.size() - 1 - skip < 0) {
             return null;
@@ -82,4 +117,11 @@ public class NodesRing {
         return Collections.unmodifiableMap(this.knownHosts);
     }
 
+    /**
+     * Shut down the channels of all the clients. The tokens still in flight are rejected by the closed channels
+     */
+    public synchronized void close() {
+        this.channelRegistry.close();
+    }
+
 }
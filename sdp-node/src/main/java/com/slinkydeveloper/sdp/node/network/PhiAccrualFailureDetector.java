@@ -0,0 +1,88 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Phi accrual failure detector, as described in "The φ Accrual Failure Detector" by Hayashibara et al.
+ * <p>
+ * The inter-arrival times of the heartbeats are assumed normally distributed: phi is the -log10 of the probability
+ * that a heartbeat arrives later than now, so a phi of 8 means a chance of 10^-8 of a false suspicion.
+ * <p>
+ * This class is thread safe
+ */
+public class PhiAccrualFailureDetector {
+
+    private final int maxSampleSize;
+    private final long minStdDeviationMillis;
+    private final long firstHeartbeatEstimateMillis;
+
+    private final Deque<Long> intervals;
+    private double intervalSum;
+    private double squaredIntervalSum;
+    private long lastHeartbeat;
+
+    public PhiAccrualFailureDetector(int maxSampleSize, long minStdDeviationMillis, long firstHeartbeatEstimateMillis) {
+        this.maxSampleSize = maxSampleSize;
+        this.minStdDeviationMillis = minStdDeviationMillis;
+        this.firstHeartbeatEstimateMillis = firstHeartbeatEstimateMillis;
+        this.intervals = new ArrayDeque<>(maxSampleSize);
+        this.lastHeartbeat = -1;
+    }
+
+    public synchronized void heartbeat(long nowMillis) {
+        if (this.lastHeartbeat < 0) {
+            // Bootstrap the distribution with the estimate, so phi is meaningful from the second heartbeat on
+            long stdDeviation = this.firstHeartbeatEstimateMillis / 4;
+            addInterval(this.firstHeartbeatEstimateMillis - stdDeviation);
+            addInterval(this.firstHeartbeatEstimateMillis + stdDeviation);
+        } else {
+            addInterval(nowMillis - this.lastHeartbeat);
+        }
+        this.lastHeartbeat = nowMillis;
+    }
+
+    /**
+     * @return the suspicion level, 0 if no heartbeat was received yet
+     */
+    public synchronized double phi(long nowMillis) {
+        if (this.lastHeartbeat < 0) {
+            return 0;
+        }
+        double mean = this.intervalSum / this.intervals.size();
+        double variance = this.squaredIntervalSum / this.intervals.size() - mean * mean;
+        double stdDeviation = Math.max(Math.sqrt(Math.max(variance, 0)), this.minStdDeviationMillis);
+        return phi(nowMillis - this.lastHeartbeat, mean, stdDeviation);
+    }
+
+    public synchronized void reset() {
+        this.intervals.clear();
+        this.intervalSum = 0;
+        this.squaredIntervalSum = 0;
+        this.lastHeartbeat = -1;
+    }
+
+    private void addInterval(long interval) {
+        if (this.intervals.size() >= this.maxSampleSize) {
+            long dropped = this.intervals.removeFirst();
+            this.intervalSum -= dropped;
+            this.squaredIntervalSum -= (double) dropped * dropped;
+        }
+        this.intervals.addLast(interval);
+        this.intervalSum += interval;
+        this.squaredIntervalSum += (double) interval * interval;
+    }
+
+    /**
+     * Logistic approximation of the cumulative normal distribution, with an error less than 0.05%
+     */
+    private static double phi(long timeDiff, double mean, double stdDeviation) {
+        double y = (timeDiff - mean) / stdDeviation;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (timeDiff > mean) {
+            return -Math.log10(e / (1.0 + e));
+        } else {
+            return -Math.log10(1.0 - 1.0 / (1.0 + e));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import com.google.protobuf.Empty;
+import com.slinkydeveloper.sdp.node.NodeGrpc;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Marshaller of the serialized messages, so a token can be received and forwarded without parsing it.
+ * The wire format is the same of the protobuf marshaller, so the raw methods interoperate with the generated stubs
+ */
+public class RawMarshaller implements MethodDescriptor.Marshaller<byte[]> {
+
+    public final static RawMarshaller INSTANCE = new RawMarshaller();
+
+    /**
+     * PassSensorReadingsToken method with the token as raw bytes
+     */
+    public final static MethodDescriptor<byte[], Empty> PASS_SENSOR_READINGS_TOKEN_METHOD = NodeGrpc.getPassSensorReadingsTokenMethod()
+        .toBuilder(INSTANCE, NodeGrpc.getPassSensorReadingsTokenMethod().getResponseMarshaller())
+        .build();
+
+    private RawMarshaller() {
+    }
+
+    @Override
+    public InputStream stream(byte[] value) {
+        return new ByteArrayInputStream(value);
+    }
+
+    @Override
+    public byte[] parse(InputStream stream) {
+        try {
+            if (stream instanceof KnownLength) {
+                // The messages received by gRPC know their length, so they are read at once in the final array
+                byte[] bytes = new byte[stream.available()];
+                int read = 0;
+                int n;
+                while (read < bytes.length && (n = stream.read(bytes, read, bytes.length - read)) >= 0) {
+                    read += n;
+                }
+                if (read == bytes.length) {
+                    return bytes;
+                }
+                throw new EOFException("Expected " + bytes.length + " bytes, read " + read);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int n;
+            while ((n = stream.read(chunk)) >= 0) {
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import java.util.*;
+
+/**
+ * Logical rings where the sensor readings tokens circulate, computed from the agreed membership,
+ * so every node computes the same topology without exchanging further messages.
+ * <p>
+ * In the hierarchical topology the nodes, sorted by id, are split in contiguous sub-rings of at least
+ * subRingSize nodes. The representative of a sub-ring is its highest id, the same node the discovery election
+ * would elect inside it, and the representatives form the upper ring that combines the results of the sub-rings.
+ * <p>
+ * In the sharded topology every shard has its own token, circulating only among the nodes of the shard,
+ * and the partial averages of the shards are merged by the gateway.
+ * <p>
+ * This class is immutable
+ */
+public class RingTopology {
+
+    public enum RingKind {
+        /**
+         * Ring of all the nodes, the round is published to the gateway
+         */
+        MAIN,
+        /**
+         * The round is collected by the representative of the sub-ring
+         */
+        SUB_RING,
+        /**
+         * Ring of the representatives, combining the rounds of the sub-rings before publishing
+         */
+        UPPER,
+        /**
+         * The round is published to the gateway as a partial average
+         */
+        SHARD
+    }
+
+    public final static int MAIN_RING = 0;
+    public final static int UPPER_RING = 1;
+    public final static int FIRST_SUB_RING = 2;
+
+    private final Map<Integer, RingKind> kinds;
+    private final Map<Integer, SortedSet<Integer>> members;
+
+    private RingTopology(Map<Integer, RingKind> kinds, Map<Integer, SortedSet<Integer>> members) {
+        this.kinds = kinds;
+        this.members = members;
+    }
+
+    /**
+     * @return a topology with only the main ring, or without rings if there are no hosts
+     */
+    public static RingTopology flat(Set<Integer> hosts) {
+        if (hosts.isEmpty()) {
+            return new RingTopology(Collections.emptyMap(), Collections.emptyMap());
+        }
+        return new RingTopology(
+            Collections.singletonMap(MAIN_RING, RingKind.MAIN),
+            Collections.singletonMap(MAIN_RING, Collections.unmodifiableSortedSet(new TreeSet<>(hosts)))
+        );
+    }
+
+    /**
+     * @return a two levels topology, or the flat one when there are not enough hosts for two sub-rings
+     */
+    public static RingTopology hierarchical(Set<Integer> hosts, int subRingSize) {
+        if (subRingSize < 2) {
+            throw new IllegalArgumentException("Sub-ring size must be at least 2");
+        }
+        int subRings = hosts.size() / subRingSize;
+        if (subRings < 2) {
+            return flat(hosts);
+        }
+
+        List<Integer> sorted = new ArrayList<>(new TreeSet<>(hosts));
+        Map<Integer, RingKind> kinds = new HashMap<>();
+        Map<Integer, SortedSet<Integer>> members = new HashMap<>();
+        SortedSet<Integer> representatives = new TreeSet<>();
+        for (int i = 0; i < subRings; i++) {
+            // Spread the remainder, so every sub-ring has between subRingSize and 2 * subRingSize - 1 nodes
+            SortedSet<Integer> subRing = new TreeSet<>(sorted.subList(i * sorted.size() / subRings, (i + 1) * sorted.size() / subRings));
+            kinds.put(FIRST_SUB_RING + i, RingKind.SUB_RING);
+            members.put(FIRST_SUB_RING + i, Collections.unmodifiableSortedSet(subRing));
+            representatives.add(subRing.last());
+        }
+        kinds.put(UPPER_RING, RingKind.UPPER);
+        members.put(UPPER_RING, Collections.unmodifiableSortedSet(representatives));
+
+        return new RingTopology(Collections.unmodifiableMap(kinds), Collections.unmodifiableMap(members));
+    }
+
+    /**
+     * @return a topology with the provided number of shards, or the flat one when there are not enough hosts
+     * to have at least two nodes per shard
+     */
+    public static RingTopology sharded(Set<Integer> hosts, int shards) {
+        int actualShards = Math.min(shards, hosts.size() / 2);
+        if (actualShards < 2) {
+            return flat(hosts);
+        }
+
+        // Interleave the shards, so the members of a shard are spread over the whole ring
+        List<Integer> sorted = new ArrayList<>(new TreeSet<>(hosts));
+        Map<Integer, RingKind> kinds = new HashMap<>();
+        Map<Integer, SortedSet<Integer>> members = new HashMap<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            int ring = FIRST_SUB_RING + i % actualShards;
+            kinds.put(ring, RingKind.SHARD);
+            members.computeIfAbsent(ring, r -> new TreeSet<>()).add(sorted.get(i));
+        }
+        members.replaceAll((ring, m) -> Collections.unmodifiableSortedSet(m));
+
+        return new RingTopology(Collections.unmodifiableMap(kinds), Collections.unmodifiableMap(members));
+    }
+
+    public Set<Integer> getRings() {
+        return this.kinds.keySet();
+    }
+
+    public boolean hasRing(int ring) {
+        return this.kinds.containsKey(ring);
+    }
+
+    public RingKind getKind(int ring) {
+        return this.kinds.get(ring);
+    }
+
+    /**
+     * @return the members of the ring, empty if the ring doesn't exist
+     */
+    public SortedSet<Integer> getMembers(int ring) {
+        return this.members.getOrDefault(ring, Collections.emptySortedSet());
+    }
+
+    /**
+     * @return the node responsible to collect the rounds and to generate the token of the ring
+     */
+    public int getRepresentative(int ring) {
+        SortedSet<Integer> members = getMembers(ring);
+        if (members.isEmpty()) {
+            throw new IllegalArgumentException("Ring " + ring + " doesn't exist");
+        }
+        return members.last();
+    }
+
+    /**
+     * @return the rings of the provided kind
+     */
+    public Set<Integer> getRings(RingKind kind) {
+        Set<Integer> rings = new HashSet<>();
+        this.kinds.forEach((ring, k) -> {
+            if (k == kind) {
+                rings.add(ring);
+            }
+        });
+        return rings;
+    }
+
+    /**
+     * @return the sub-ring containing the node, or -1 if it's not part of any sub-ring
+     */
+    public int getSubRingOf(int nodeId) {
+        for (int ring : getRings(RingKind.SUB_RING)) {
+            if (this.members.get(ring).contains(nodeId)) {
+                return ring;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "RingTopology{" + this.members + "}";
+    }
+}
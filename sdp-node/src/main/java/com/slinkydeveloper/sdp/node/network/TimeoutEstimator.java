@@ -0,0 +1,71 @@
+package com.slinkydeveloper.sdp.node.network;
+
+/**
+ * Estimates the token timeouts from the measured lap times and hop latencies.
+ * The lap times are normalized by the ring size, so the estimate follows the ring when nodes join or leave.
+ * <p>
+ * Until enough samples are collected, the provided fallback timeout is used.
+ * <p>
+ * This class is thread safe
+ */
+public class TimeoutEstimator {
+
+    private final static double PERCENTILE = 0.99;
+    private final static long MIN_SAMPLES = 5;
+    private final static long MAX_SAMPLES = 1000;
+    private final static long MIN_TIMEOUT_MILLIS = 1000;
+
+    private final LatencyHistogram lapPerNode;
+    private final LatencyHistogram hop;
+    private final double safetyFactor;
+
+    public TimeoutEstimator(double safetyFactor) {
+        this.lapPerNode = new LatencyHistogram(MAX_SAMPLES);
+        this.hop = new LatencyHistogram(MAX_SAMPLES);
+        this.safetyFactor = safetyFactor;
+    }
+
+    /**
+     * Record the time the token took to come back to this node
+     */
+    public void recordLap(long lapMillis, int ringSize) {
+        if (ringSize > 0) {
+            this.lapPerNode.record(lapMillis / ringSize);
+        }
+    }
+
+    /**
+     * Record the time the next neighbour took to acknowledge a token
+     */
+    public void recordHop(long hopMillis) {
+        this.hop.record(hopMillis);
+    }
+
+    /**
+     * @return the time to wait the sensor readings token to come back to this node
+     */
+    public long sensorReadingsTimeout(int ringSize, long fallbackMillis) {
+        return estimate(ringSize, 1, fallbackMillis);
+    }
+
+    /**
+     * @return the time to wait the next discovery token, that may need two laps to come back (DISCOVERY and DISCOVERED)
+     */
+    public long discoveryTimeout(int ringSize, long fallbackMillis) {
+        return estimate(ringSize, 2, fallbackMillis);
+    }
+
+    private long estimate(int ringSize, int laps, long fallbackMillis) {
+        long perNode;
+        if (ringSize == 0) {
+            return fallbackMillis;
+        } else if (this.lapPerNode.count() >= MIN_SAMPLES) {
+            perNode = this.lapPerNode.percentile(PERCENTILE);
+        } else if (this.hop.count() >= MIN_SAMPLES) {
+            perNode = this.hop.percentile(PERCENTILE);
+        } else {
+            return fallbackMillis;
+        }
+        return Math.max((long) ((perNode + 1) * ringSize * laps * this.safetyFactor), MIN_TIMEOUT_MILLIS);
+    }
+}
@@ -0,0 +1,317 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import com.google.protobuf.Empty;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.slinkydeveloper.sdp.log.LoggerConfig;
+import com.slinkydeveloper.sdp.node.DiscoveryToken;
+import com.slinkydeveloper.sdp.node.NodeGrpc;
+import com.slinkydeveloper.sdp.node.SensorReadingsToken;
+import com.slinkydeveloper.sdp.node.SensorReadingsTokenSignal;
+import com.slinkydeveloper.sdp.node.TokenFrame;
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.StreamObserver;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * This class performs a single token hop towards a neighbour.
+ * Regardless of the {@link DispatchMode}, the outcome of the hop is always notified through the provided callbacks:
+ * in {@link DispatchMode#BLOCKING} mode the callbacks are invoked on the caller thread before returning,
+ * while in the other modes this method returns immediately and the callbacks are invoked on the gRPC executor,
+ * or on the callback executor when provided.
+ * <p>
+ * This class is thread safe
+ */
+public class TokenDispatcher {
+
+    private final static Logger LOG = LoggerConfig.getLogger(TokenDispatcher.class);
+
+    // Minimum time between two attempts to open the stream towards the same neighbour
+    private final static long STREAM_RETRY_MILLIS = 5 * 1000;
+
+    private final DispatchMode mode;
+    private final Executor callbackExecutor;
+
+    private NeighbourTokenStream stream;
+    private long streamOpenedAt;
+
+    public TokenDispatcher(DispatchMode mode) {
+        this(mode, null);
+    }
+
+    /**
+     * @param callbackExecutor executor of the callbacks, or null to invoke them on the thread completing the hop
+     */
+    public TokenDispatcher(DispatchMode mode, Executor callbackExecutor) {
+        this.mode = mode;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    public DispatchMode getMode() {
+        return mode;
+    }
+
+    public void passSensorReadingsToken(Map.Entry<Integer, NodeGrpc.NodeBlockingStub> neighbour, SensorReadingsToken token, Runnable onSuccess, Consumer<Throwable> onFailure) {
+        dispatch(
+            neighbour,
+            s -> s.passSensorReadingsToken(token),
+            (s, observer) -> s.passSensorReadingsToken(token, observer),
+            () -> TokenFrame.newBuilder().setSensorReadingsToken(token),
+            onSuccess,
+            onFailure
+        );
+    }
+
+    /**
+     * Pass the token serialized by the previous node, without parsing it again.
+     * In {@link DispatchMode#STREAM} mode the token is parsed to build the frame
+     */
+    public void passRawSensorReadingsToken(Map.Entry<Integer, NodeGrpc.NodeBlockingStub> neighbour, byte[] token, Runnable onSuccess, Consumer<Throwable> onFailure) {
+        dispatch(
+            neighbour,
+            s -> ClientCalls.blockingUnaryCall(s.getChannel(), RawMarshaller.PASS_SENSOR_READINGS_TOKEN_METHOD, s.getCallOptions(), token),
+            (s, observer) -> ClientCalls.asyncUnaryCall(
+                s.getChannel().newCall(RawMarshaller.PASS_SENSOR_READINGS_TOKEN_METHOD, s.getCallOptions()),
+                token,
+                observer
+            ),
+            () -> {
+                try {
+                    return TokenFrame.newBuilder().setSensorReadingsToken(SensorReadingsToken.parseFrom(token));
+                } catch (InvalidProtocolBufferException e) {
+                    throw new IllegalArgumentException("Cannot parse the sensor readings token", e);
+                }
+            },
+            onSuccess,
+            onFailure
+        );
+    }
+
+    public void passDiscoveryToken(Map.Entry<Integer, NodeGrpc.NodeBlockingStub> neighbour, DiscoveryToken token, Runnable onSuccess, Consumer<Throwable> onFailure) {
+        dispatch(
+            neighbour,
+            s -> s.passDiscoveryToken(token),
+            (s, observer) -> s.passDiscoveryToken(token, observer),
+            () -> TokenFrame.newBuilder().setDiscoveryToken(token),
+            onSuccess,
+            onFailure
+        );
+    }
+
+    /**
+     * Pass the discovery token to the first neighbour that receives it, starting from the next one.
+     * Every failing neighbour is skipped, and the hop towards the following one is started by {@code retryExecutor},
+     * so the retries don't run on the thread notifying the failure.
+     * When no neighbour receives the token, {@link DiscoveryFailover#onAllFailed(DiscoveryToken)} is invoked
+     *
+     * @param neighbours the i-th next neighbour, or null when there are no more neighbours
+     */
+    public void passDiscoveryToken(IntFunction<Map.Entry<Integer, NodeGrpc.NodeBlockingStub>> neighbours, DiscoveryToken token, Executor retryExecutor, DiscoveryFailover failover) {
+        passDiscoveryToken(neighbours, token, 0, retryExecutor, failover);
+    }
+
+    public void passSensorReadingsTokenSignal(Map.Entry<Integer, NodeGrpc.NodeBlockingStub> neighbour, SensorReadingsTokenSignal signal, Runnable onSuccess, Consumer<Throwable> onFailure) {
+        dispatch(
+            neighbour,
+            s -> s.signalSensorReadingsToken(signal),
+            (s, observer) -> s.signalSensorReadingsToken(signal, observer),
+            () -> TokenFrame.newBuilder().setSensorReadingsTokenSignal(signal),
+            onSuccess,
+            onFailure
+        );
+    }
+
+    /**
+     * Close the stream towards the neighbour, if any
+     */
+    public synchronized void close() {
+        if (this.stream != null) {
+            this.stream.close();
+            this.stream = null;
+        }
+    }
+
+    private void passDiscoveryToken(IntFunction<Map.Entry<Integer, NodeGrpc.NodeBlockingStub>> neighbours, DiscoveryToken token, int i, Executor retryExecutor, DiscoveryFailover failover) {
+        Map.Entry<Integer, NodeGrpc.NodeBlockingStub> neighbour = neighbours.apply(i);
+        if (neighbour == null) {
+            failover.onAllFailed(token);
+            return;
+        }
+        DiscoveryToken prepared = failover.prepare(token, neighbour.getKey());
+        long dispatchStart = System.currentTimeMillis();
+        passDiscoveryToken(
+            neighbour,
+            prepared,
+            () -> failover.onPassed(prepared, i, neighbour.getKey(), System.currentTimeMillis() - dispatchStart),
+            e -> {
+                if (Status.fromThrowable(e).getCode() == Status.Code.FAILED_PRECONDITION && failover.retryRejected(prepared, neighbour.getKey())) {
+                    LOG.info("Neighbour " + neighbour.getKey() + " rejected the discovery token, sending it again");
+                    retryExecutor.execute(() -> passDiscoveryToken(neighbours, token, i, retryExecutor, failover));
+                    return;
+                }
+                LOG.warning("Skipping " + (i + 1) + "° neighbour (id " + neighbour.getKey() + ") because something wrong happened while passing the token: " + e);
+                e.printStackTrace();
+                DiscoveryToken next = failover.skip(token, neighbour.getKey());
+                retryExecutor.execute(() -> passDiscoveryToken(neighbours, next, i + 1, retryExecutor, failover));
+            }
+        );
+    }
+
+    private void dispatch(Map.Entry<Integer, NodeGrpc.NodeBlockingStub> neighbour,
+                          Consumer<NodeGrpc.NodeBlockingStub> blockingCall,
+                          BiConsumer<NodeGrpc.NodeStub, StreamObserver<Empty>> asyncCall,
+                          Supplier<TokenFrame.Builder> frame,
+                          Runnable onSuccess,
+                          Consumer<Throwable> onFailure) {
+        if (this.callbackExecutor != null) {
+            Runnable success = onSuccess;
+            Consumer<Throwable> failure = onFailure;
+            onSuccess = () -> executeCallback(success);
+            onFailure = e -> executeCallback(() -> failure.accept(e));
+        }
+        dispatchWithCallbacks(neighbour, blockingCall, asyncCall, frame, onSuccess, onFailure);
+    }
+
+    private void executeCallback(Runnable callback) {
+        try {
+            this.callbackExecutor.execute(callback);
+        } catch (RejectedExecutionException e) {
+            LOG.fine(() -> "Dropping the outcome of the hop, the callback executor is shut down");
+        }
+    }
+
+    private void dispatchWithCallbacks(Map.Entry<Integer, NodeGrpc.NodeBlockingStub> neighbour,
+                                       Consumer<NodeGrpc.NodeBlockingStub> blockingCall,
+                                       BiConsumer<NodeGrpc.NodeStub, StreamObserver<Empty>> asyncCall,
+                                       Supplier<TokenFrame.Builder> frame,
+                                       Runnable onSuccess,
+                                       Consumer<Throwable> onFailure) {
+        switch (this.mode) {
+            case STREAM:
+                NeighbourTokenStream stream = streamTo(neighbour);
+                if (stream != null && stream.send(frame.get(), onSuccess, e -> {
+                    if (Status.fromThrowable(e).getCode() == Status.Code.FAILED_PRECONDITION) {
+                        // The neighbour received the token and rejected it, no need to fall back
+                        onFailure.accept(e);
+                        return;
+                    }
+                    LOG.warning("Token stream to neighbour " + neighbour.getKey() + " failed, falling back to unary call: " + e);
+                    dispatchAsync(neighbour.getValue(), asyncCall, onSuccess, onFailure);
+                })) {
+                    return;
+                }
+                dispatchAsync(neighbour.getValue(), asyncCall, onSuccess, onFailure);
+                return;
+            case ASYNC:
+                dispatchAsync(neighbour.getValue(), asyncCall, onSuccess, onFailure);
+                return;
+            default:
+                try {
+                    blockingCall.accept(neighbour.getValue());
+                } catch (Exception e) {
+                    onFailure.accept(e);
+                    return;
+                }
+                onSuccess.run();
+        }
+    }
+
+    private void dispatchAsync(NodeGrpc.NodeBlockingStub stub,
+                               BiConsumer<NodeGrpc.NodeStub, StreamObserver<Empty>> asyncCall,
+                               Runnable onSuccess,
+                               Consumer<Throwable> onFailure) {
+        // Async stubs are cheap to create and they share the channel of the blocking one.
+        // The call is started in a forked context, otherwise it would be cancelled as soon as the inbound call that triggered it completes
+        Context.current().fork().run(() ->
+            asyncCall.accept(NodeGrpc.newStub(stub.getChannel()), new CallbackObserver(onSuccess, onFailure))
+        );
+    }
+
+    /**
+     * @return the stream to the provided neighbour, or null if the stream can't be used right now
+     */
+    private synchronized NeighbourTokenStream streamTo(Map.Entry<Integer, NodeGrpc.NodeBlockingStub> neighbour) {
+        NeighbourTokenStream current = this.stream;
+        boolean sameNeighbour = current != null &&
+            current.getNeighbourId() == neighbour.getKey() &&
+            current.getChannel() == neighbour.getValue().getChannel();
+
+        if (sameNeighbour && !current.isBroken()) {
+            return current;
+        }
+        if (sameNeighbour && System.currentTimeMillis() - this.streamOpenedAt < STREAM_RETRY_MILLIS) {
+            // Stream broke recently, don't hammer the neighbour
+            return null;
+        }
+
+        if (current != null) {
+            current.close();
+        }
+        this.stream = new NeighbourTokenStream(neighbour.getKey(), neighbour.getValue().getChannel());
+        this.streamOpenedAt = System.currentTimeMillis();
+        return this.stream;
+    }
+
+    /**
+     * Hooks of the discovery token failover, invoked like the callbacks of the hops
+     */
+    public interface DiscoveryFailover {
+
+        /**
+         * @return the token to send to the neighbour
+         */
+        DiscoveryToken prepare(DiscoveryToken token, int neighbourId);
+
+        /**
+         * @return true if the token rejected by the neighbour must be prepared and sent to it again
+         */
+        boolean retryRejected(DiscoveryToken prepared, int neighbourId);
+
+        /**
+         * @return the token to send to the following neighbours, without the neighbour that didn't receive it
+         */
+        DiscoveryToken skip(DiscoveryToken token, int neighbourId);
+
+        /**
+         * @param index position of the neighbour in the ring, 0 is the next one
+         */
+        void onPassed(DiscoveryToken prepared, int index, int neighbourId, long hopMillis);
+
+        void onAllFailed(DiscoveryToken token);
+    }
+
+    private static class CallbackObserver implements StreamObserver<Empty> {
+
+        private final Runnable onSuccess;
+        private final Consumer<Throwable> onFailure;
+
+        private CallbackObserver(Runnable onSuccess, Consumer<Throwable> onFailure) {
+            this.onSuccess = onSuccess;
+            this.onFailure = onFailure;
+        }
+
+        @Override
+        public void onNext(Empty value) {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            this.onFailure.accept(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            this.onSuccess.run();
+        }
+    }
+
+}
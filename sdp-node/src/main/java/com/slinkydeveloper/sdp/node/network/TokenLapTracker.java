@@ -0,0 +1,50 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Measures the laps of the token of every ring, from a reception of the token to the next one.
+ * A lap is interrupted when the token is put on hold, parked or a discovery runs: its time doesn't depend
+ * on the latency of the ring, so it's not measured and the next lap starts at the next reception.
+ * <p>
+ * This class is thread safe
+ */
+public class TokenLapTracker {
+
+    private final Map<Integer, Long> lastReceptionMillis;
+    private final LongSupplier clock;
+
+    public TokenLapTracker() {
+        this(System::currentTimeMillis);
+    }
+
+    TokenLapTracker(LongSupplier clock) {
+        this.lastReceptionMillis = new ConcurrentHashMap<>();
+        this.clock = clock;
+    }
+
+    /**
+     * @return the duration of the lap ended by this reception of the token, or -1 if the lap was not measured
+     */
+    public long onReception(int ring) {
+        long now = this.clock.getAsLong();
+        Long last = this.lastReceptionMillis.put(ring, now);
+        return last != null ? now - last : -1;
+    }
+
+    /**
+     * Don't measure the current lap of the ring
+     */
+    public void interrupt(int ring) {
+        this.lastReceptionMillis.remove(ring);
+    }
+
+    /**
+     * Don't measure the current lap of every ring
+     */
+    public void interruptAll() {
+        this.lastReceptionMillis.clear();
+    }
+}
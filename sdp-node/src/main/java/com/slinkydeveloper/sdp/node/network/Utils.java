@@ -1,8 +1,5 @@
 package com.slinkydeveloper.sdp.node.network;
 
-import com.slinkydeveloper.sdp.node.NodeGrpc;
-import io.grpc.ManagedChannelBuilder;
-
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -10,15 +7,6 @@ import java.util.Set;
 
 public class Utils {
 
-    public static NodeGrpc.NodeBlockingStub buildNewClient(String address) {
-        return NodeGrpc.newBlockingStub(
-            ManagedChannelBuilder
-                .forTarget(address)
-                .usePlaintext()
-                .build()
-        );
-    }
-
     public static List<Integer> generateNextNeighboursList(Set<Integer> neighbours, int myId) {
         List<Integer> nextNeighbours = new ArrayList<>(neighbours);
         if (!nextNeighbours.contains(myId)) {
@@ -4,4 +4,18 @@ public interface Buffer {
 
     void addMeasurement(Measurement m);
 
+    /**
+     * Add a burst of measurements of the same sensor, like the ones read at once from the FIFO of a device.
+     * The default implementation adds them one by one
+     *
+     * @param values     values of the measurements, oldest first
+     * @param timestamps timestamps of the measurements, in the same order of the values
+     * @param length     number of measurements to add, from the start of the arrays
+     */
+    default void addMeasurements(String id, String type, double[] values, long[] timestamps, int length) {
+        for (int i = 0; i < length; i++) {
+            addMeasurement(new Measurement(id, type, values[i], timestamps[i]));
+        }
+    }
+
 }
@@ -0,0 +1,30 @@
+package com.slinkydeveloper.sdp.node.simulator;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Same values and timing of the {@link PM10Simulator}, without a thread
+ */
+public class PM10VirtualSensor implements VirtualSensor {
+
+    private final static double A = 15;
+    private final static double W = 0.05;
+
+    private double t;
+
+    public PM10VirtualSensor() {
+        this.t = ThreadLocalRandom.current().nextInt();
+    }
+
+    @Override
+    public double nextValue() {
+        double pm10 = Math.abs(A * Math.sin(W * this.t) + ThreadLocalRandom.current().nextGaussian() * 0.1) + 15;
+        this.t += 0.2;
+        return pm10;
+    }
+
+    @Override
+    public long nextDelayMillis() {
+        return 400 + ThreadLocalRandom.current().nextInt(300);
+    }
+}
@@ -0,0 +1,241 @@
+package com.slinkydeveloper.sdp.node.simulator;
+
+import com.slinkydeveloper.sdp.log.LoggerConfig;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Simulator replaying a recorded trace of measurements, read from a memory mapped file without allocating per record.
+ * The trace can be:
+ * <ul>
+ * <li>{@link Format#BINARY}: big endian records of [timestamp in epoch milliseconds as long, value as double]</li>
+ * <li>{@link Format#CSV}: lines {@code timestamp,value}, the lines not starting with a number, like the header, are skipped</li>
+ * </ul>
+ * The timestamps of the trace are shifted so the first measurement has the time when the replay started,
+ * and the measurements are added with the distances in time of the trace divided by the speedup.
+ * With {@link #AS_FAST_AS_POSSIBLE} they're added without waiting, but keeping their shifted timestamps.
+ * <p>
+ * The file must be smaller than 2 GiB
+ */
+public class ReplaySimulator extends Simulator {
+
+    private final static Logger LOG = LoggerConfig.getLogger(ReplaySimulator.class);
+
+    public final static double REAL_TIME = 1;
+    public final static double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    private final static int BINARY_RECORD_SIZE = Long.BYTES + Double.BYTES;
+
+    public enum Format {
+        BINARY,
+        CSV;
+
+        /**
+         * @return {@link #CSV} if the file name ends with .csv, otherwise {@link #BINARY}
+         */
+        public static Format fromPath(Path path) {
+            return path.getFileName().toString().toLowerCase().endsWith(".csv") ? CSV : BINARY;
+        }
+    }
+
+    private final MappedByteBuffer trace;
+    private final Format format;
+    private final double speedup;
+    private final boolean loop;
+
+    // Accessed only by the simulator thread
+    private int position;
+    private long recordTimestamp;
+    private double recordValue;
+
+    private volatile long replayedMeasurements;
+
+    /**
+     * @param speedup how many times faster than the trace the measurements are added, like {@link #REAL_TIME}
+     *                or {@link #AS_FAST_AS_POSSIBLE}
+     * @param loop    restart from the beginning of the trace at the end, otherwise the simulator stops
+     */
+    public ReplaySimulator(String id, String type, Buffer buffer, Path trace, Format format, double speedup, boolean loop) throws IOException {
+        super(id, type, buffer);
+        Objects.requireNonNull(format);
+        if (!(speedup > 0)) {
+            throw new IllegalArgumentException("Speedup must be positive");
+        }
+        try (FileChannel channel = FileChannel.open(trace, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("The trace " + trace + " is bigger than 2 GiB");
+            }
+            // The mapping stays valid after closing the channel
+            this.trace = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        this.format = format;
+        this.speedup = speedup;
+        this.loop = loop;
+    }
+
+    @Override
+    public void run() {
+        long startMillis = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        // Shift of the timestamps of the trace, and of the time of the trace in the current lap
+        long firstTimestamp = 0;
+        long lapOffset = 0;
+        long lastTimestamp = 0;
+        boolean first = true;
+        long replayed = 0;
+
+        while (!stopCondition) {
+            if (!nextRecord()) {
+                if (!this.loop || first) {
+                    break;
+                }
+                // The next lap starts one millisecond after the last measurement
+                lapOffset += lastTimestamp - firstTimestamp + 1;
+                this.position = 0;
+                continue;
+            }
+            if (first) {
+                first = false;
+                firstTimestamp = this.recordTimestamp;
+            }
+            lastTimestamp = this.recordTimestamp;
+            long traceMillis = lapOffset + this.recordTimestamp - firstTimestamp;
+
+            if (this.speedup != AS_FAST_AS_POSSIBLE) {
+                long due = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(traceMillis) / this.speedup);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0 && !stopCondition) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            addMeasurement(this.recordValue, startMillis + traceMillis);
+            this.replayedMeasurements = ++replayed;
+        }
+        long total = replayed;
+        LOG.info(() -> getIdentifier() + " replayed " + total + " measurements");
+    }
+
+    /**
+     * @return the number of measurements added to the buffer
+     */
+    public long getReplayedMeasurements() {
+        return this.replayedMeasurements;
+    }
+
+    /**
+     * Read the next record in {@link #recordTimestamp} and {@link #recordValue}
+     *
+     * @return false at the end of the trace
+     */
+    private boolean nextRecord() {
+        if (this.format == Format.BINARY) {
+            if (this.position + BINARY_RECORD_SIZE > this.trace.limit()) {
+                return false;
+            }
+            this.recordTimestamp = this.trace.getLong(this.position);
+            this.recordValue = this.trace.getDouble(this.position + Long.BYTES);
+            this.position += BINARY_RECORD_SIZE;
+            return true;
+        }
+        while (this.position < this.trace.limit()) {
+            int lineStart = this.position;
+            int lineEnd = lineStart;
+            while (lineEnd < this.trace.limit() && this.trace.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            this.position = lineEnd + 1;
+            if (parseCsvLine(lineStart, lineEnd)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse the line {@code timestamp,value} in [start, end)
+     *
+     * @return false if the line is not a record
+     */
+    private boolean parseCsvLine(int start, int end) {
+        int i = start;
+        long timestamp = 0;
+        int digits = 0;
+        for (; i < end && isDigit(this.trace.get(i)); i++, digits++) {
+            timestamp = timestamp * 10 + (this.trace.get(i) - '0');
+        }
+        if (digits == 0 || i == end || this.trace.get(i) != ',') {
+            if (digits > 0) {
+                int lineStart = start;
+                LOG.fine(() -> "Skipping the malformed line at " + lineStart + " of the trace");
+            }
+            return false;
+        }
+        i++;
+
+        boolean negative = i < end && this.trace.get(i) == '-';
+        if (negative || (i < end && this.trace.get(i) == '+')) {
+            i++;
+        }
+        long mantissa = 0;
+        int scale = 0;
+        digits = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            byte b = this.trace.get(i);
+            if (isDigit(b)) {
+                // Digits beyond the precision of a double are ignored
+                if (mantissa < Long.MAX_VALUE / 10 - 9) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (fraction) {
+                        scale--;
+                    }
+                } else if (!fraction) {
+                    scale++;
+                }
+                digits++;
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (i < end && (this.trace.get(i) == 'e' || this.trace.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = i < end && this.trace.get(i) == '-';
+            if (negativeExponent || (i < end && this.trace.get(i) == '+')) {
+                i++;
+            }
+            int exponent = 0;
+            for (; i < end && isDigit(this.trace.get(i)); i++) {
+                exponent = exponent * 10 + (this.trace.get(i) - '0');
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+        // Trailing spaces and the \r of the windows line endings
+        while (i < end && (this.trace.get(i) == ' ' || this.trace.get(i) == '\r')) {
+            i++;
+        }
+        if (digits == 0 || i != end) {
+            int lineStart = start;
+            LOG.fine(() -> "Skipping the malformed line at " + lineStart + " of the trace");
+            return false;
+        }
+
+        double value = scale < 0 ? mantissa / Math.pow(10, -scale) : mantissa * Math.pow(10, scale);
+        this.recordTimestamp = timestamp;
+        this.recordValue = negative ? -value : value;
+        return true;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -25,6 +25,14 @@ public abstract class Simulator extends Thread {
         buffer.addMeasurement(new Measurement(id, type, measurement, currentTime()));
     }
 
+    protected void addMeasurement(double measurement, long timestamp) {
+        buffer.addMeasurement(new Measurement(id, type, measurement, timestamp));
+    }
+
+    protected void addMeasurements(double[] measurements, long[] timestamps, int length) {
+        buffer.addMeasurements(id, type, measurements, timestamps, length);
+    }
+
     public Buffer getBuffer() {
         return buffer;
     }
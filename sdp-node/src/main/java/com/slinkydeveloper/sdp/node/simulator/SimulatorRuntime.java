@@ -0,0 +1,135 @@
+package com.slinkydeveloper.sdp.node.simulator;
+
+import com.slinkydeveloper.sdp.log.LoggerConfig;
+
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Runs many {@link VirtualSensor}s on a few shared threads, so a sensor costs a scheduled task instead of a thread
+ * sleeping most of the time. Every sensor reschedules itself after adding a measurement, with the delay it returns.
+ * The first measurement of a sensor is delayed randomly up to its first delay, so the sensors started together
+ * don't add their measurements at the same instant.
+ * <p>
+ * This class is thread safe
+ */
+public class SimulatorRuntime {
+
+    private final static Logger LOG = LoggerConfig.getLogger(SimulatorRuntime.class);
+
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final AtomicInteger activeSensors;
+    private final LongAdder generatedMeasurements;
+
+    /**
+     * @param threads number of threads shared by the sensors
+     */
+    public SimulatorRuntime(String name, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be at least 1");
+        }
+        AtomicInteger schedulerThreads = new AtomicInteger();
+        this.scheduler = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread t = new Thread(r, name + "-" + schedulerThreads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true);
+        this.activeSensors = new AtomicInteger();
+        this.generatedMeasurements = new LongAdder();
+    }
+
+    /**
+     * Start adding the measurements of the sensor to the buffer
+     */
+    public ScheduledSensor start(String id, String type, Buffer buffer, VirtualSensor sensor) {
+        Objects.requireNonNull(buffer);
+        Objects.requireNonNull(sensor);
+        ScheduledSensor scheduled = new ScheduledSensor(id, type, buffer, sensor);
+        this.activeSensors.incrementAndGet();
+        scheduled.schedule(ThreadLocalRandom.current().nextLong(Math.max(sensor.nextDelayMillis(), 1)));
+        return scheduled;
+    }
+
+    /**
+     * Stop all the sensors and the threads
+     */
+    public void stop() {
+        this.scheduler.shutdownNow();
+    }
+
+    public int getActiveSensors() {
+        return this.activeSensors.get();
+    }
+
+    /**
+     * @return the number of measurements added by all the sensors
+     */
+    public long getGeneratedMeasurements() {
+        return this.generatedMeasurements.sum();
+    }
+
+    /**
+     * Handle of a sensor running in the runtime
+     */
+    public final class ScheduledSensor implements Runnable {
+
+        private final String id;
+        private final String type;
+        private final Buffer buffer;
+        private final VirtualSensor sensor;
+        private volatile boolean stopCondition;
+
+        private ScheduledSensor(String id, String type, Buffer buffer, VirtualSensor sensor) {
+            this.id = id;
+            this.type = type;
+            this.buffer = buffer;
+            this.sensor = sensor;
+        }
+
+        /**
+         * Stop the sensor before its next measurement
+         */
+        public void stopMeGently() {
+            if (!this.stopCondition) {
+                this.stopCondition = true;
+                activeSensors.decrementAndGet();
+            }
+        }
+
+        public String getIdentifier() {
+            return this.id;
+        }
+
+        @Override
+        public void run() {
+            if (this.stopCondition) {
+                return;
+            }
+            try {
+                this.buffer.addMeasurement(new Measurement(this.id, this.type, this.sensor.nextValue(), System.currentTimeMillis()));
+                generatedMeasurements.increment();
+            } catch (Exception e) {
+                // Don't stop the sensor, like a simulator thread would continue after a failed measurement
+                LOG.warning("Error while adding the measurement of " + this.id + ": " + e);
+                e.printStackTrace();
+            }
+            schedule(this.sensor.nextDelayMillis());
+        }
+
+        private void schedule(long delayMillis) {
+            try {
+                scheduler.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // The runtime was stopped
+                stopMeGently();
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.slinkydeveloper.sdp.node.simulator;
+
+import com.slinkydeveloper.sdp.log.LoggerConfig;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Simulator generating measurements at a target rate, up to millions per second, to test the capacity of the node.
+ * <p>
+ * The arrival time of every measurement is scheduled from the start, so the rate doesn't drift when the buffer is slow.
+ * When the generator is behind the schedule by more than {@link #MAX_LAG_NANOS}, the schedule restarts from now
+ * instead of catching up with an unbounded burst. The achieved rate is logged every {@code reportIntervalMillis}
+ */
+public class SyntheticLoadSimulator extends Simulator {
+
+    private final static Logger LOG = LoggerConfig.getLogger(SyntheticLoadSimulator.class);
+
+    private final static long MAX_LAG_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Below this wait the thread yields instead of parking, since parking takes tens of microseconds
+    private final static long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private final static double AMPLITUDE = 15;
+    private final static double OFFSET = 15;
+    private final static double PERIOD_SECONDS = 60;
+    private final static double NOISE = 0.1;
+
+    public enum Arrival {
+        /**
+         * A measurement every 1 / rate seconds
+         */
+        CONSTANT,
+        /**
+         * Bursts of measurements back to back, every burst size / rate seconds
+         */
+        BURSTY,
+        /**
+         * Exponentially distributed times between the measurements, with mean 1 / rate seconds
+         */
+        POISSON
+    }
+
+    public enum Waveform {
+        SINE,
+        SQUARE,
+        SAWTOOTH,
+        /**
+         * Only the gaussian noise around the offset
+         */
+        NOISE;
+
+        /**
+         * @param phase position in the period, in [0, 1)
+         * @return a value in [-1, 1]
+         */
+        private double shape(double phase) {
+            switch (this) {
+                case SINE:
+                    return Math.sin(2 * Math.PI * phase);
+                case SQUARE:
+                    return phase < 0.5 ? 1 : -1;
+                case SAWTOOTH:
+                    return 2 * phase - 1;
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    private final double ratePerSecond;
+    private final Arrival arrival;
+    private final Waveform waveform;
+    private final int burstSize;
+    private final long reportIntervalMillis;
+
+    private volatile long generatedMeasurements;
+    private volatile double achievedRate;
+
+    /**
+     * @param ratePerSecond        target number of measurements per second
+     * @param burstSize            measurements in a burst, used only by {@link Arrival#BURSTY}
+     * @param reportIntervalMillis interval between two logs of the achieved rate
+     */
+    public SyntheticLoadSimulator(String id, String type, Buffer buffer, double ratePerSecond, Arrival arrival, Waveform waveform, int burstSize, long reportIntervalMillis) {
+        super(id, type, buffer);
+        Objects.requireNonNull(arrival);
+        Objects.requireNonNull(waveform);
+        if (ratePerSecond <= 0 || burstSize < 1 || reportIntervalMillis < 1) {
+            throw new IllegalArgumentException("Rate, burst size and report interval must be positive");
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.arrival = arrival;
+        this.waveform = waveform;
+        this.burstSize = burstSize;
+        this.reportIntervalMillis = reportIntervalMillis;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        long reportStart = start;
+        long reportGenerated = 0;
+        long reportInterval = TimeUnit.MILLISECONDS.toNanos(this.reportIntervalMillis);
+        // Nanoseconds from the start, a double doesn't accumulate the rounding of intervals shorter than a nanosecond
+        double next = 0;
+        long generated = 0;
+        double[] burstValues = new double[this.arrival == Arrival.BURSTY ? this.burstSize : 0];
+        long[] burstTimestamps = new long[burstValues.length];
+
+        while (!stopCondition) {
+            long now = System.nanoTime();
+            long wait = (long) next - (now - start);
+            if (wait > 0) {
+                if (wait > SPIN_THRESHOLD_NANOS) {
+                    LockSupport.parkNanos(wait - SPIN_THRESHOLD_NANOS / 2);
+                } else {
+                    Thread.yield();
+                }
+                continue;
+            }
+            if (-wait > MAX_LAG_NANOS) {
+                LOG.fine(() -> getIdentifier() + " is behind the schedule, the buffer can't keep up with the rate");
+                next = now - start;
+            }
+
+            int measurements;
+            double seconds = (now - start) / 1e9;
+            if (this.arrival == Arrival.BURSTY) {
+                // A burst is delivered with a single call, like reading the FIFO of a device
+                measurements = this.burstSize;
+                long timestamp = System.currentTimeMillis();
+                for (int i = 0; i < measurements; i++) {
+                    burstValues[i] = value(seconds);
+                    burstTimestamps[i] = timestamp;
+                }
+                addMeasurements(burstValues, burstTimestamps, measurements);
+            } else {
+                measurements = 1;
+                addMeasurement(value(seconds));
+            }
+            generated += measurements;
+            this.generatedMeasurements = generated;
+            next += nextInterval(measurements);
+
+            if (now - reportStart >= reportInterval) {
+                this.achievedRate = (generated - reportGenerated) * 1e9 / (now - reportStart);
+                LOG.info(String.format("%s generated %.0f measurements/s, target %.0f", getIdentifier(), this.achievedRate, this.ratePerSecond));
+                reportStart = now;
+                reportGenerated = generated;
+            }
+        }
+    }
+
+    /**
+     * @return the number of measurements added to the buffer
+     */
+    public long getGeneratedMeasurements() {
+        return this.generatedMeasurements;
+    }
+
+    /**
+     * @return the rate in measurements per second of the last report interval, 0 before the first report
+     */
+    public double getAchievedRate() {
+        return this.achievedRate;
+    }
+
+    private double nextInterval(int measurements) {
+        if (this.arrival == Arrival.POISSON) {
+            return -Math.log(1 - rnd.nextDouble()) * 1e9 / this.ratePerSecond;
+        }
+        return measurements * 1e9 / this.ratePerSecond;
+    }
+
+    private double value(double seconds) {
+        double phase = (seconds / PERIOD_SECONDS) % 1;
+        return OFFSET + AMPLITUDE * this.waveform.shape(phase) + rnd.nextGaussian() * NOISE;
+    }
+}
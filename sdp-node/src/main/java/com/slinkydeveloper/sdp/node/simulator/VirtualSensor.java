@@ -0,0 +1,21 @@
+package com.slinkydeveloper.sdp.node.simulator;
+
+/**
+ * Sensor driven by a {@link SimulatorRuntime}: instead of sleeping on its own thread like a {@link Simulator},
+ * it's asked for a value and for the time to wait before the next one.
+ * <p>
+ * The methods of an instance are never invoked concurrently, but they can be invoked by different threads
+ */
+public interface VirtualSensor {
+
+    /**
+     * @return the value of the next measurement
+     */
+    double nextValue();
+
+    /**
+     * @return milliseconds to wait before the next measurement
+     */
+    long nextDelayMillis();
+
+}
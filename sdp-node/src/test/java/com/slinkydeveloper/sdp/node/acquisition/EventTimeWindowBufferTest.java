@@ -0,0 +1,66 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.node.simulator.Measurement;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventTimeWindowBufferTest {
+
+    @Test
+    void windowsAreReducedByTimestamp() {
+        EventTimeWindowBuffer buffer = new EventTimeWindowBuffer(1000, 500, 0, WindowReducer.average(), 16);
+
+        add(buffer, 1000, 10);
+        add(buffer, 1200, 20);
+        assertThat(buffer.hasReducedMeasurements())
+            .isFalse();
+
+        // The watermark passes the end of [500, 1500)
+        add(buffer, 1700, 30);
+        assertThat(buffer.pollWindowedMeasurements(10))
+            .containsExactly(new WindowedMeasurement<>(500, 1500, 15d));
+
+        // The watermark passes the end of [1000, 2000)
+        add(buffer, 2100, 40);
+        assertThat(buffer.pollWindowedMeasurements(10))
+            .containsExactly(new WindowedMeasurement<>(1000, 2000, 20d));
+    }
+
+    @Test
+    void lateMeasurementsAreAddedUntilTheWatermarkPassesTheirWindow() {
+        EventTimeWindowBuffer buffer = new EventTimeWindowBuffer(1000, 1000, 500, WindowReducer.average(), 16);
+
+        add(buffer, 1000, 10);
+        add(buffer, 2200, 20);
+        // Late, but the watermark 1700 didn't pass the end of [1000, 2000)
+        add(buffer, 1900, 30);
+        assertThat(buffer.hasReducedMeasurements())
+            .isFalse();
+
+        add(buffer, 2600, 40);
+        // Too late, [1000, 2000) was reduced
+        add(buffer, 1950, 50);
+
+        assertThat(buffer.pollWindowedMeasurements(10))
+            .containsExactly(new WindowedMeasurement<>(1000, 2000, 20d));
+        assertThat(buffer.getLateMeasurements())
+            .isEqualTo(1);
+    }
+
+    @Test
+    void emptyWindowsAreSkipped() {
+        EventTimeWindowBuffer buffer = new EventTimeWindowBuffer(1000, 500, 0, WindowReducer.sum(), 16);
+
+        add(buffer, 1000, 10);
+        add(buffer, 100000, 20);
+        add(buffer, 102000, 30);
+
+        assertThat(buffer.pollReducedMeasurements(10))
+            .containsExactly(10d, 10d, 20d, 20d);
+    }
+
+    private static void add(EventTimeWindowBuffer buffer, long timestamp, double value) {
+        buffer.addMeasurement(new Measurement("a", "PM10", value, timestamp));
+    }
+}
@@ -0,0 +1,56 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JournaledReducedBufferTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void valuesNotPolledAreReplayedFirst() throws IOException {
+        try (ReducedMeasurementLog log = ReducedMeasurementLog.open(this.directory, 16, 4, 1000)) {
+            PrimitiveSlidingWindowBuffer window = new PrimitiveSlidingWindowBuffer(2, 1, WindowReducer.average());
+            JournaledReducedBuffer buffer = new JournaledReducedBuffer(window, log, 100);
+            for (int i = 1; i <= 8; i++) {
+                window.addMeasurement(i);
+            }
+            assertThat(buffer.pollReducedMeasurements(2))
+                .containsExactly(1.5d, 3.5d);
+        }
+
+        try (ReducedMeasurementLog log = ReducedMeasurementLog.open(this.directory, 16, 4, 1000)) {
+            PrimitiveSlidingWindowBuffer window = new PrimitiveSlidingWindowBuffer(2, 1, WindowReducer.average());
+            JournaledReducedBuffer buffer = new JournaledReducedBuffer(window, log, 100);
+            window.addMeasurement(9);
+            window.addMeasurement(10);
+
+            assertThat(buffer.pollReducedMeasurements(10))
+                .containsExactly(5.5d, 7.5d, 9.5d);
+            assertThat(log.replay())
+                .isEmpty();
+        }
+    }
+
+    @Test
+    void oldestValueIsDroppedAndConsumedWhenFull() throws IOException {
+        try (ReducedMeasurementLog log = ReducedMeasurementLog.open(this.directory, 16, 4, 1000)) {
+            PrimitiveSlidingWindowBuffer window = new PrimitiveSlidingWindowBuffer(1, 1, WindowReducer.average());
+            JournaledReducedBuffer buffer = new JournaledReducedBuffer(window, log, 2);
+            for (int i = 1; i <= 5; i++) {
+                window.addMeasurement(i);
+            }
+
+            assertThat(buffer.getDroppedReducedMeasurements())
+                .isEqualTo(3);
+            assertThat(log.replay())
+                .containsExactly(WindowedMeasurement.unbounded(4d), WindowedMeasurement.unbounded(5d));
+        }
+    }
+}
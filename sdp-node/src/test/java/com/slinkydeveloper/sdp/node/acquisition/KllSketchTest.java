@@ -0,0 +1,57 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class KllSketchTest {
+
+    @Test
+    void fewValuesAreKeptExactly() {
+        KllSketch sketch = new KllSketch(200);
+        for (int i = 1; i <= 100; i++) {
+            sketch.add(i);
+        }
+
+        assertThat(sketch.quantile(0.5))
+            .isEqualTo(50d);
+        assertThat(sketch.quantile(0.99))
+            .isEqualTo(99d);
+        assertThat(sketch.count())
+            .isEqualTo(100);
+    }
+
+    @Test
+    void mergedSketchesEstimateTheQuantiles() {
+        List<Double> values = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            values.add((double) i);
+        }
+        Collections.shuffle(values);
+
+        // Every sketch is serialized and parsed again, like in the token
+        KllSketch merged = new KllSketch(200);
+        for (int i = 0; i < 10; i++) {
+            KllSketch sketch = new KllSketch(200);
+            values.subList(i * 10000, (i + 1) * 10000).forEach(sketch::add);
+            merged = KllSketch.fromProto(merged.toProto(), 200);
+            merged.merge(KllSketch.fromProto(sketch.toProto(), 200));
+        }
+
+        assertThat(merged.count())
+            .isEqualTo(100000);
+        assertThat(merged.toProto().getLevelsList().stream().mapToInt(l -> l.getItemsCount()).sum())
+            .isLessThan(1000);
+        assertThat(merged.quantile(0.5))
+            .isCloseTo(50000d, within(3000d));
+        assertThat(merged.quantile(0.95))
+            .isCloseTo(95000d, within(3000d));
+        assertThat(merged.quantile(0.99))
+            .isCloseTo(99000d, within(3000d));
+    }
+}
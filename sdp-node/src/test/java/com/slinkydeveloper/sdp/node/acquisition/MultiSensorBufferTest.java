@@ -0,0 +1,88 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.node.simulator.Measurement;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MultiSensorBufferTest {
+
+    @Test
+    void valuesAreReducedPerSensorAndExposedPerType() {
+        MultiSensorBuffer buffer = new MultiSensorBuffer(4, 2, 0.5, WindowReducer::average);
+
+        buffer.addMeasurement(new Measurement("a", "PM10", 10, 0));
+        buffer.addMeasurement(new Measurement("b", "PM10", 30, 0));
+        buffer.addMeasurement(new Measurement("c", "CO2", 100, 0));
+        buffer.addMeasurement(new Measurement("a", "PM10", 20, 0));
+        buffer.addMeasurement(new Measurement("b", "PM10", 50, 0));
+
+        assertThat(buffer.forType("PM10").pollReducedMeasurements(10))
+            .containsExactlyInAnyOrder(15d, 40d);
+        assertThat(buffer.forType("CO2").hasReducedMeasurements())
+            .isFalse();
+        assertThat(buffer.forType("NO2").pollReducedMeasurements(10))
+            .isEmpty();
+    }
+
+    @Test
+    void burstIsAddedAfterTheMeasurementsEnqueuedBefore() {
+        MultiSensorBuffer buffer = new MultiSensorBuffer(4, 2, 1, WindowReducer::sum);
+
+        buffer.addMeasurement(new Measurement("a", "PM10", 1, 0));
+        buffer.addMeasurements("a", "PM10", new double[]{2, 3, 4}, new long[]{1, 2, 3}, 3);
+        buffer.addMeasurements("b", "PM10", new double[]{10, 20}, new long[]{0, 1}, 2);
+
+        assertThat(buffer.forType("PM10").pollReducedMeasurements(10))
+            .containsExactlyInAnyOrder(3d, 7d, 30d);
+    }
+
+    @Test
+    void concurrentProducersDontLoseMeasurements() throws InterruptedException {
+        int producers = 8;
+        int measurements = 10000;
+        // A small ring, so the producers fill it, and queues big enough to keep all the reduced values
+        MultiSensorBuffer buffer = new MultiSensorBuffer(
+            16,
+            () -> new PrimitiveSlidingWindowBuffer(10, 0.5, WindowReducer.sum(), 4096, ReducedMeasurementQueue.OverflowPolicy.DROP_NEWEST)
+        );
+        ReducedBuffer<Double> pm10 = buffer.forType("PM10");
+        AtomicInteger notifications = new AtomicInteger();
+        pm10.setReducedMeasurementListener(notifications::incrementAndGet);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            String id = "sensor-" + p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < measurements; i++) {
+                    buffer.addMeasurement(new Measurement(id, "PM10", 1, i));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Every sensor fills (10000 - 10) / 5 + 1 windows of 10 values
+        List<Double> reduced = pm10.pollReducedMeasurements(Integer.MAX_VALUE);
+        assertThat(reduced)
+            .hasSize(producers * ((measurements - 10) / 5 + 1))
+            .containsOnly(10d);
+        assertThat(notifications.get())
+            .isEqualTo(reduced.size());
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -35,6 +36,48 @@ class OverlappingSlidingWindowBufferTest {
             .hasValue(8d);
     }
 
+    @Test
+    void testReducedMeasurementListener() {
+        OverlappingSlidingWindowBuffer<Double> buffer = new OverlappingSlidingWindowBuffer<>(
+            4,
+            0.5,
+            OverlappingSlidingWindowBuffer.AVERAGE_REDUCER
+        );
+        AtomicInteger notified = new AtomicInteger();
+        buffer.setReducedMeasurementListener(notified::incrementAndGet);
+
+        for (int i = 0; i < 3; i++) {
+            buffer.addMeasurement(new Measurement(i + "", "aaa", 10, System.currentTimeMillis()));
+        }
+        assertThat(notified)
+            .hasValue(0);
+
+        buffer.addMeasurement(new Measurement("3", "aaa", 10, System.currentTimeMillis()));
+        assertThat(notified)
+            .hasValue(1);
+        assertThat(buffer.hasReducedMeasurements())
+            .isTrue();
+    }
+
+    @Test
+    void testBulkMeasurements() {
+        OverlappingSlidingWindowBuffer<Double> buffer = new OverlappingSlidingWindowBuffer<>(
+            4,
+            0.5,
+            OverlappingSlidingWindowBuffer.AVERAGE_REDUCER
+        );
+        AtomicInteger notified = new AtomicInteger();
+        buffer.setReducedMeasurementListener(notified::incrementAndGet);
+
+        double[] values = {1, 2, 3, 4, 5, 6, 7, 8, 100};
+        buffer.addMeasurements("0", "aaa", values, new long[values.length], 8);
+
+        assertThat(buffer.pollReducedMeasurements(10))
+            .containsExactly(2.5, 4.5, 6.5);
+        assertThat(notified)
+            .hasValue(1);
+    }
+
     @Timeout(value = 1, unit = TimeUnit.MINUTES)
     @Test
     void testIntegrationWithPM10Simulator() throws InterruptedException {
@@ -0,0 +1,99 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.node.simulator.Measurement;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class PrimitiveSlidingWindowBufferTest {
+
+    @Test
+    void testCorrectAveraging() {
+        PrimitiveSlidingWindowBuffer buffer = new PrimitiveSlidingWindowBuffer(10, 0.5, WindowReducer.average());
+
+        for (int i = 0; i < 10; i++) {
+            buffer.addMeasurement(10);
+        }
+
+        assertThat(buffer.pollReducedMeasurement())
+            .hasValue(10d);
+
+        for (int i = 0; i < 5; i++) {
+            buffer.addMeasurement(6);
+        }
+
+        assertThat(buffer.pollReducedMeasurement())
+            .hasValue(8d);
+        assertThat(buffer.pollReducedMeasurement())
+            .isEmpty();
+    }
+
+    @Test
+    void testSameValuesOfOverlappingSlidingWindowBuffer() {
+        PrimitiveSlidingWindowBuffer buffer = new PrimitiveSlidingWindowBuffer(8, 0.25, WindowReducer.average());
+        OverlappingSlidingWindowBuffer<Double> expected = new OverlappingSlidingWindowBuffer<>(
+            8,
+            0.25,
+            OverlappingSlidingWindowBuffer.AVERAGE_REDUCER
+        );
+
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            Measurement m = new Measurement(i + "", "aaa", random.nextDouble() * 100, i);
+            buffer.addMeasurement(m);
+            expected.addMeasurement(m);
+        }
+
+        // 1000 values fill the queue past its initial capacity
+        double[] polled = new double[1000];
+        int count = buffer.pollReducedMeasurements(polled);
+        assertThat(count)
+            .isEqualTo((1000 - 8) / 2 + 1);
+        for (int i = 0; i < count; i++) {
+            assertThat(polled[i])
+                .isCloseTo(expected.pollReducedMeasurement().get(), within(1e-9));
+        }
+        assertThat(expected.hasReducedMeasurements())
+            .isFalse();
+    }
+
+    @Test
+    void testBulkMeasurementsNotifyOnceOrWhenTheQueueIsFull() {
+        PrimitiveSlidingWindowBuffer buffer = new PrimitiveSlidingWindowBuffer(2, 1, WindowReducer.sum(), 4, ReducedMeasurementQueue.OverflowPolicy.DROP_NEWEST);
+        AtomicInteger notified = new AtomicInteger();
+        buffer.setReducedMeasurementListener(() -> {
+            notified.incrementAndGet();
+            buffer.pollReducedMeasurements(Integer.MAX_VALUE);
+        });
+
+        double[] values = new double[20];
+        buffer.addMeasurements("0", "aaa", values, new long[values.length], 6);
+        assertThat(notified)
+            .hasValue(1);
+
+        // 10 windows: the listener drains the queue every time it's full, then at the end
+        notified.set(0);
+        buffer.addMeasurements("0", "aaa", values, new long[values.length], 20);
+        assertThat(notified)
+            .hasValue(3);
+        assertThat(buffer.getReducedMeasurementQueue().droppedCount())
+            .isZero();
+    }
+
+    @Test
+    void testSumReducer() {
+        PrimitiveSlidingWindowBuffer buffer = new PrimitiveSlidingWindowBuffer(4, 0.5, WindowReducer.sum());
+
+        for (int i = 1; i <= 6; i++) {
+            buffer.addMeasurement(i);
+        }
+
+        assertThat(buffer.pollReducedMeasurements(10))
+            .containsExactly(1d + 2 + 3 + 4, 3d + 4 + 5 + 6);
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReducedMeasurementLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replayUnconsumedValuesAfterReopening() throws IOException {
+        try (ReducedMeasurementLog log = ReducedMeasurementLog.open(this.directory, 4, 2, 1000)) {
+            for (int i = 1; i <= 10; i++) {
+                log.append(new WindowedMeasurement<>(i * 10, i * 10 + 10, (double) i));
+            }
+            log.markConsumed(6);
+        }
+
+        try (ReducedMeasurementLog log = ReducedMeasurementLog.open(this.directory, 4, 2, 1000)) {
+            assertThat(log.replay())
+                .containsExactly(
+                    new WindowedMeasurement<>(70, 80, 7d),
+                    new WindowedMeasurement<>(80, 90, 8d),
+                    new WindowedMeasurement<>(90, 100, 9d),
+                    new WindowedMeasurement<>(100, 110, 10d)
+                );
+            assertThat(log.append(WindowedMeasurement.unbounded(11d)))
+                .isEqualTo(11);
+        }
+    }
+
+    @Test
+    void deleteConsumedSegments() throws IOException {
+        try (ReducedMeasurementLog log = ReducedMeasurementLog.open(this.directory, 4, 2, 1000)) {
+            for (int i = 1; i <= 10; i++) {
+                log.append(WindowedMeasurement.unbounded((double) i));
+            }
+            assertThat(segments())
+                .hasSize(3);
+
+            log.markConsumed(9);
+            assertThat(segments())
+                .hasSize(1);
+            assertThat(log.replay())
+                .containsExactly(WindowedMeasurement.unbounded(10d));
+        }
+    }
+
+    @Test
+    void tornRecordIsNotReplayed() throws IOException {
+        try (ReducedMeasurementLog log = ReducedMeasurementLog.open(this.directory, 4, 1, 1000)) {
+            for (int i = 1; i <= 3; i++) {
+                log.append(WindowedMeasurement.unbounded((double) i));
+            }
+        }
+        // Clear the sequence number of the last record, like a crash while writing it
+        try (FileChannel channel = FileChannel.open(segments().get(0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES), 2 * 4 * Long.BYTES + 3 * Long.BYTES);
+        }
+
+        try (ReducedMeasurementLog log = ReducedMeasurementLog.open(this.directory, 4, 1, 1000)) {
+            assertThat(log.replay())
+                .containsExactly(WindowedMeasurement.unbounded(1d), WindowedMeasurement.unbounded(2d));
+            assertThat(log.getNextSequence())
+                .isEqualTo(3);
+        }
+    }
+
+    @Test
+    void appendCostsLessThanAMicrosecond() throws IOException {
+        int rounds = 10;
+        int appends = 100_000;
+        // Every append asks for a sync, the worst case for the appending thread
+        try (ReducedMeasurementLog log = ReducedMeasurementLog.open(this.directory, 4096, 1, 1000)) {
+            // The best round, the first ones warm up the JIT
+            long nanosPerAppend = Long.MAX_VALUE;
+            for (int round = 0; round < rounds; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < appends; i++) {
+                    log.append(WindowedMeasurement.unbounded((double) i));
+                }
+                nanosPerAppend = Math.min(nanosPerAppend, (System.nanoTime() - start) / appends);
+                log.markConsumed(log.getNextSequence() - 1);
+            }
+
+            assertThat(nanosPerAppend)
+                .isLessThan(1000);
+            assertThat(log.getNextSequence())
+                .isEqualTo(rounds * appends + 1);
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files
+                .filter(p -> p.toString().endsWith(".log"))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReducedMeasurementQueueTest {
+
+    @Test
+    void dropOldest() {
+        ReducedMeasurementQueue queue = fill(ReducedMeasurementQueue.OverflowPolicy.DROP_OLDEST, 4, 6);
+
+        assertThat(queue.poll(10))
+            .containsExactly(3d, 4d, 5d, 6d);
+        assertThat(queue.droppedCount())
+            .isEqualTo(2);
+    }
+
+    @Test
+    void dropNewest() {
+        ReducedMeasurementQueue queue = fill(ReducedMeasurementQueue.OverflowPolicy.DROP_NEWEST, 4, 6);
+
+        assertThat(queue.poll(10))
+            .containsExactly(1d, 2d, 3d, 4d);
+        assertThat(queue.droppedCount())
+            .isEqualTo(2);
+    }
+
+    @Test
+    void mergeConsecutiveValues() {
+        ReducedMeasurementQueue queue = fill(ReducedMeasurementQueue.OverflowPolicy.MERGE, 4, 6);
+
+        // 1..4 are merged in 1.5 and 3.5, then 5 and 6 are added
+        assertThat(queue.poll(10))
+            .containsExactly(1.5d, 3.5d, 5d, 6d);
+        assertThat(queue.mergedCount())
+            .isEqualTo(2);
+        assertThat(queue.droppedCount())
+            .isZero();
+    }
+
+    @Test
+    void blockUntilPolled() throws Exception {
+        ReducedMeasurementQueue queue = fill(ReducedMeasurementQueue.OverflowPolicy.BLOCK, 2, 2);
+
+        CompletableFuture<Boolean> offered = CompletableFuture.supplyAsync(() -> queue.offer(3));
+        Thread.sleep(100);
+        assertThat(offered)
+            .isNotDone();
+
+        assertThat(queue.poll())
+            .hasValue(1d);
+        assertThat(offered.get(5, TimeUnit.SECONDS))
+            .isTrue();
+        assertThat(queue.poll(10))
+            .containsExactly(2d, 3d);
+    }
+
+    @Test
+    void queueGrowsUpToTheCapacity() {
+        ReducedMeasurementQueue queue = fill(ReducedMeasurementQueue.OverflowPolicy.DROP_OLDEST, 100, 100);
+
+        assertThat(queue.size())
+            .isEqualTo(100);
+        double[] polled = new double[200];
+        assertThat(queue.poll(polled))
+            .isEqualTo(100);
+        assertThat(polled[99])
+            .isEqualTo(100d);
+        assertThat(queue.isEmpty())
+            .isTrue();
+    }
+
+    private static ReducedMeasurementQueue fill(ReducedMeasurementQueue.OverflowPolicy policy, int capacity, int values) {
+        ReducedMeasurementQueue queue = new ReducedMeasurementQueue(capacity, policy, (a, b) -> (a + b) / 2);
+        for (int i = 1; i <= values; i++) {
+            queue.offer(i);
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,86 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.google.protobuf.ByteString;
+import com.slinkydeveloper.sdp.node.MeasurementBatch;
+import com.slinkydeveloper.sdp.node.SensorReadingsAggregate;
+import com.slinkydeveloper.sdp.node.SensorReadingsToken;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScannedSensorReadingsTokenTest {
+
+    @Test
+    void scanMapToken() throws Exception {
+        SensorReadingsToken token = SensorReadingsToken.newBuilder()
+            .setGenerationUUID("abc")
+            .setRing(3)
+            .setVersion(42)
+            .putLastMeasurements(1, 10)
+            .putLastMeasurements(5, 50)
+            .putExtraMeasurements(5, MeasurementBatch.newBuilder().addValues(55).build())
+            .build();
+
+        ScannedSensorReadingsToken scanned = ScannedSensorReadingsToken.scan(token.toByteArray());
+
+        assertThat(scanned.getRing())
+            .isEqualTo(3);
+        assertThat(scanned.getGenerationUUID())
+            .isEqualTo("abc");
+        assertThat(scanned.getVersion())
+            .isEqualTo(42);
+        assertThat(scanned.hasAggregate())
+            .isFalse();
+        assertThat(scanned.getParticipatingNodes())
+            .containsExactlyInAnyOrder(1, 5);
+        assertThat(scanned.parse())
+            .isEqualTo(token);
+    }
+
+    @Test
+    void scanAggregateToken() throws Exception {
+        BitSet contributors = new BitSet();
+        contributors.set(2);
+        contributors.set(70);
+        BitSet mergedRings = new BitSet();
+        mergedRings.set(3);
+        SensorReadingsToken token = SensorReadingsToken.newBuilder()
+            .setGenerationUUID("abc")
+            .setRing(1)
+            .setAggregate(SensorReadingsAggregate.newBuilder()
+                .setSum(30)
+                .setCount(2)
+                .setContributors(ByteString.copyFrom(contributors.toByteArray())))
+            .setMergedRings(ByteString.copyFrom(mergedRings.toByteArray()))
+            .build();
+
+        ScannedSensorReadingsToken scanned = ScannedSensorReadingsToken.scan(token.toByteArray());
+
+        assertThat(scanned.getRing())
+            .isEqualTo(1);
+        assertThat(scanned.hasAggregate())
+            .isTrue();
+        assertThat(scanned.getParticipatingNodes())
+            .containsExactlyInAnyOrder(2, 70);
+        assertThat(scanned.getMergedRings())
+            .isEqualTo(mergedRings);
+    }
+
+    @Test
+    void scanEmptyAggregateToken() throws Exception {
+        SensorReadingsToken token = SensorReadingsToken.newBuilder()
+            .setAggregate(SensorReadingsAggregate.getDefaultInstance())
+            .build();
+
+        ScannedSensorReadingsToken scanned = ScannedSensorReadingsToken.scan(token.toByteArray());
+
+        assertThat(scanned.getRing())
+            .isZero();
+        assertThat(scanned.hasAggregate())
+            .isTrue();
+        assertThat(scanned.getParticipatingNodes())
+            .isEmpty();
+    }
+}
@@ -0,0 +1,296 @@
+package com.slinkydeveloper.sdp.node.acquisition;
+
+import com.slinkydeveloper.sdp.gateway.client.GatewayNodeService;
+import com.slinkydeveloper.sdp.model.SensorDataAverage;
+import com.slinkydeveloper.sdp.model.SensorDataPartialAverages;
+import com.slinkydeveloper.sdp.node.SensorReadingsToken;
+import com.slinkydeveloper.sdp.node.simulator.Measurement;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SensorReadingsHandlerTest {
+
+    @Test
+    void aggregateTokenPublishesTheSameAverage() {
+        RecordingGatewayNodeService service = new RecordingGatewayNodeService();
+
+        Set<Integer> knownHosts = new HashSet<>(Arrays.asList(1, 2, 3));
+        List<SensorReadingsHandler> handlers = Arrays.asList(
+            handler(1, SensorReadingsMode.AGGREGATE, 1, service, 10, 10),
+            handler(2, SensorReadingsMode.AGGREGATE, 1, service, 20, 20),
+            handler(3, SensorReadingsMode.AGGREGATE, 1, service, 60, 60)
+        );
+
+        SensorReadingsToken token = runRound(handlers, knownHosts);
+
+        assertThat(service.published)
+            .containsExactly(new SensorDataAverage(knownHosts, 30d));
+        assertThat(token.hasAggregate())
+            .isTrue();
+        assertThat(token.getAggregate().getCount())
+            .isZero();
+    }
+
+    @Test
+    void batchesArePublishedAsSeparateAverages() {
+        RecordingGatewayNodeService service = new RecordingGatewayNodeService();
+
+        Set<Integer> knownHosts = new HashSet<>(Arrays.asList(1, 2));
+        List<SensorReadingsHandler> handlers = Arrays.asList(
+            // Reduced values: 10, 25, 40
+            handler(1, SensorReadingsMode.MAP, 3, service, 10, 10, 40, 40),
+            handler(2, SensorReadingsMode.MAP, 3, service, 20, 20)
+        );
+
+        SensorReadingsToken token = runRound(handlers, knownHosts);
+
+        assertThat(service.published)
+            .containsExactly(
+                new SensorDataAverage(knownHosts, 15d),
+                new SensorDataAverage(Collections.singleton(1), 25d),
+                new SensorDataAverage(Collections.singleton(1), 40d)
+            );
+        assertThat(token.getExtraMeasurementsCount())
+            .isZero();
+    }
+
+    @Test
+    void subRingRoundsAreMergedInTheUpperRing() {
+        RecordingGatewayNodeService service = new RecordingGatewayNodeService();
+
+        // Sub-ring 2 with nodes 1 and 2, sub-ring 3 with nodes 3 and 4
+        Set<Integer> subRings = new HashSet<>(Arrays.asList(2, 3));
+        SensorReadingsHandler representative2 = handler(2, SensorReadingsMode.MAP, 1, service, 20, 20);
+        SensorReadingsHandler representative4 = handler(4, SensorReadingsMode.AGGREGATE, 1, service, 40, 40);
+
+        SensorReadingsToken subRing2 = handler(1, SensorReadingsMode.MAP, 1, service, 10, 10)
+            .handleSubRingToken(SensorReadingsToken.newBuilder().setGenerationUUID("a").setRing(2).build(), new HashSet<>(Arrays.asList(1, 2)), false);
+        assertThat(representative2.handleSubRingToken(subRing2, new HashSet<>(Arrays.asList(1, 2)), true).getLastMeasurementsCount())
+            .isZero();
+        SensorReadingsToken subRing3 = handler(3, SensorReadingsMode.AGGREGATE, 1, service, 30, 30)
+            .handleSubRingToken(SensorReadingsToken.newBuilder().setGenerationUUID("b").setRing(3).build(), new HashSet<>(Arrays.asList(3, 4)), false);
+        representative4.handleSubRingToken(subRing3, new HashSet<>(Arrays.asList(3, 4)), true);
+        assertThat(service.published)
+            .isEmpty();
+
+        SensorReadingsToken upper = SensorReadingsToken.newBuilder().setGenerationUUID("c").setRing(1).build();
+        upper = representative2.handleUpperRingToken(upper, 2, subRings);
+        upper = representative4.handleUpperRingToken(upper, 3, subRings);
+
+        assertThat(service.published)
+            .containsExactly(new SensorDataAverage(new HashSet<>(Arrays.asList(1, 2, 3, 4)), 25d));
+        assertThat(upper.getRing())
+            .isEqualTo(1);
+        assertThat(upper.getMergedRings().isEmpty())
+            .isTrue();
+    }
+
+    @Test
+    void onlyTheLatestSubRingRoundIsKept() {
+        RecordingGatewayNodeService service = new RecordingGatewayNodeService();
+        Set<Integer> members = Collections.singleton(2);
+        Set<Integer> subRings = Collections.singleton(2);
+        OverlappingSlidingWindowBuffer<Double> buffer = buffer(2);
+        SensorReadingsHandler representative = new SensorReadingsHandler(2, buffer, service, SensorReadingsMode.AGGREGATE, 1);
+
+        // Two rounds of the sub-ring complete before the upper ring token comes
+        for (double value : new double[]{10, 30}) {
+            buffer.addMeasurement(new Measurement("2", "aaa", value, System.currentTimeMillis()));
+            buffer.addMeasurement(new Measurement("2", "aaa", value, System.currentTimeMillis()));
+            representative.handleSubRingToken(SensorReadingsToken.newBuilder().setGenerationUUID("a").setRing(2).build(), members, true);
+        }
+        assertThat(representative.hasValuesToContribute(true))
+            .isTrue();
+
+        // The first round has the window of 10 and 10, the second the overlapping window of 10 and 30
+        representative.handleUpperRingToken(SensorReadingsToken.newBuilder().setGenerationUUID("b").setRing(1).build(), 2, subRings);
+        assertThat(service.published)
+            .containsExactly(new SensorDataAverage(Collections.singleton(2), 20d));
+        assertThat(representative.hasValuesToContribute(true))
+            .isFalse();
+    }
+
+    @Test
+    void subRingRoundsAreClearedWhenTheViewChanges() throws Exception {
+        RecordingGatewayNodeService service = new RecordingGatewayNodeService();
+        SensorReadingsHandler representative = handler(2, SensorReadingsMode.AGGREGATE, 1, service, 20, 20);
+        representative.handleSubRingToken(SensorReadingsToken.newBuilder().setGenerationUUID("a").setRing(2).build(), Collections.singleton(2), true);
+
+        representative.clearSubRingRounds();
+
+        SensorReadingsToken upper = SensorReadingsToken.newBuilder().setGenerationUUID("b").setRing(1).build();
+        assertThat(representative.hasValuesToContribute(true))
+            .isFalse();
+        assertThat(representative.isUpperRingTokenLeftUnchanged(ScannedSensorReadingsToken.scan(upper.toByteArray()), 2, new HashSet<>(Arrays.asList(2, 3))))
+            .isTrue();
+    }
+
+    @Test
+    void aggregatorsStatisticsAreMergedInTheUpperRing() {
+        RecordingGatewayNodeService service = new RecordingGatewayNodeService();
+        List<SensorReadingsAggregator> aggregators = SensorReadingsAggregator.fromNames("minmax,variance,quantiles", 200);
+
+        Set<Integer> subRings = new HashSet<>(Arrays.asList(2, 3));
+        SensorReadingsHandler representative2 = handler(2, aggregators, service, 20, 20);
+        SensorReadingsHandler representative4 = handler(4, aggregators, service, 40, 40);
+
+        SensorReadingsToken subRing2 = handler(1, aggregators, service, 10, 10)
+            .handleSubRingToken(SensorReadingsToken.newBuilder().setGenerationUUID("a").setRing(2).build(), new HashSet<>(Arrays.asList(1, 2)), false);
+        representative2.handleSubRingToken(subRing2, new HashSet<>(Arrays.asList(1, 2)), true);
+        SensorReadingsToken subRing3 = handler(3, aggregators, service, 30, 30)
+            .handleSubRingToken(SensorReadingsToken.newBuilder().setGenerationUUID("b").setRing(3).build(), new HashSet<>(Arrays.asList(3, 4)), false);
+        representative4.handleSubRingToken(subRing3, new HashSet<>(Arrays.asList(3, 4)), true);
+
+        SensorReadingsToken upper = SensorReadingsToken.newBuilder().setGenerationUUID("c").setRing(1).build();
+        upper = representative2.handleUpperRingToken(upper, 2, subRings);
+        representative4.handleUpperRingToken(upper, 3, subRings);
+
+        assertThat(service.published)
+            .hasSize(1);
+        SensorDataAverage average = service.published.get(0);
+        assertThat(average.getAverage())
+            .isEqualTo(25d);
+        assertThat(average.getStatistics())
+            .containsEntry("min", 10d)
+            .containsEntry("max", 40d)
+            .containsEntry("p50", 20d)
+            .containsEntry("p99", 40d);
+        assertThat(average.getStatistics().get("standardDeviation"))
+            .isCloseTo(Math.sqrt(125), within(1e-9));
+    }
+
+    @Test
+    void windowBoundsArePublishedWithTheAverage() {
+        RecordingGatewayNodeService service = new RecordingGatewayNodeService();
+
+        Set<Integer> knownHosts = new HashSet<>(Arrays.asList(1, 2));
+        EventTimeWindowBuffer buffer1 = new EventTimeWindowBuffer(1000, 1000, 0, WindowReducer.average(), 16);
+        buffer1.addMeasurement(new Measurement("a", "PM10", 10, 1000));
+        buffer1.addMeasurement(new Measurement("a", "PM10", 0, 2000));
+        EventTimeWindowBuffer buffer2 = new EventTimeWindowBuffer(1000, 1000, 0, WindowReducer.average(), 16);
+        buffer2.addMeasurement(new Measurement("b", "PM10", 30, 2000));
+        buffer2.addMeasurement(new Measurement("b", "PM10", 0, 3000));
+
+        runRound(Arrays.asList(
+            new SensorReadingsHandler(1, buffer1, service, SensorReadingsMode.AGGREGATE, 1),
+            new SensorReadingsHandler(2, buffer2, service, SensorReadingsMode.AGGREGATE, 1)
+        ), knownHosts);
+
+        assertThat(service.published)
+            .containsExactly(new SensorDataAverage(knownHosts, 20d, null, 1000L, 3000L));
+    }
+
+    @Test
+    void shardPublishesPartialAverages() {
+        RecordingGatewayNodeService service = new RecordingGatewayNodeService();
+
+        Set<Integer> members = new HashSet<>(Arrays.asList(1, 3));
+        SensorReadingsToken token = SensorReadingsToken.newBuilder().setGenerationUUID("abc").setRing(2).build();
+        token = handler(1, SensorReadingsMode.MAP, 1, service, 10, 10).handleShardToken(token, members, 0, 2);
+        token = handler(3, SensorReadingsMode.MAP, 1, service, 30, 30).handleShardToken(token, members, 0, 2);
+
+        assertThat(service.published)
+            .containsExactly(new SensorDataAverage(members, 20d));
+        assertThat(token.getRing())
+            .isEqualTo(2);
+        assertThat(token.getLastMeasurementsCount())
+            .isZero();
+    }
+
+    @Test
+    void tokenIsLeftUnchangedWhenThereIsNothingToAdd() throws Exception {
+        RecordingGatewayNodeService service = new RecordingGatewayNodeService();
+
+        Set<Integer> knownHosts = new HashSet<>(Arrays.asList(1, 2, 3));
+        SensorReadingsHandler withValue = handler(1, SensorReadingsMode.MAP, 1, service, 10, 10);
+        SensorReadingsHandler withoutValue = handler(2, SensorReadingsMode.MAP, 1, service);
+
+        SensorReadingsToken token = SensorReadingsToken.newBuilder().setGenerationUUID("abc").build();
+        assertThat(withValue.isLeftUnchanged(ScannedSensorReadingsToken.scan(token.toByteArray()), knownHosts))
+            .isFalse();
+        assertThat(withoutValue.isLeftUnchanged(ScannedSensorReadingsToken.scan(token.toByteArray()), knownHosts))
+            .isTrue();
+
+        token = withValue.handleSensorReadingsToken(token, knownHosts);
+        ScannedSensorReadingsToken scanned = ScannedSensorReadingsToken.scan(token.toByteArray());
+        assertThat(withValue.isLeftUnchanged(scanned, knownHosts))
+            .isTrue();
+        assertThat(withoutValue.isLeftUnchanged(scanned, knownHosts))
+            .isTrue();
+        assertThat(withoutValue.handleSensorReadingsToken(token, knownHosts))
+            .isEqualTo(token);
+        // The round is complete, whoever collects it must publish it
+        assertThat(withoutValue.isLeftUnchanged(scanned, Collections.singleton(1)))
+            .isFalse();
+    }
+
+    private static SensorReadingsToken runRound(List<SensorReadingsHandler> handlers, Set<Integer> knownHosts) {
+        SensorReadingsToken token = SensorReadingsToken.newBuilder().setGenerationUUID("abc").build();
+        for (SensorReadingsHandler handler : handlers) {
+            token = handler.handleSensorReadingsToken(token, knownHosts);
+        }
+        return token;
+    }
+
+    private static SensorReadingsHandler handler(int id, SensorReadingsMode mode, int batchSize, GatewayNodeService service, double... values) {
+        return new SensorReadingsHandler(id, buffer(id, values), service, mode, batchSize);
+    }
+
+    private static SensorReadingsHandler handler(int id, List<SensorReadingsAggregator> aggregators, GatewayNodeService service, double... values) {
+        return new SensorReadingsHandler(id, buffer(id, values), service, SensorReadingsMode.AGGREGATE, 1, aggregators);
+    }
+
+    private static OverlappingSlidingWindowBuffer<Double> buffer(int id, double... values) {
+        OverlappingSlidingWindowBuffer<Double> buffer = new OverlappingSlidingWindowBuffer<>(
+            2,
+            0.5,
+            OverlappingSlidingWindowBuffer.AVERAGE_REDUCER
+        );
+        for (double value : values) {
+            buffer.addMeasurement(new Measurement(id + "", "aaa", value, System.currentTimeMillis()));
+        }
+        return buffer;
+    }
+
+    private static class RecordingGatewayNodeService implements GatewayNodeService {
+
+        private final List<SensorDataAverage> published = new ArrayList<>();
+
+        @Override
+        public Map<Integer, String> join(int myId, String myAddress) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public void publishNewAverage(int senderId, Map<Integer, Double> readings) {
+            published.add(new SensorDataAverage(
+                readings.keySet(),
+                readings.values().stream().mapToDouble(Double::doubleValue).average().orElse(0)
+            ));
+        }
+
+        @Override
+        public void publishNewAverage(int senderId, SensorDataAverage average) {
+            published.add(average);
+        }
+
+        @Override
+        public void publishNewAverages(int senderId, List<SensorDataAverage> averages) {
+            published.addAll(averages);
+        }
+
+        @Override
+        public void publishNewPartialAverages(int senderId, SensorDataPartialAverages partialAverages) {
+            published.addAll(partialAverages.getAverages());
+        }
+
+        @Override
+        public void publishNewHosts(int senderId, Map<Integer, String> hosts) {
+        }
+    }
+
+}
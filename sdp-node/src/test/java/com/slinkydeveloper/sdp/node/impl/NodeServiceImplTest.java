@@ -0,0 +1,224 @@
+package com.slinkydeveloper.sdp.node.impl;
+
+import com.google.protobuf.Empty;
+import com.slinkydeveloper.sdp.gateway.client.GatewayNodeService;
+import com.slinkydeveloper.sdp.model.SensorDataAverage;
+import com.slinkydeveloper.sdp.model.SensorDataPartialAverages;
+import com.slinkydeveloper.sdp.node.NodeGrpc;
+import com.slinkydeveloper.sdp.node.SensorReadingsToken;
+import com.slinkydeveloper.sdp.node.SensorReadingsTokenSignal;
+import com.slinkydeveloper.sdp.node.SensorReadingsTokenSignalType;
+import com.slinkydeveloper.sdp.node.acquisition.OverlappingSlidingWindowBuffer;
+import com.slinkydeveloper.sdp.node.network.RingTopology;
+import com.slinkydeveloper.sdp.node.simulator.Measurement;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of the token parking protocol: node 1 is the node under test, its only neighbour 2 records the tokens and the signals
+ */
+class NodeServiceImplTest {
+
+    private final SensorReadingsToken token = SensorReadingsToken.newBuilder()
+        .setGenerationUUID("abc")
+        .setRing(RingTopology.MAIN_RING)
+        .build();
+
+    private Neighbour neighbour;
+    private Server neighbourServer;
+    private OverlappingSlidingWindowBuffer<Double> buffer;
+    private NodeServiceImpl node;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.neighbour = new Neighbour();
+        this.neighbourServer = ServerBuilder.forPort(0).addService(this.neighbour).build().start();
+        this.buffer = new OverlappingSlidingWindowBuffer<>(2, 0.5, OverlappingSlidingWindowBuffer.AVERAGE_REDUCER);
+
+        Map<String, String> env = new HashMap<>();
+        env.put("SDP_TOKEN_PARKING", "true");
+        env.put("SDP_HEARTBEAT_INTERVAL", "0");
+        this.node = new NodeServiceImpl(
+            1,
+            "localhost:0",
+            Collections.singletonMap(2, "localhost:" + this.neighbourServer.getPort()),
+            this.buffer,
+            new NoopGatewayNodeService(),
+            env::get
+        );
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (this.node != null) {
+            this.node.stop();
+        }
+        this.neighbourServer.shutdownNow();
+    }
+
+    @Test
+    void idleTokenIsParkedAndWokenUpByANewMeasurement() {
+        parkToken();
+
+        addReducedMeasurement();
+
+        assertThat(this.neighbour.tokens)
+            .hasSize(2);
+        SensorReadingsToken resumed = this.neighbour.tokens.get(1);
+        assertThat(resumed.getVersion())
+            .isEqualTo(1);
+        assertThat(resumed.containsLastMeasurements(1))
+            .isTrue();
+    }
+
+    @Test
+    void wakeUpArrivingAfterTheTokenWasResumedIsIgnored() {
+        parkToken();
+        addReducedMeasurement();
+
+        // The neighbour had a new value too, but its wake up signal crossed the resumed token
+        this.node.signalSensorReadingsToken(signal(SensorReadingsTokenSignalType.WAKE_UP, 1, 2), new Replies());
+
+        assertThat(this.neighbour.tokens)
+            .hasSize(2);
+        assertThat(this.neighbour.signals)
+            .extracting(SensorReadingsTokenSignal::getType)
+            .containsExactly(SensorReadingsTokenSignalType.PARKED);
+    }
+
+    @Test
+    void tokenArrivingBeforeTheWakeUpIsSentCancelsIt() {
+        this.node.signalSensorReadingsToken(signal(SensorReadingsTokenSignalType.PARKED, 2, 2), new Replies());
+        // Somebody else woke the token up before I had new values
+        this.node.passSensorReadingsToken(this.token, new Replies());
+
+        addReducedMeasurement();
+
+        assertThat(this.neighbour.signals)
+            .extracting(SensorReadingsTokenSignal::getType)
+            .containsExactly(SensorReadingsTokenSignalType.PARKED);
+        assertThat(this.neighbour.tokens)
+            .containsExactly(this.token);
+    }
+
+    @Test
+    void parkedTokenIsHandedOverWhenTheHolderLeavesTheRing() {
+        parkToken();
+
+        this.node.stop();
+        this.node = null;
+
+        assertThat(this.neighbour.tokens)
+            .containsExactly(this.token, this.token);
+    }
+
+    /**
+     * The token goes around the ring once without contributions, so the second time it's parked
+     */
+    private void parkToken() {
+        Replies replies = new Replies();
+        this.node.passSensorReadingsToken(this.token, replies);
+        this.node.passSensorReadingsToken(this.token, replies);
+
+        assertThat(replies.completed)
+            .isEqualTo(2);
+        assertThat(this.neighbour.tokens)
+            .containsExactly(this.token);
+        assertThat(this.neighbour.signals)
+            .containsExactly(signal(SensorReadingsTokenSignalType.PARKED, 1, 1));
+    }
+
+    private void addReducedMeasurement() {
+        this.buffer.addMeasurement(new Measurement("1", "PM10", 10, System.currentTimeMillis()));
+        this.buffer.addMeasurement(new Measurement("1", "PM10", 20, System.currentTimeMillis()));
+    }
+
+    private static SensorReadingsTokenSignal signal(SensorReadingsTokenSignalType type, int holder, int origin) {
+        return SensorReadingsTokenSignal.newBuilder()
+            .setType(type)
+            .setRing(RingTopology.MAIN_RING)
+            .setHolder(holder)
+            .setOrigin(origin)
+            .build();
+    }
+
+    private static class Neighbour extends NodeGrpc.NodeImplBase {
+
+        private final List<SensorReadingsToken> tokens = new CopyOnWriteArrayList<>();
+        private final List<SensorReadingsTokenSignal> signals = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void passSensorReadingsToken(SensorReadingsToken request, StreamObserver<Empty> responseObserver) {
+            this.tokens.add(request);
+            responseObserver.onNext(Empty.getDefaultInstance());
+            responseObserver.onCompleted();
+        }
+
+        @Override
+        public void signalSensorReadingsToken(SensorReadingsTokenSignal request, StreamObserver<Empty> responseObserver) {
+            this.signals.add(request);
+            responseObserver.onNext(Empty.getDefaultInstance());
+            responseObserver.onCompleted();
+        }
+    }
+
+    private static class Replies implements StreamObserver<Empty> {
+
+        private int completed;
+
+        @Override
+        public void onNext(Empty value) {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            throw new AssertionError(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            this.completed++;
+        }
+    }
+
+    private static class NoopGatewayNodeService implements GatewayNodeService {
+
+        @Override
+        public Map<Integer, String> join(int myId, String myAddress) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public void publishNewAverage(int senderId, Map<Integer, Double> readings) {
+        }
+
+        @Override
+        public void publishNewAverage(int senderId, SensorDataAverage average) {
+        }
+
+        @Override
+        public void publishNewAverages(int senderId, List<SensorDataAverage> averages) {
+        }
+
+        @Override
+        public void publishNewPartialAverages(int senderId, SensorDataPartialAverages partialAverages) {
+        }
+
+        @Override
+        public void publishNewHosts(int senderId, Map<Integer, String> hosts) {
+        }
+    }
+}
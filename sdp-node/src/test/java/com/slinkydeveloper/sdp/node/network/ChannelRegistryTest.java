@@ -0,0 +1,89 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChannelRegistryTest {
+
+    @Test
+    void channelIsSharedAndReusedAfterRelease() {
+        ChannelRegistry registry = new ChannelRegistry(60000);
+        Channel channel = registry.acquire("localhost:8080");
+
+        assertThat(registry.acquire("localhost:8080"))
+            .isSameAs(channel);
+        assertThat(registry.acquire("localhost:8081"))
+            .isNotSameAs(channel);
+
+        registry.release("localhost:8080");
+        registry.release("localhost:8080");
+        assertThat(registry.acquire("localhost:8080"))
+            .isSameAs(channel);
+        assertThat(channel.authority())
+            .isEqualTo("localhost:8080");
+
+        registry.close();
+    }
+
+    @Test
+    void idleChannelIsShutDownAndCreatedAgain() throws InterruptedException {
+        ChannelRegistry registry = new ChannelRegistry(200);
+        Channel channel = registry.acquire("localhost:8080");
+        // Creating a call opens the connection without starting it
+        channel.newCall(RawMarshaller.PASS_SENSOR_READINGS_TOKEN_METHOD, CallOptions.DEFAULT);
+        assertThat(registry.isOpen(channel))
+            .isTrue();
+
+        registry.release("localhost:8080");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (registry.isOpen(channel) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(registry.isOpen(channel))
+            .isFalse();
+
+        Channel recreated = registry.acquire("localhost:8080");
+        assertThat(recreated)
+            .isNotSameAs(channel);
+        assertThat(registry.isOpen(recreated))
+            .isFalse();
+        recreated.newCall(RawMarshaller.PASS_SENSOR_READINGS_TOKEN_METHOD, CallOptions.DEFAULT);
+        assertThat(registry.isOpen(recreated))
+            .isTrue();
+
+        registry.close();
+        assertThat(registry.isOpen(recreated))
+            .isFalse();
+    }
+
+    @Test
+    void ringKeepsTheChannelsOfTheKnownHosts() {
+        ChannelRegistry registry = new ChannelRegistry(60000);
+        Map<Integer, String> hosts = new HashMap<>();
+        hosts.put(2, "localhost:8081");
+        hosts.put(3, "localhost:8082");
+        NodesRing ring = new NodesRing(1, hosts, registry);
+        Channel channel = ring.getNext(0).getValue().getChannel();
+
+        hosts.put(4, "localhost:8083");
+        ring.setNodes(hosts);
+        assertThat(ring.getNext(0).getValue().getChannel())
+            .isSameAs(channel);
+
+        // Node 2 leaves and joins again
+        hosts.remove(2);
+        ring.setNodes(hosts);
+        ring.insertNode(2, "localhost:8081");
+        assertThat(ring.getNext(0).getValue().getChannel())
+            .isSameAs(channel);
+
+        ring.close();
+    }
+
+}
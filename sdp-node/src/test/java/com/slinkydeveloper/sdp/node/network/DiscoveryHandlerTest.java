@@ -2,6 +2,7 @@ package com.slinkydeveloper.sdp.node.network;
 
 import com.slinkydeveloper.sdp.gateway.client.impl.GatewayNodeServiceFileLogger;
 import com.slinkydeveloper.sdp.node.DiscoveryToken;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
@@ -28,19 +29,19 @@ class DiscoveryHandlerTest {
         List<DiscoveryHandler> nodes = Arrays.asList(
             new DiscoveryHandler(1, "localhost:8080", service, m -> {
             }, assertCorrectDiscovery, () -> {
-            }, () -> {
+            }, t -> {
             }),
             new DiscoveryHandler(2, "localhost:8081", service, m -> {
             }, assertCorrectDiscovery, () -> {
-            }, () -> {
+            }, t -> {
             }),
             new DiscoveryHandler(3, "localhost:8082", service, m -> {
             }, assertCorrectDiscovery, () -> {
-            }, () -> {
+            }, t -> {
             }),
             new DiscoveryHandler(4, "localhost:8083", service, m -> {
             }, assertCorrectDiscovery, () -> {
-            }, () -> {
+            }, t -> {
             })
         );
 
@@ -51,10 +52,76 @@ class DiscoveryHandlerTest {
         int i = (startingNode + 1) % 4;
         while (token != null) {
             token = Optional.ofNullable(
-                nodes.get(i).handleReceivedDiscovery(token, false, Collections.emptyMap()).getValue()
+                nodes.get(i).handleReceivedDiscovery(token, false).getValue()
             ).map(DiscoveryToken.Builder::build).orElse(null);
             i = (i + 1) % 4;
         }
     }
 
+    @Test
+    public void discoveryAfterFailureCarriesOnlyTheDelta() {
+        GatewayNodeServiceFileLogger service = new GatewayNodeServiceFileLogger("sample.txt");
+
+        List<DiscoveryHandler> nodes = new ArrayList<>();
+        for (int id = 1; id <= 4; id++) {
+            nodes.add(new DiscoveryHandler(id, "localhost:" + (8079 + id), service, m -> {
+            }, m -> {
+            }, () -> {
+            }, t -> {
+            }));
+        }
+
+        runDiscovery(nodes, 0, Collections.emptyMap(), Collections.emptySet(), t -> {
+        });
+        MembershipView firstView = nodes.get(0).getView();
+        assertThat(firstView.getHosts()).containsOnlyKeys(1, 2, 3, 4);
+        nodes.forEach(n -> assertThat(n.getView().getVersion()).isEqualTo(firstView.getVersion()));
+
+        // Node 3 is gone: only node 2 needs to attach the base view, because it never talked with node 4
+        List<DiscoveryToken> sentTokens = new ArrayList<>();
+        runDiscovery(nodes, 0, firstView.getHosts(), Collections.singleton(2), sentTokens::add);
+
+        assertThat(sentTokens)
+            .isNotEmpty()
+            .allSatisfy(t -> {
+                assertThat(t.getBaseVersion()).isEqualTo(firstView.getVersion());
+                assertThat(t.getAddedHostsCount()).isZero();
+            })
+            .filteredOn(t -> t.getBaseHostsCount() != 0)
+            .hasSize(1);
+        assertThat(sentTokens.get(sentTokens.size() - 1).getRemovedHostsList()).containsExactly(3);
+
+        MembershipView secondView = nodes.get(0).getView();
+        assertThat(secondView.getHosts()).containsOnlyKeys(1, 2, 4);
+        assertThat(nodes.get(1).getView().getVersion()).isEqualTo(secondView.getVersion());
+        assertThat(nodes.get(3).getView().getVersion()).isEqualTo(secondView.getVersion());
+
+        // A neighbour we don't know anything about receives the full base view
+        DiscoveryToken nextToken = nodes.get(0).startDiscovery(secondView.getHosts(), false);
+        assertThat(nodes.get(0).prepareForNeighbour(nextToken, 5).getBaseHostsMap())
+            .isEqualTo(secondView.getHosts());
+    }
+
+    private static void runDiscovery(List<DiscoveryHandler> nodes, int startingNode, Map<Integer, String> knownHosts, Set<Integer> unavailableNodes, Consumer<DiscoveryToken> sentTokens) {
+        DiscoveryToken token = nodes.get(startingNode).startDiscovery(knownHosts, false);
+        int sender = startingNode;
+        while (token != null) {
+            int receiver = (sender + 1) % nodes.size();
+            while (unavailableNodes.contains(receiver)) {
+                token = nodes.get(sender).fixTokenWhenHostIsUnavailable(token, receiver + 1);
+                receiver = (receiver + 1) % nodes.size();
+            }
+
+            DiscoveryToken sent = nodes.get(sender).prepareForNeighbour(token, receiver + 1);
+            sentTokens.accept(sent);
+            assertThat(nodes.get(receiver).isBaseViewKnown(sent)).isTrue();
+            nodes.get(sender).onTokenDelivered(sent, receiver + 1);
+
+            token = Optional.ofNullable(
+                nodes.get(receiver).handleReceivedDiscovery(sent, false).getValue()
+            ).map(DiscoveryToken.Builder::build).orElse(null);
+            sender = receiver;
+        }
+    }
+
 }
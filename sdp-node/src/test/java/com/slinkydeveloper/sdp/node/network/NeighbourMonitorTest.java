@@ -0,0 +1,201 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import com.google.protobuf.Empty;
+import com.slinkydeveloper.sdp.node.NodeGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NeighbourMonitorTest {
+
+    private final static long INTERVAL_MILLIS = 100;
+    private final static double THRESHOLD = 8;
+
+    private final List<Server> servers = new ArrayList<>();
+    private final BlockingQueue<Integer> suspected = new LinkedBlockingQueue<>();
+    private NodesRing nodesRing;
+    private NeighbourMonitor monitor;
+
+    /**
+     * The first connection loads the gRPC transport, which takes much longer than a heartbeat interval
+     */
+    @BeforeAll
+    static void warmUp() throws IOException {
+        Server server = ServerBuilder.forPort(0).addService(new Neighbour()).build().start();
+        ManagedChannel channel = ManagedChannelBuilder.forTarget("localhost:" + server.getPort()).usePlaintext().build();
+        try {
+            NodeGrpc.newBlockingStub(channel).heartbeat(Empty.getDefaultInstance());
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (this.monitor != null) {
+            this.monitor.stop();
+        }
+        if (this.nodesRing != null) {
+            this.nodesRing.close();
+        }
+        this.servers.forEach(Server::shutdownNow);
+    }
+
+    @Test
+    void heartbeatsAreSentToTheNextNeighbourEveryInterval() throws Exception {
+        Neighbour next = new Neighbour();
+        Neighbour afterNext = new Neighbour();
+        Map<Integer, String> hosts = new HashMap<>();
+        hosts.put(2, start(next));
+        hosts.put(3, start(afterNext));
+        startMonitor(hosts);
+
+        List<Long> received = next.awaitHeartbeats(5);
+
+        // The first heartbeat may be queued while the channel connects, the next ones are an interval apart
+        for (int i = 2; i < received.size(); i++) {
+            assertThat(received.get(i) - received.get(i - 1))
+                .isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(INTERVAL_MILLIS / 2));
+        }
+        assertThat(afterNext.heartbeats.get())
+            .isZero();
+        assertThat(this.suspected)
+            .isEmpty();
+    }
+
+    @Test
+    void silentNeighbourIsSuspectedOnce() throws Exception {
+        Neighbour next = new Neighbour();
+        startMonitor(Collections.singletonMap(2, start(next)));
+        Thread.sleep(5 * INTERVAL_MILLIS);
+
+        next.replying = false;
+
+        assertThat(this.suspected.poll(5, TimeUnit.SECONDS))
+            .isEqualTo(2);
+        int heartbeats = next.heartbeats.get();
+        Thread.sleep(5 * INTERVAL_MILLIS);
+        assertThat(this.suspected)
+            .isEmpty();
+        assertThat(next.heartbeats.get())
+            .isGreaterThan(heartbeats);
+    }
+
+    @Test
+    void neighbourIsSuspectedAgainAfterItRepliedOnce() throws Exception {
+        Neighbour next = new Neighbour();
+        next.replying = false;
+        startMonitor(Collections.singletonMap(2, start(next)));
+
+        assertThat(this.suspected.poll(5, TimeUnit.SECONDS))
+            .isEqualTo(2);
+
+        next.replying = true;
+        Thread.sleep(5 * INTERVAL_MILLIS);
+        next.replying = false;
+
+        assertThat(this.suspected.poll(10, TimeUnit.SECONDS))
+            .isEqualTo(2);
+    }
+
+    @Test
+    void newNextNeighbourIsMonitoredFromScratch() throws Exception {
+        Neighbour silent = new Neighbour();
+        silent.replying = false;
+        Neighbour replacement = new Neighbour();
+        startMonitor(Collections.singletonMap(2, start(silent)));
+
+        assertThat(this.suspected.poll(5, TimeUnit.SECONDS))
+            .isEqualTo(2);
+
+        // Like after the discovery that removed the suspected neighbour
+        this.nodesRing.setNodes(Collections.singletonMap(3, start(replacement)));
+        Thread.sleep(10 * INTERVAL_MILLIS);
+
+        assertThat(replacement.heartbeats.get())
+            .isPositive();
+        assertThat(this.suspected)
+            .isEmpty();
+    }
+
+    @Test
+    void stoppedMonitorDoesntSendHeartbeats() throws Exception {
+        Neighbour next = new Neighbour();
+        startMonitor(Collections.singletonMap(2, start(next)));
+        Thread.sleep(3 * INTERVAL_MILLIS);
+
+        this.monitor.stop();
+        // A heartbeat may be still in flight
+        Thread.sleep(INTERVAL_MILLIS);
+        int heartbeats = next.heartbeats.get();
+        Thread.sleep(5 * INTERVAL_MILLIS);
+
+        assertThat(next.heartbeats.get())
+            .isEqualTo(heartbeats);
+    }
+
+    private void startMonitor(Map<Integer, String> hosts) {
+        this.nodesRing = new NodesRing(1, hosts, new ChannelRegistry(30000));
+        this.monitor = new NeighbourMonitor(this.nodesRing, INTERVAL_MILLIS, THRESHOLD, this.suspected::add);
+        this.monitor.start();
+    }
+
+    private String start(Neighbour neighbour) throws IOException {
+        Server server = ServerBuilder.forPort(0).addService(neighbour).build().start();
+        this.servers.add(server);
+        return "localhost:" + server.getPort();
+    }
+
+    /**
+     * Counts the heartbeats, and replies to them only while it's replying
+     */
+    private static class Neighbour extends NodeGrpc.NodeImplBase {
+
+        private final AtomicInteger heartbeats = new AtomicInteger();
+        private final List<Long> receivedNanos = new CopyOnWriteArrayList<>();
+        private volatile boolean replying = true;
+
+        @Override
+        public void heartbeat(Empty request, StreamObserver<Empty> responseObserver) {
+            this.receivedNanos.add(System.nanoTime());
+            this.heartbeats.incrementAndGet();
+            if (this.replying) {
+                responseObserver.onNext(Empty.getDefaultInstance());
+                responseObserver.onCompleted();
+            }
+        }
+
+        /**
+         * @return the reception times of the first heartbeats, in nanoseconds
+         */
+        private List<Long> awaitHeartbeats(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (this.receivedNanos.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(this.receivedNanos.size())
+                .isGreaterThanOrEqualTo(count);
+            return this.receivedNanos.subList(0, count);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import com.slinkydeveloper.sdp.node.DiscoveryToken;
+import com.slinkydeveloper.sdp.node.NodeGrpc;
+import com.slinkydeveloper.sdp.node.TokenAck;
+import com.slinkydeveloper.sdp.node.TokenFrame;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NeighbourTokenStreamTest {
+
+    private Server server;
+    private ManagedChannel channel;
+
+    @AfterEach
+    void tearDown() {
+        this.channel.shutdownNow();
+        this.server.shutdownNow();
+    }
+
+    @Test
+    void framesAreAcknowledged() throws Exception {
+        start(Integer.MAX_VALUE);
+        NeighbourTokenStream stream = new NeighbourTokenStream(2, this.channel);
+        CountDownLatch acked = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            assertThat(stream.send(frame(), acked::countDown, t -> {}))
+                .isTrue();
+        }
+
+        assertThat(acked.await(5, TimeUnit.SECONDS))
+            .isTrue();
+        stream.close();
+        assertThat(stream.send(frame(), () -> {}, t -> {}))
+            .isFalse();
+    }
+
+    @Test
+    void everyCallbackRunsOnceWhenTheStreamBreaksDuringTheSends() throws Exception {
+        // The neighbour breaks every stream after 20 frames, while 4 threads are still sending
+        start(20);
+        for (int i = 0; i < 100; i++) {
+            breakDuringTheSends(new NeighbourTokenStream(2, this.channel));
+        }
+    }
+
+    private void breakDuringTheSends(NeighbourTokenStream stream) throws InterruptedException {
+        List<AtomicInteger> sent = new ArrayList<>();
+        AtomicInteger completed = new AtomicInteger();
+
+        List<Thread> senders = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            senders.add(new Thread(() -> {
+                while (!stream.isBroken()) {
+                    AtomicInteger callbacks = new AtomicInteger();
+                    Runnable callback = () -> {
+                        callbacks.incrementAndGet();
+                        completed.incrementAndGet();
+                    };
+                    if (stream.send(frame(), callback, e -> callback.run())) {
+                        synchronized (sent) {
+                            sent.add(callbacks);
+                        }
+                    }
+                }
+            }));
+        }
+        senders.forEach(Thread::start);
+        for (Thread sender : senders) {
+            sender.join(5000);
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (completed.get() < sent.size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(stream.isBroken())
+            .isTrue();
+        assertThat(sent)
+            .allMatch(callbacks -> callbacks.get() == 1);
+    }
+
+    private void start(int breakAfter) throws IOException {
+        String name = InProcessServerBuilder.generateName();
+        this.server = InProcessServerBuilder.forName(name)
+            .addService(new AckingNode(breakAfter))
+            .build()
+            .start();
+        this.channel = InProcessChannelBuilder.forName(name).build();
+    }
+
+    private static TokenFrame.Builder frame() {
+        return TokenFrame.newBuilder().setDiscoveryToken(DiscoveryToken.getDefaultInstance());
+    }
+
+    /**
+     * Acknowledges the frames, and breaks the stream when it receives the frame after {@code breakAfter}
+     */
+    private static class AckingNode extends NodeGrpc.NodeImplBase {
+
+        private final int breakAfter;
+
+        private AckingNode(int breakAfter) {
+            this.breakAfter = breakAfter;
+        }
+
+        @Override
+        public StreamObserver<TokenFrame> openTokenStream(StreamObserver<TokenAck> responseObserver) {
+            return new StreamObserver<TokenFrame>() {
+                private int received;
+                private boolean broken;
+
+                @Override
+                public void onNext(TokenFrame frame) {
+                    if (this.broken) {
+                        return;
+                    }
+                    if (++this.received > breakAfter) {
+                        this.broken = true;
+                        responseObserver.onError(Status.UNAVAILABLE.withDescription("Neighbour crashed").asRuntimeException());
+                        return;
+                    }
+                    responseObserver.onNext(TokenAck.newBuilder().setSequence(frame.getSequence()).build());
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                    if (!this.broken) {
+                        responseObserver.onCompleted();
+                    }
+                }
+            };
+        }
+    }
+}
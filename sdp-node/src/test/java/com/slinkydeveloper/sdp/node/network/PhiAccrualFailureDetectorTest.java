@@ -0,0 +1,45 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PhiAccrualFailureDetectorTest {
+
+    @Test
+    void phiGrowsWhenHeartbeatsAreMissing() {
+        PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(100, 100, 1000);
+        assertThat(detector.phi(0))
+            .isZero();
+
+        long now = 0;
+        for (int i = 0; i < 10; i++) {
+            detector.heartbeat(now);
+            now += 1000;
+        }
+        long lastHeartbeat = now - 1000;
+
+        assertThat(detector.phi(lastHeartbeat + 500))
+            .isLessThan(1);
+        assertThat(detector.phi(lastHeartbeat + 1000))
+            .isLessThan(1);
+        assertThat(detector.phi(lastHeartbeat + 3000))
+            .isGreaterThan(8);
+        assertThat(detector.phi(lastHeartbeat + 3000))
+            .isGreaterThan(detector.phi(lastHeartbeat + 2000));
+    }
+
+    @Test
+    void resetForgetsTheHistory() {
+        PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(100, 100, 1000);
+        detector.heartbeat(0);
+        detector.heartbeat(1000);
+        assertThat(detector.phi(10000))
+            .isGreaterThan(8);
+
+        detector.reset();
+        assertThat(detector.phi(10000))
+            .isZero();
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RingTopologyTest {
+
+    @Test
+    void hierarchicalTopologySplitsContiguousSubRings() {
+        Set<Integer> hosts = new HashSet<>(Arrays.asList(1, 2, 3, 4, 5, 6, 7));
+        RingTopology topology = RingTopology.hierarchical(hosts, 3);
+
+        assertThat(topology.getRings())
+            .containsOnly(RingTopology.UPPER_RING, RingTopology.FIRST_SUB_RING, RingTopology.FIRST_SUB_RING + 1);
+        assertThat(topology.getMembers(RingTopology.FIRST_SUB_RING))
+            .containsExactly(1, 2, 3);
+        assertThat(topology.getMembers(RingTopology.FIRST_SUB_RING + 1))
+            .containsExactly(4, 5, 6, 7);
+        assertThat(topology.getMembers(RingTopology.UPPER_RING))
+            .containsExactly(3, 7);
+        assertThat(topology.getRepresentative(RingTopology.UPPER_RING))
+            .isEqualTo(7);
+        assertThat(topology.getSubRingOf(5))
+            .isEqualTo(RingTopology.FIRST_SUB_RING + 1);
+    }
+
+    @Test
+    void shardedTopologyInterleavesTheNodes() {
+        Set<Integer> hosts = new HashSet<>(Arrays.asList(1, 2, 3, 4, 5, 6, 7));
+        RingTopology topology = RingTopology.sharded(hosts, 3);
+
+        assertThat(topology.getRings(RingTopology.RingKind.SHARD))
+            .containsOnly(RingTopology.FIRST_SUB_RING, RingTopology.FIRST_SUB_RING + 1, RingTopology.FIRST_SUB_RING + 2);
+        assertThat(topology.getMembers(RingTopology.FIRST_SUB_RING))
+            .containsExactly(1, 4, 7);
+        assertThat(topology.getMembers(RingTopology.FIRST_SUB_RING + 2))
+            .containsExactly(3, 6);
+        assertThat(topology.getRepresentative(RingTopology.FIRST_SUB_RING + 1))
+            .isEqualTo(5);
+
+        // Every shard has at least two nodes
+        assertThat(RingTopology.sharded(new HashSet<>(Arrays.asList(1, 2, 3, 4, 5)), 4).getRings())
+            .hasSize(2);
+    }
+
+    @Test
+    void smallRingsAreFlat() {
+        Set<Integer> hosts = new HashSet<>(Arrays.asList(1, 2, 3, 4, 5));
+        RingTopology topology = RingTopology.hierarchical(hosts, 3);
+
+        assertThat(topology.getRings())
+            .containsOnly(RingTopology.MAIN_RING);
+        assertThat(topology.getKind(RingTopology.MAIN_RING))
+            .isEqualTo(RingTopology.RingKind.MAIN);
+        assertThat(RingTopology.sharded(new HashSet<>(Arrays.asList(1, 2, 3)), 2).getRings())
+            .containsOnly(RingTopology.MAIN_RING);
+        assertThat(RingTopology.flat(new HashSet<>()).getRings())
+            .isEmpty();
+    }
+
+}
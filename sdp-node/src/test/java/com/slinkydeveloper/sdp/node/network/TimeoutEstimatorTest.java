@@ -0,0 +1,60 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeoutEstimatorTest {
+
+    @Test
+    void histogramPercentileIsWithinTheBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram(10000);
+        assertThat(histogram.percentile(0.99))
+            .isEqualTo(-1);
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(histogram.percentile(0.5))
+            .isBetween(500L, (long) (500 * 1.125));
+        assertThat(histogram.percentile(0.99))
+            .isBetween(990L, (long) (990 * 1.125));
+        assertThat(histogram.percentile(0.1))
+            .isBetween(100L, (long) (100 * 1.125));
+    }
+
+    @Test
+    void histogramFadesOldSamples() {
+        LatencyHistogram histogram = new LatencyHistogram(100);
+        for (int i = 0; i < 100; i++) {
+            histogram.record(1000);
+        }
+        for (int i = 0; i < 500; i++) {
+            histogram.record(10);
+        }
+
+        assertThat(histogram.percentile(0.99))
+            .isEqualTo(10);
+    }
+
+    @Test
+    void estimatorUsesFallbackUntilItHasSamples() {
+        TimeoutEstimator estimator = new TimeoutEstimator(2);
+        assertThat(estimator.sensorReadingsTimeout(4, 40000))
+            .isEqualTo(40000);
+
+        for (int i = 0; i < 10; i++) {
+            estimator.recordLap(800, 4);
+        }
+
+        // 200 ms per node, 4 nodes, safety factor 2
+        assertThat(estimator.sensorReadingsTimeout(4, 40000))
+            .isBetween(1600L, (long) (1600 * 1.125) + 8);
+        assertThat(estimator.discoveryTimeout(4, 40000))
+            .isEqualTo(estimator.sensorReadingsTimeout(4, 40000) * 2);
+        assertThat(estimator.sensorReadingsTimeout(0, Long.MAX_VALUE))
+            .isEqualTo(Long.MAX_VALUE);
+    }
+
+}
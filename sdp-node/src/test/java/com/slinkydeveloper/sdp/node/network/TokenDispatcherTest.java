@@ -0,0 +1,210 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import com.google.protobuf.Empty;
+import com.slinkydeveloper.sdp.concurrent.EventLoop;
+import com.slinkydeveloper.sdp.node.DiscoveryToken;
+import com.slinkydeveloper.sdp.node.NodeGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenDispatcherTest {
+
+    private final List<Server> servers = new ArrayList<>();
+    private final List<ManagedChannel> channels = new ArrayList<>();
+    private final EventLoop callbackLoop = new EventLoop("test-callbacks");
+
+    @AfterEach
+    void tearDown() {
+        this.channels.forEach(ManagedChannel::shutdownNow);
+        this.servers.forEach(Server::shutdownNow);
+        this.callbackLoop.shutdown();
+    }
+
+    @Test
+    void asyncHopCompletesOnTheCallbackExecutor() throws Exception {
+        Neighbour neighbour = new Neighbour();
+        TokenDispatcher dispatcher = new TokenDispatcher(DispatchMode.ASYNC, this.callbackLoop);
+        CompletableFuture<Boolean> passed = new CompletableFuture<>();
+
+        dispatcher.passDiscoveryToken(
+            start(2, neighbour),
+            DiscoveryToken.newBuilder().setLeader(1).build(),
+            () -> passed.complete(this.callbackLoop.inEventLoop()),
+            passed::completeExceptionally
+        );
+
+        assertThat(passed.get(5, TimeUnit.SECONDS))
+            .isTrue();
+        assertThat(neighbour.received)
+            .extracting(DiscoveryToken::getLeader)
+            .containsExactly(1);
+    }
+
+    @Test
+    void failingNeighbourIsSkipped() throws Exception {
+        Neighbour down = new Neighbour(Status.UNAVAILABLE);
+        Neighbour up = new Neighbour();
+        List<Map.Entry<Integer, NodeGrpc.NodeBlockingStub>> ring = ring(start(2, down), start(3, up));
+        TokenDispatcher dispatcher = new TokenDispatcher(DispatchMode.ASYNC, this.callbackLoop);
+        RecordingFailover failover = new RecordingFailover();
+        CountingExecutor retries = new CountingExecutor();
+
+        dispatcher.passDiscoveryToken(i -> i < ring.size() ? ring.get(i) : null, DiscoveryToken.getDefaultInstance(), retries, failover);
+
+        assertThat(failover.passed.get(5, TimeUnit.SECONDS))
+            .isEqualTo(new SimpleImmutableEntry<>(1, 3));
+        assertThat(failover.skipped)
+            .containsExactly(2);
+        assertThat(up.received)
+            .extracting(DiscoveryToken::getRemovedHostsList)
+            .containsExactly(Collections.singletonList(2));
+        assertThat(retries.executed)
+            .hasValue(1);
+    }
+
+    @Test
+    void rejectedTokenIsSentAgainToTheSameNeighbour() throws Exception {
+        Neighbour rejecting = new Neighbour(Status.FAILED_PRECONDITION, Status.OK);
+        List<Map.Entry<Integer, NodeGrpc.NodeBlockingStub>> ring = ring(start(2, rejecting));
+        TokenDispatcher dispatcher = new TokenDispatcher(DispatchMode.ASYNC, this.callbackLoop);
+        RecordingFailover failover = new RecordingFailover();
+
+        dispatcher.passDiscoveryToken(i -> i < ring.size() ? ring.get(i) : null, DiscoveryToken.getDefaultInstance(), Runnable::run, failover);
+
+        assertThat(failover.passed.get(5, TimeUnit.SECONDS))
+            .isEqualTo(new SimpleImmutableEntry<>(0, 2));
+        assertThat(failover.skipped)
+            .isEmpty();
+        assertThat(rejecting.received)
+            .hasSize(2);
+    }
+
+    @Test
+    void allNeighboursFailed() throws Exception {
+        List<Map.Entry<Integer, NodeGrpc.NodeBlockingStub>> ring = ring(
+            start(2, new Neighbour(Status.UNAVAILABLE)),
+            start(3, new Neighbour(Status.UNAVAILABLE))
+        );
+        TokenDispatcher dispatcher = new TokenDispatcher(DispatchMode.ASYNC, this.callbackLoop);
+        RecordingFailover failover = new RecordingFailover();
+        CountingExecutor retries = new CountingExecutor();
+
+        dispatcher.passDiscoveryToken(i -> i < ring.size() ? ring.get(i) : null, DiscoveryToken.getDefaultInstance(), retries, failover);
+
+        assertThat(failover.allFailed.get(5, TimeUnit.SECONDS).getRemovedHostsList())
+            .containsExactly(2, 3);
+        assertThat(failover.passed)
+            .isNotDone();
+        assertThat(retries.executed)
+            .hasValue(2);
+    }
+
+    private Map.Entry<Integer, NodeGrpc.NodeBlockingStub> start(int id, Neighbour neighbour) throws IOException {
+        String name = InProcessServerBuilder.generateName();
+        this.servers.add(InProcessServerBuilder.forName(name).addService(neighbour).build().start());
+        ManagedChannel channel = InProcessChannelBuilder.forName(name).build();
+        this.channels.add(channel);
+        return new SimpleImmutableEntry<>(id, NodeGrpc.newBlockingStub(channel));
+    }
+
+    @SafeVarargs
+    private static List<Map.Entry<Integer, NodeGrpc.NodeBlockingStub>> ring(Map.Entry<Integer, NodeGrpc.NodeBlockingStub>... neighbours) {
+        return Arrays.asList(neighbours);
+    }
+
+    /**
+     * Replies to the discovery tokens with the provided statuses in order, repeating the last one, or with OK
+     */
+    private static class Neighbour extends NodeGrpc.NodeImplBase {
+
+        private final Queue<Status> replies;
+        private final List<DiscoveryToken> received = new CopyOnWriteArrayList<>();
+
+        private Neighbour(Status... replies) {
+            this.replies = new LinkedList<>(Arrays.asList(replies));
+            if (this.replies.isEmpty()) {
+                this.replies.add(Status.OK);
+            }
+        }
+
+        @Override
+        public synchronized void passDiscoveryToken(DiscoveryToken request, StreamObserver<Empty> responseObserver) {
+            this.received.add(request);
+            Status status = this.replies.size() > 1 ? this.replies.poll() : this.replies.peek();
+            if (status.isOk()) {
+                responseObserver.onNext(Empty.getDefaultInstance());
+                responseObserver.onCompleted();
+            } else {
+                responseObserver.onError(status.asRuntimeException());
+            }
+        }
+    }
+
+    private static class RecordingFailover implements TokenDispatcher.DiscoveryFailover {
+
+        private final CompletableFuture<Map.Entry<Integer, Integer>> passed = new CompletableFuture<>();
+        private final CompletableFuture<DiscoveryToken> allFailed = new CompletableFuture<>();
+        private final Queue<Integer> skipped = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public DiscoveryToken prepare(DiscoveryToken token, int neighbourId) {
+            return token;
+        }
+
+        @Override
+        public boolean retryRejected(DiscoveryToken prepared, int neighbourId) {
+            return true;
+        }
+
+        @Override
+        public DiscoveryToken skip(DiscoveryToken token, int neighbourId) {
+            this.skipped.add(neighbourId);
+            return token.toBuilder().addRemovedHosts(neighbourId).build();
+        }
+
+        @Override
+        public void onPassed(DiscoveryToken prepared, int index, int neighbourId, long hopMillis) {
+            this.passed.complete(new SimpleImmutableEntry<>(index, neighbourId));
+        }
+
+        @Override
+        public void onAllFailed(DiscoveryToken token) {
+            this.allFailed.complete(token);
+        }
+    }
+
+    private static class CountingExecutor implements Executor {
+
+        private final AtomicInteger executed = new AtomicInteger();
+
+        @Override
+        public void execute(Runnable command) {
+            this.executed.incrementAndGet();
+            new Thread(command).start();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.slinkydeveloper.sdp.node.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenLapTrackerTest {
+
+    private final AtomicLong now = new AtomicLong(1000);
+    private final TokenLapTracker laps = new TokenLapTracker(this.now::get);
+
+    @Test
+    void lapIsTheTimeBetweenTwoReceptions() {
+        assertThat(this.laps.onReception(0))
+            .isEqualTo(-1);
+
+        this.now.addAndGet(120);
+        assertThat(this.laps.onReception(0))
+            .isEqualTo(120);
+        this.now.addAndGet(80);
+        assertThat(this.laps.onReception(0))
+            .isEqualTo(80);
+    }
+
+    @Test
+    void parkedOrHeldLapIsNotMeasured() {
+        this.laps.onReception(0);
+        this.laps.onReception(1);
+
+        // The token of ring 0 is parked for a minute, then it does a lap of 100 ms
+        this.laps.interrupt(0);
+        this.now.addAndGet(60000);
+        assertThat(this.laps.onReception(0))
+            .isEqualTo(-1);
+        this.now.addAndGet(100);
+        assertThat(this.laps.onReception(0))
+            .isEqualTo(100);
+
+        // The lap of ring 1 wasn't interrupted
+        assertThat(this.laps.onReception(1))
+            .isEqualTo(60100);
+    }
+
+    @Test
+    void discoveryInterruptsEveryRing() {
+        this.laps.onReception(0);
+        this.laps.onReception(1);
+
+        this.laps.interruptAll();
+        this.now.addAndGet(5000);
+
+        assertThat(this.laps.onReception(0))
+            .isEqualTo(-1);
+        assertThat(this.laps.onReception(1))
+            .isEqualTo(-1);
+    }
+}
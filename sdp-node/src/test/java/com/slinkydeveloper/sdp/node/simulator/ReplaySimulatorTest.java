@@ -0,0 +1,92 @@
+package com.slinkydeveloper.sdp.node.simulator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReplaySimulatorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replayCsv() throws Exception {
+        Path trace = this.directory.resolve("trace.csv");
+        Files.write(trace, (
+            "timestamp,value\n" +
+                "1000,15.5\n" +
+                "1200,-2\r\n" +
+                "\n" +
+                "1500,1.25e1\n" +
+                "1600,not a number\n" +
+                "2000,0.001"
+        ).getBytes(StandardCharsets.US_ASCII));
+
+        List<Measurement> measurements = replay(trace, ReplaySimulator.AS_FAST_AS_POSSIBLE);
+
+        assertThat(measurements.stream().map(Measurement::getValue).collect(Collectors.toList()))
+            .containsExactly(15.5, -2d, 12.5, 0.001);
+        assertRelativeTimestamps(measurements, 0, 200, 500, 1000);
+    }
+
+    @Test
+    void replayBinary() throws Exception {
+        Path trace = this.directory.resolve("trace.bin");
+        try (OutputStream out = Files.newOutputStream(trace); DataOutputStream data = new DataOutputStream(out)) {
+            for (int i = 0; i < 100; i++) {
+                data.writeLong(1000 + i * 10);
+                data.writeDouble(i);
+            }
+        }
+
+        // The trace lasts about a second
+        long start = System.nanoTime();
+        List<Measurement> measurements = replay(trace, 10);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(measurements)
+            .hasSize(100);
+        assertThat(measurements.get(99).getValue())
+            .isEqualTo(99d);
+        assertThat(measurements.get(99).getTimestamp() - measurements.get(0).getTimestamp())
+            .isEqualTo(990);
+        assertThat(elapsedMillis)
+            .isGreaterThanOrEqualTo(95);
+    }
+
+    @Test
+    void formatFromPath() {
+        assertThat(ReplaySimulator.Format.fromPath(this.directory.resolve("trace.CSV")))
+            .isEqualTo(ReplaySimulator.Format.CSV);
+        assertThat(ReplaySimulator.Format.fromPath(this.directory.resolve("trace.bin")))
+            .isEqualTo(ReplaySimulator.Format.BINARY);
+    }
+
+    private static List<Measurement> replay(Path trace, double speedup) throws IOException, InterruptedException {
+        List<Measurement> measurements = new CopyOnWriteArrayList<>();
+        ReplaySimulator simulator = new ReplaySimulator("replay-1", "PM10", measurements::add, trace, ReplaySimulator.Format.fromPath(trace), speedup, false);
+        simulator.start();
+        simulator.join(10000);
+
+        assertThat(simulator.getReplayedMeasurements())
+            .isEqualTo(measurements.size());
+        return measurements;
+    }
+
+    private static void assertRelativeTimestamps(List<Measurement> measurements, long... expected) {
+        long first = measurements.get(0).getTimestamp();
+        assertThat(measurements.stream().mapToLong(m -> m.getTimestamp() - first).toArray())
+            .containsExactly(expected);
+    }
+}
@@ -0,0 +1,81 @@
+package com.slinkydeveloper.sdp.node.simulator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SimulatorRuntimeTest {
+
+    @Test
+    void thousandsOfSensorsOnTwoThreads() throws InterruptedException {
+        int sensors = 10_000;
+        LongAdder added = new LongAdder();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        SimulatorRuntime runtime = new SimulatorRuntime("test-sensors", 2);
+        for (int i = 0; i < sensors; i++) {
+            runtime.start("sensor-" + i, "PM10", m -> {
+                added.increment();
+                ids.add(m.getId());
+                threads.add(Thread.currentThread().getName());
+            }, new FixedRateSensor(50));
+        }
+
+        Thread.sleep(500);
+        runtime.stop();
+
+        assertThat(ids)
+            .hasSize(sensors);
+        assertThat(threads)
+            .hasSize(2);
+        // About 10 measurements per sensor
+        assertThat(added.sum())
+            .isEqualTo(runtime.getGeneratedMeasurements())
+            .isGreaterThan(5L * sensors);
+    }
+
+    @Test
+    void stoppedSensorDoesntAddMeasurements() throws InterruptedException {
+        LongAdder added = new LongAdder();
+        SimulatorRuntime runtime = new SimulatorRuntime("test-sensors", 1);
+        SimulatorRuntime.ScheduledSensor sensor = runtime.start("sensor", "PM10", m -> added.increment(), new FixedRateSensor(1));
+        Thread.sleep(100);
+        sensor.stopMeGently();
+        assertThat(runtime.getActiveSensors())
+            .isZero();
+
+        // A measurement could be in progress
+        Thread.sleep(50);
+        long stoppedAt = added.sum();
+        Thread.sleep(100);
+        assertThat(added.sum())
+            .isPositive()
+            .isEqualTo(stoppedAt);
+        runtime.stop();
+    }
+
+    private static class FixedRateSensor implements VirtualSensor {
+
+        private final long periodMillis;
+        private final AtomicLong value = new AtomicLong();
+
+        private FixedRateSensor(long periodMillis) {
+            this.periodMillis = periodMillis;
+        }
+
+        @Override
+        public double nextValue() {
+            return this.value.incrementAndGet();
+        }
+
+        @Override
+        public long nextDelayMillis() {
+            return this.periodMillis;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.slinkydeveloper.sdp.node.simulator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SyntheticLoadSimulatorTest {
+
+    @Test
+    void constantRate() throws InterruptedException {
+        assertThat(generatedInHalfSecond(SyntheticLoadSimulator.Arrival.CONSTANT))
+            .isBetween(25_000L, 51_000L);
+    }
+
+    @Test
+    void burstyRate() throws InterruptedException {
+        long generated = generatedInHalfSecond(SyntheticLoadSimulator.Arrival.BURSTY);
+        assertThat(generated)
+            .isBetween(25_000L, 51_000L);
+        // Only whole bursts of 1000 measurements
+        assertThat(generated % 1000)
+            .isZero();
+    }
+
+    @Test
+    void poissonRate() throws InterruptedException {
+        assertThat(generatedInHalfSecond(SyntheticLoadSimulator.Arrival.POISSON))
+            .isBetween(25_000L, 55_000L);
+    }
+
+    private static long generatedInHalfSecond(SyntheticLoadSimulator.Arrival arrival) throws InterruptedException {
+        LongAdder added = new LongAdder();
+        SyntheticLoadSimulator simulator = new SyntheticLoadSimulator(
+            "load-1", "PM10", m -> added.increment(), 100_000, arrival, SyntheticLoadSimulator.Waveform.SINE, 1000, 100
+        );
+        simulator.start();
+        Thread.sleep(500);
+        simulator.stopMeGently();
+        simulator.join();
+
+        assertThat(simulator.getGeneratedMeasurements())
+            .isEqualTo(added.sum());
+        assertThat(simulator.getAchievedRate())
+            .isPositive();
+        return added.sum();
+    }
+}